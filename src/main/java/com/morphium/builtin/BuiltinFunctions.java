@@ -43,6 +43,9 @@ public class BuiltinFunctions {
         STREAM_FUNCTIONS.put("min", BuiltinFunctions::min);
         STREAM_FUNCTIONS.put("max", BuiltinFunctions::max);
         STREAM_FUNCTIONS.put("runMorph", BuiltinFunctions::runMorph);
+        STREAM_FUNCTIONS.put("pmap", ParallelFunctions::pmap);
+        STREAM_FUNCTIONS.put("pfilter", ParallelFunctions::pfilter);
+        STREAM_FUNCTIONS.put("pflatMap", ParallelFunctions::pflatMap);
 
         EAGER_FUNCTIONS.put("merge", BuiltinFunctions::merge);
         EAGER_FUNCTIONS.put("pluck", BuiltinFunctions::pluck);
@@ -164,6 +167,42 @@ public class BuiltinFunctions {
         EAGER_FUNCTIONS.put("toBoolNew", TypeFunctions::toBoolFunc);
     }
 
+    // Builtins whose calls have effects beyond their result, or differ from run to run
+    private static final java.util.Set<String> IMPURE_FUNCTIONS = new java.util.HashSet<>(java.util.Arrays.asList(
+        "forEach", "runMorph", "now", "error", "log", "logInfo", "logWarn", "logError", "logDebug"));
+
+    /**
+     * True when {@code name} is a builtin whose result depends only on its arguments.
+     */
+    public static boolean isPure(String name) {
+        return (STREAM_FUNCTIONS.containsKey(name) || EAGER_FUNCTIONS.containsKey(name))
+            && !IMPURE_FUNCTIONS.contains(name);
+    }
+
+    /**
+     * Compute any lazily produced arrays in a result, see {@link LazySequence}. Results
+     * leaving the engine go through this, so no deferred work escapes a run.
+     */
+    public static JsonNode materialize(JsonNode value) {
+        return LazySequence.materialize(value);
+    }
+
+    /**
+     * Resolve a builtin once so callers can invoke it without further lookups.
+     * @return the builtin, or null when no builtin has this name
+     */
+    public static BuiltinFunction lookup(String name) {
+        StreamFunction streamFunc = STREAM_FUNCTIONS.get(name);
+        if (streamFunc != null) {
+            return streamFunc::apply;
+        }
+        EagerFunction eagerFunc = EAGER_FUNCTIONS.get(name);
+        if (eagerFunc != null) {
+            return (argExprs, context) -> eagerFunc.apply(evaluateArgs(argExprs, context), context);
+        }
+        return null;
+    }
+
     public static JsonNode call(String name, java.util.List<Expression> argExprs, Context context) {
         StreamFunction streamFunc = STREAM_FUNCTIONS.get(name);
         if (streamFunc != null) {
@@ -199,51 +238,19 @@ public class BuiltinFunctions {
 
     private static JsonNode map(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("map requires 3 arguments");
-        
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return JsonUtil.createArray();
-        
-        String itemName = argExprs.get(1).evaluate(context).asText();
-        Expression mapExpr = argExprs.get(2);
-        
-        ArrayNode result = JsonUtil.createArray();
-        Context itemContext = new Context(context, 2);
-        for (JsonNode item : arrayArg) {
-            itemContext.redefine(itemName, item);
-            JsonNode mapped = mapExpr.evaluate(itemContext);
-            result.add(mapped);
-        }
-        
-        return result;
+        return StreamPipeline.apply("map", argExprs, context);
     }
 
     private static JsonNode filter(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("filter requires 3 arguments");
-        
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return JsonUtil.createArray();
-        
-        String itemName = argExprs.get(1).evaluate(context).asText();
-        Expression predicateExpr = argExprs.get(2);
-        
-        ArrayNode result = JsonUtil.createArray();
-        Context itemContext = new Context(context, 2);
-        for (JsonNode item : arrayArg) {
-            itemContext.redefine(itemName, item);
-            JsonNode predicate = predicateExpr.evaluate(itemContext);
-            if (isTruthy(predicate)) {
-                result.add(item);
-            }
-        }
-        
-        return result;
+        return StreamPipeline.apply("filter", argExprs, context);
     }
 
     private static JsonNode reduce(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 5) throw new RuntimeException("reduce requires 5 arguments");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return NullNode.getInstance();
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return NullNode.getInstance();
         
         String accName = argExprs.get(1).evaluate(context).asText();
         String itemName = argExprs.get(2).evaluate(context).asText();
@@ -251,8 +258,8 @@ public class BuiltinFunctions {
         Expression reduceExpr = argExprs.get(4);
         
         JsonNode accumulator = initValue;
-        Context reduceContext = new Context(context, 3);
-        for (JsonNode item : arrayArg) {
+        Context reduceContext = context.newLambdaContext(reduceExpr);
+        for (JsonNode item : items) {
             reduceContext.redefine(accName, accumulator);
             reduceContext.redefine(itemName, item);
             accumulator = reduceExpr.evaluate(reduceContext);
@@ -616,28 +623,7 @@ public class BuiltinFunctions {
 
     private static JsonNode flatMap(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("flatMap requires 3 arguments");
-        
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return JsonUtil.createArray();
-        
-        String itemName = argExprs.get(1).evaluate(context).asText();
-        Expression mapExpr = argExprs.get(2);
-        
-        ArrayNode result = JsonUtil.createArray();
-        Context itemContext = new Context(context, 2);
-        for (JsonNode item : arrayArg) {
-            itemContext.redefine(itemName, item);
-            JsonNode mapped = mapExpr.evaluate(itemContext);
-            if (mapped.isArray()) {
-                for (JsonNode subItem : mapped) {
-                    result.add(subItem);
-                }
-            } else {
-                result.add(mapped);
-            }
-        }
-        
-        return result;
+        return StreamPipeline.apply("flatMap", argExprs, context);
     }
 
     private static JsonNode forEach(java.util.List<Expression> argExprs, Context context) {
@@ -649,7 +635,7 @@ public class BuiltinFunctions {
         String itemName = argExprs.get(1).evaluate(context).asText();
         Expression forEachExpr = argExprs.get(2);
         
-        Context itemContext = new Context(context, 2);
+        Context itemContext = context.newLambdaContext(forEachExpr);
         for (JsonNode item : arrayArg) {
             itemContext.redefine(itemName, item);
             forEachExpr.evaluate(itemContext);
@@ -661,14 +647,14 @@ public class BuiltinFunctions {
     private static JsonNode anyMatch(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("anyMatch requires 3 arguments");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return BooleanNode.FALSE;
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return BooleanNode.FALSE;
         
         String itemName = argExprs.get(1).evaluate(context).asText();
         Expression predicateExpr = argExprs.get(2);
         
-        Context itemContext = new Context(context, 2);
-        for (JsonNode item : arrayArg) {
+        Context itemContext = context.newLambdaContext(predicateExpr);
+        for (JsonNode item : items) {
             itemContext.redefine(itemName, item);
             JsonNode predicate = predicateExpr.evaluate(itemContext);
             if (isTruthy(predicate)) {
@@ -682,14 +668,14 @@ public class BuiltinFunctions {
     private static JsonNode allMatch(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("allMatch requires 3 arguments");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return BooleanNode.TRUE;
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return BooleanNode.TRUE;
         
         String itemName = argExprs.get(1).evaluate(context).asText();
         Expression predicateExpr = argExprs.get(2);
         
-        Context itemContext = new Context(context, 2);
-        for (JsonNode item : arrayArg) {
+        Context itemContext = context.newLambdaContext(predicateExpr);
+        for (JsonNode item : items) {
             itemContext.redefine(itemName, item);
             JsonNode predicate = predicateExpr.evaluate(itemContext);
             if (!isTruthy(predicate)) {
@@ -703,14 +689,14 @@ public class BuiltinFunctions {
     private static JsonNode noneMatch(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("noneMatch requires 3 arguments");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return BooleanNode.TRUE;
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return BooleanNode.TRUE;
         
         String itemName = argExprs.get(1).evaluate(context).asText();
         Expression predicateExpr = argExprs.get(2);
         
-        Context itemContext = new Context(context, 2);
-        for (JsonNode item : arrayArg) {
+        Context itemContext = context.newLambdaContext(predicateExpr);
+        for (JsonNode item : items) {
             itemContext.redefine(itemName, item);
             JsonNode predicate = predicateExpr.evaluate(itemContext);
             if (isTruthy(predicate)) {
@@ -724,14 +710,14 @@ public class BuiltinFunctions {
     private static JsonNode findFirst(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("findFirst requires 3 arguments");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return NullNode.getInstance();
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return NullNode.getInstance();
         
         String itemName = argExprs.get(1).evaluate(context).asText();
         Expression predicateExpr = argExprs.get(2);
         
-        Context itemContext = new Context(context, 2);
-        for (JsonNode item : arrayArg) {
+        Context itemContext = context.newLambdaContext(predicateExpr);
+        for (JsonNode item : items) {
             itemContext.redefine(itemName, item);
             JsonNode predicate = predicateExpr.evaluate(itemContext);
             if (isTruthy(predicate)) {
@@ -745,19 +731,19 @@ public class BuiltinFunctions {
     private static JsonNode count(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 1) throw new RuntimeException("count requires 1 argument");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return IntNode.valueOf(0);
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return IntNode.valueOf(0);
         
         if (argExprs.size() < 3) {
-            return IntNode.valueOf(arrayArg.size());
+            return IntNode.valueOf(StreamPipeline.size(items));
         }
         
         String itemName = argExprs.get(1).evaluate(context).asText();
         Expression predicateExpr = argExprs.get(2);
         
         int count = 0;
-        Context itemContext = new Context(context, 2);
-        for (JsonNode item : arrayArg) {
+        Context itemContext = context.newLambdaContext(predicateExpr);
+        for (JsonNode item : items) {
             itemContext.redefine(itemName, item);
             JsonNode predicate = predicateExpr.evaluate(itemContext);
             if (isTruthy(predicate)) {
@@ -770,32 +756,17 @@ public class BuiltinFunctions {
 
     private static JsonNode distinct(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 1) throw new RuntimeException("distinct requires 1 argument");
-        
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return JsonUtil.createArray();
-        
-        ArrayNode result = JsonUtil.createArray();
-        java.util.Set<String> seen = new java.util.HashSet<>();
-        
-        for (JsonNode item : arrayArg) {
-            String key = item.toString();
-            if (!seen.contains(key)) {
-                seen.add(key);
-                result.add(item);
-            }
-        }
-        
-        return result;
+        return StreamPipeline.apply("distinct", argExprs, context);
     }
 
     private static JsonNode sorted(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 1) throw new RuntimeException("sorted requires 1 argument");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return JsonUtil.createArray();
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return JsonUtil.createArray();
         
         java.util.List<JsonNode> list = new java.util.ArrayList<>();
-        for (JsonNode item : arrayArg) {
+        for (JsonNode item : items) {
             list.add(item);
         }
         
@@ -827,71 +798,29 @@ public class BuiltinFunctions {
 
     private static JsonNode skip(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 2) throw new RuntimeException("skip requires 2 arguments");
-        
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        int n = argExprs.get(1).evaluate(context).asInt();
-        
-        if (!arrayArg.isArray()) return JsonUtil.createArray();
-        
-        ArrayNode result = JsonUtil.createArray();
-        int index = 0;
-        for (JsonNode item : arrayArg) {
-            if (index >= n) {
-                result.add(item);
-            }
-            index++;
-        }
-        
-        return result;
+        return StreamPipeline.apply("skip", argExprs, context);
     }
 
     private static JsonNode limit(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 2) throw new RuntimeException("limit requires 2 arguments");
-        
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        int n = argExprs.get(1).evaluate(context).asInt();
-        
-        if (!arrayArg.isArray()) return JsonUtil.createArray();
-        
-        ArrayNode result = JsonUtil.createArray();
-        int index = 0;
-        for (JsonNode item : arrayArg) {
-            if (index >= n) break;
-            result.add(item);
-            index++;
-        }
-        
-        return result;
+        return StreamPipeline.apply("limit", argExprs, context);
     }
 
     private static JsonNode peek(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("peek requires 3 arguments");
-        
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return arrayArg;
-        
-        String itemName = argExprs.get(1).evaluate(context).asText();
-        Expression peekExpr = argExprs.get(2);
-        
-        for (JsonNode item : arrayArg) {
-            Context itemContext = new Context(context);
-            itemContext.define(itemName, item);
-            peekExpr.evaluate(itemContext);
-        }
-        
-        return arrayArg;
+        return StreamPipeline.apply("peek", argExprs, context);
     }
 
     private static JsonNode groupBy(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 2) throw new RuntimeException("groupBy requires 2 arguments");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return JsonUtil.createObject();
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return JsonUtil.createObject();
         
         String key = argExprs.get(1).evaluate(context).asText();
         
         ObjectNode result = JsonUtil.createObject();
-        for (JsonNode item : arrayArg) {
+        for (JsonNode item : items) {
             String groupKey = item.has(key) ? item.get(key).asText() : "null";
             if (!result.has(groupKey)) {
                 result.set(groupKey, JsonUtil.createArray());
@@ -905,8 +834,8 @@ public class BuiltinFunctions {
     private static JsonNode partition(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 3) throw new RuntimeException("partition requires 3 arguments");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) {
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) {
             ObjectNode result = JsonUtil.createObject();
             result.set("true", JsonUtil.createArray());
             result.set("false", JsonUtil.createArray());
@@ -919,8 +848,8 @@ public class BuiltinFunctions {
         ArrayNode truePartition = JsonUtil.createArray();
         ArrayNode falsePartition = JsonUtil.createArray();
         
-        for (JsonNode item : arrayArg) {
-            Context itemContext = new Context(context);
+        for (JsonNode item : items) {
+            Context itemContext = context.newLambdaContext(predicateExpr);
             itemContext.define(itemName, item);
             JsonNode predicate = predicateExpr.evaluate(itemContext);
             if (isTruthy(predicate)) {
@@ -939,28 +868,44 @@ public class BuiltinFunctions {
     private static JsonNode sum(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 1) throw new RuntimeException("sum requires 1 argument");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray()) return IntNode.valueOf(0);
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return IntNode.valueOf(0);
         
+        // Integers are summed exactly until a non-integer or an overflow is seen
+        long exact = 0;
+        boolean integral = true;
         double sum = 0;
-        for (JsonNode item : arrayArg) {
-            if (item.isNumber()) {
-                sum += item.asDouble();
+        for (JsonNode item : items) {
+            if (!item.isNumber()) {
+                continue;
+            }
+            if (integral && JsonUtil.isIntegral(item)) {
+                long value = item.longValue();
+                long result = exact + value;
+                if (((exact ^ result) & (value ^ result)) >= 0) {
+                    exact = result;
+                    continue;
+                }
+            }
+            if (integral) {
+                integral = false;
+                sum = exact;
             }
+            sum += item.asDouble();
         }
         
-        return DoubleNode.valueOf(sum);
+        return integral ? JsonUtil.numberNode(exact) : JsonUtil.numberNode(sum);
     }
 
     private static JsonNode avg(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 1) throw new RuntimeException("avg requires 1 argument");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray() || arrayArg.size() == 0) return IntNode.valueOf(0);
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return IntNode.valueOf(0);
         
         double sum = 0;
         int count = 0;
-        for (JsonNode item : arrayArg) {
+        for (JsonNode item : items) {
             if (item.isNumber()) {
                 sum += item.asDouble();
                 count++;
@@ -973,11 +918,11 @@ public class BuiltinFunctions {
     private static JsonNode min(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 1) throw new RuntimeException("min requires 1 argument");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray() || arrayArg.size() == 0) return NullNode.getInstance();
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return NullNode.getInstance();
         
         JsonNode minVal = null;
-        for (JsonNode item : arrayArg) {
+        for (JsonNode item : items) {
             if (minVal == null || compareNodes(item, minVal) < 0) {
                 minVal = item;
             }
@@ -989,11 +934,11 @@ public class BuiltinFunctions {
     private static JsonNode max(java.util.List<Expression> argExprs, Context context) {
         if (argExprs.size() < 1) throw new RuntimeException("max requires 1 argument");
         
-        JsonNode arrayArg = argExprs.get(0).evaluate(context);
-        if (!arrayArg.isArray() || arrayArg.size() == 0) return NullNode.getInstance();
+        Iterable<JsonNode> items = StreamPipeline.source(argExprs.get(0), context);
+        if (items == null) return NullNode.getInstance();
         
         JsonNode maxVal = null;
-        for (JsonNode item : arrayArg) {
+        for (JsonNode item : items) {
             if (maxVal == null || compareNodes(item, maxVal) > 0) {
                 maxVal = item;
             }
@@ -1131,6 +1076,12 @@ public class BuiltinFunctions {
         JsonNode input = argExprs.get(1).evaluate(context);
         
         try {
+            // Inside an engine, reuse its resolver and cached, prepared scripts
+            com.morphium.runtime.MorphRunner runner = context.getMorphRunner();
+            if (runner != null) {
+                return runner.run(morphFile, input);
+            }
+
             com.morphium.runtime.ModuleResolver resolver = new com.morphium.runtime.ModuleResolver();
             String source = resolver.resolve(morphFile);
             
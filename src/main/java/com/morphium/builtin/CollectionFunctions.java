@@ -225,7 +225,7 @@ public class CollectionFunctions {
         String itemName = argExprs.get(1).evaluate(context).asText();
         Expression conditionExpr = argExprs.get(2);
         
-        Context itemContext = new Context(context, 2);
+        Context itemContext = context.newLambdaContext(conditionExpr);
         int index = 0;
         
         for (JsonNode item : arrayArg) {
@@ -253,7 +253,7 @@ public class CollectionFunctions {
         String itemName = argExprs.get(1).evaluate(context).asText();
         Expression conditionExpr = argExprs.get(2);
         
-        Context itemContext = new Context(context, 2);
+        Context itemContext = context.newLambdaContext(conditionExpr);
         int lastIndex = -1;
         int index = 0;
         
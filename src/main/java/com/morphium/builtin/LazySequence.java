@@ -0,0 +1,199 @@
+package com.morphium.builtin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.morphium.util.JsonUtil;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Array value whose elements are produced on demand by a stream pipeline.
+ *
+ * It is a regular {@link ArrayNode}, so every consumer keeps working: iterating or
+ * indexing pulls only as many elements as are read, while sizing, comparing, serializing
+ * or modifying it computes the rest. Computed elements are kept, so each lambda runs at
+ * most once per element.
+ *
+ * Only pipelines whose lambdas cannot observe when they run are made lazy (see
+ * {@link com.morphium.parser.ast.ScopedExpr#isDeferrable()}). An error raised by such a
+ * lambda surfaces where the element is first read. Sequences never outlive the run that
+ * built them: the engine passes every result through {@link #materialize} first.
+ */
+// ArrayNode.deepCopy() narrows the generic JsonNode.deepCopy(), which javac flags in subclasses
+@SuppressWarnings("unchecked")
+final class LazySequence extends ArrayNode {
+    private final Elements elements;
+
+    private LazySequence(Elements elements) {
+        super(JsonNodeFactory.instance, elements);
+        this.elements = elements;
+    }
+
+    static LazySequence of(Iterator<JsonNode> items) {
+        return new LazySequence(new Elements(items));
+    }
+
+    /**
+     * {@code value} with every lazy sequence in it, at any depth, replaced by a plain
+     * array. Containers without one are returned as they are; a container holding one is
+     * copied rather than changed, since it may be shared, for example a module constant.
+     */
+    static JsonNode materialize(JsonNode value) {
+        if (value instanceof LazySequence) {
+            ArrayNode array = JsonUtil.createArray();
+            for (JsonNode element : value) {
+                array.add(materialize(element));
+            }
+            return array;
+        }
+        if (value == null || !value.isContainerNode()) {
+            return value;
+        }
+        if (value.isArray()) {
+            ArrayNode copy = null;
+            for (int i = 0; i < value.size(); i++) {
+                JsonNode element = value.get(i);
+                JsonNode resolved = materialize(element);
+                if (copy == null && resolved != element) {
+                    copy = JsonUtil.createArray();
+                    for (int j = 0; j < i; j++) {
+                        copy.add(value.get(j));
+                    }
+                }
+                if (copy != null) {
+                    copy.add(resolved);
+                }
+            }
+            return copy != null ? copy : value;
+        }
+        ObjectNode copy = null;
+        Iterator<Map.Entry<String, JsonNode>> fields = value.fields();
+        int index = 0;
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode resolved = materialize(field.getValue());
+            if (copy == null && resolved != field.getValue()) {
+                copy = JsonUtil.createObject(value.size());
+                Iterator<Map.Entry<String, JsonNode>> earlier = value.fields();
+                for (int j = 0; j < index; j++) {
+                    Map.Entry<String, JsonNode> previous = earlier.next();
+                    copy.set(previous.getKey(), previous.getValue());
+                }
+            }
+            if (copy != null) {
+                copy.set(field.getKey(), resolved);
+            }
+            index++;
+        }
+        return copy != null ? copy : value;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return elements.isEmpty();
+    }
+
+    // ArrayNode checks the index against size(), which would compute every element
+    @Override
+    public JsonNode get(int index) {
+        return index >= 0 && elements.fill(index + 1) ? elements.get(index) : null;
+    }
+
+    @Override
+    public JsonNode path(int index) {
+        JsonNode element = get(index);
+        return element != null ? element : MissingNode.getInstance();
+    }
+
+    /**
+     * Backing list of the node: a computed prefix plus the iterator producing the rest.
+     */
+    private static final class Elements extends AbstractList<JsonNode> {
+        private final List<JsonNode> computed = new ArrayList<>();
+        private Iterator<JsonNode> pending;
+
+        Elements(Iterator<JsonNode> pending) {
+            this.pending = pending;
+        }
+
+        /**
+         * Compute elements until at least {@code count} exist or the source is drained.
+         */
+        private synchronized boolean fill(int count) {
+            while (computed.size() < count && pending != null) {
+                if (pending.hasNext()) {
+                    computed.add(pending.next());
+                } else {
+                    // Drop the pipeline so its frames and input can be collected
+                    pending = null;
+                }
+            }
+            return computed.size() >= count;
+        }
+
+        @Override
+        public synchronized JsonNode get(int index) {
+            fill(index + 1);
+            return computed.get(index);
+        }
+
+        @Override
+        public synchronized int size() {
+            fill(Integer.MAX_VALUE);
+            return computed.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !fill(1);
+        }
+
+        @Override
+        public Iterator<JsonNode> iterator() {
+            return new Iterator<JsonNode>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return fill(index + 1);
+                }
+
+                @Override
+                public JsonNode next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return get(index++);
+                }
+            };
+        }
+
+        @Override
+        public synchronized JsonNode set(int index, JsonNode element) {
+            fill(Integer.MAX_VALUE);
+            return computed.set(index, element);
+        }
+
+        @Override
+        public synchronized void add(int index, JsonNode element) {
+            fill(Integer.MAX_VALUE);
+            computed.add(index, element);
+            modCount++;
+        }
+
+        @Override
+        public synchronized JsonNode remove(int index) {
+            fill(Integer.MAX_VALUE);
+            modCount++;
+            return computed.remove(index);
+        }
+    }
+}
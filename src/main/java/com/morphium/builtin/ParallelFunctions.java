@@ -0,0 +1,185 @@
+package com.morphium.builtin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.morphium.parser.ast.Expression;
+import com.morphium.parser.ast.ScopedExpr;
+import com.morphium.runtime.Context;
+import com.morphium.util.JsonUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel variants of map, filter and flatMap: {@code pmap}, {@code pfilter} and
+ * {@code pflatMap} take the same arguments and give the same results, in the same order.
+ *
+ * Arrays of at least {@link #PARALLEL_THRESHOLD} items are split into ranges evaluated on
+ * the common {@link ForkJoinPool}. Each range gets its own lambda frame, so frames are
+ * never shared between threads, and writes its results to the slots of its own items.
+ * Only bodies the resolver marked parallelizable are split: a body that logs, peeks,
+ * calls a host or module function or declares globals runs on the calling thread, item
+ * by item, exactly like its sequential counterpart.
+ *
+ * When items fail, the error of the first failing item is thrown, as it would be
+ * sequentially.
+ */
+final class ParallelFunctions {
+    // Smaller arrays are not worth the hand-off to other threads
+    static final int PARALLEL_THRESHOLD = 1024;
+    // Items a task evaluates without splitting further
+    private static final int MIN_RANGE = 128;
+    // Ranges per pool thread, so threads that finish early can take more work
+    private static final int RANGES_PER_THREAD = 4;
+
+    private ParallelFunctions() {
+    }
+
+    static JsonNode pmap(List<Expression> argExprs, Context context) {
+        if (argExprs.size() < 3) throw new RuntimeException("pmap requires 3 arguments");
+        List<JsonNode> items = items(argExprs, context);
+        JsonNode[] mapped = evaluate(items, argExprs, context);
+        ArrayNode result = JsonUtil.createArray();
+        for (JsonNode value : mapped) {
+            // Arrays store a missing value as null
+            result.add(value != null ? value : NullNode.getInstance());
+        }
+        return result;
+    }
+
+    static JsonNode pfilter(List<Expression> argExprs, Context context) {
+        if (argExprs.size() < 3) throw new RuntimeException("pfilter requires 3 arguments");
+        List<JsonNode> items = items(argExprs, context);
+        JsonNode[] tests = evaluate(items, argExprs, context);
+        ArrayNode result = JsonUtil.createArray();
+        for (int i = 0; i < tests.length; i++) {
+            if (StreamPipeline.isTruthy(tests[i])) {
+                result.add(items.get(i));
+            }
+        }
+        return result;
+    }
+
+    static JsonNode pflatMap(List<Expression> argExprs, Context context) {
+        if (argExprs.size() < 3) throw new RuntimeException("pflatMap requires 3 arguments");
+        List<JsonNode> items = items(argExprs, context);
+        JsonNode[] mapped = evaluate(items, argExprs, context);
+        ArrayNode result = JsonUtil.createArray();
+        for (JsonNode value : mapped) {
+            if (value == null || !value.isArray()) {
+                result.add(value != null ? value : NullNode.getInstance());
+                continue;
+            }
+            for (JsonNode item : value) {
+                result.add(item != null ? item : NullNode.getInstance());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The items of the array argument; like map, a non-array has none.
+     */
+    private static List<JsonNode> items(List<Expression> argExprs, Context context) {
+        Iterable<JsonNode> source = StreamPipeline.source(argExprs.get(0), context);
+        List<JsonNode> items = new ArrayList<>(source instanceof JsonNode ? ((JsonNode) source).size() : 16);
+        if (source != null) {
+            source.forEach(items::add);
+        }
+        return items;
+    }
+
+    /**
+     * Evaluate the lambda body for every item.
+     * @return The result for each item, at the item's index
+     */
+    private static JsonNode[] evaluate(List<JsonNode> items, List<Expression> argExprs, Context context) {
+        String itemName = argExprs.get(1).evaluate(context).asText();
+        Expression body = argExprs.get(2);
+        Batch batch = new Batch(items, itemName, body, context);
+
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        boolean parallel = items.size() >= PARALLEL_THRESHOLD && parallelism > 1
+            && body instanceof ScopedExpr && ((ScopedExpr) body).isParallelizable();
+        if (parallel) {
+            int rangeSize = Math.max(MIN_RANGE, items.size() / (parallelism * RANGES_PER_THREAD));
+            ForkJoinPool.commonPool().invoke(new Range(batch, 0, items.size(), rangeSize));
+        } else {
+            batch.run(0, items.size());
+        }
+        if (batch.failure != null) {
+            throw batch.failure;
+        }
+        return batch.results;
+    }
+
+    /**
+     * State shared by the ranges of one call. Each range only writes the result slots of
+     * its own items.
+     */
+    private static final class Batch {
+        private final List<JsonNode> items;
+        private final String itemName;
+        private final Expression body;
+        private final Context context;
+        private final JsonNode[] results;
+        // First failing item so far; once set, ranges past it stop early
+        private volatile int failedIndex = Integer.MAX_VALUE;
+        private RuntimeException failure;
+
+        Batch(List<JsonNode> items, String itemName, Expression body, Context context) {
+            this.items = items;
+            this.itemName = itemName;
+            this.body = body;
+            this.context = context;
+            this.results = new JsonNode[items.size()];
+        }
+
+        void run(int from, int to) {
+            Context itemContext = context.newLambdaContext(body);
+            for (int i = from; i < to && i < failedIndex; i++) {
+                try {
+                    itemContext.redefine(itemName, items.get(i));
+                    results[i] = body.evaluate(itemContext);
+                } catch (RuntimeException e) {
+                    fail(i, e);
+                    return;
+                }
+            }
+        }
+
+        private synchronized void fail(int index, RuntimeException e) {
+            if (index < failedIndex) {
+                failedIndex = index;
+                failure = e;
+            }
+        }
+    }
+
+    private static final class Range extends RecursiveAction {
+        private final Batch batch;
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+
+        Range(Batch batch, int from, int to, int rangeSize) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rangeSize) {
+                batch.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Range(batch, from, middle, rangeSize), new Range(batch, middle, to, rangeSize));
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.morphium.builtin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.morphium.parser.ast.CallExpr;
+import com.morphium.parser.ast.Expression;
+import com.morphium.parser.ast.IdentifierExpr;
+import com.morphium.parser.ast.ScopedExpr;
+import com.morphium.runtime.Context;
+import com.morphium.util.JsonUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Fuses nested stream builtins into one pass.
+ *
+ * When the array argument of a stream builtin is itself a call to map, filter, flatMap,
+ * skip, limit, peek or distinct, the whole chain runs as a pull-based iterator over the
+ * innermost array instead of building an array per stage. Consumers that stop early
+ * (findFirst, anyMatch, limit...) stop pulling, so upstream lambdas only run for the
+ * items actually needed. A stage whose result escapes, for example into a variable,
+ * returns a {@link LazySequence} when that is safe, so the same applies across lets.
+ *
+ * Only lambdas that cannot observe when they run are fused. A stage whose lambda may
+ * have effects (see {@link ScopedExpr#isDeferrable()}) still runs over every item before
+ * the next stage starts, as the nested calls would, so its effects keep their order and
+ * count.
+ */
+final class StreamPipeline {
+    // Fusible stages and the number of arguments each needs
+    private static final Map<String, Integer> STAGES = new HashMap<>();
+
+    static {
+        STAGES.put("map", 3);
+        STAGES.put("filter", 3);
+        STAGES.put("flatMap", 3);
+        STAGES.put("peek", 3);
+        STAGES.put("skip", 2);
+        STAGES.put("limit", 2);
+        STAGES.put("distinct", 1);
+    }
+
+    private StreamPipeline() {
+    }
+
+    /**
+     * Evaluate the array argument of a stream builtin.
+     * @return the items to consume, or null when the argument is not an array
+     */
+    static Iterable<JsonNode> source(Expression arrayExpr, Context context) {
+        Pipeline pipeline = build(arrayExpr, context);
+        if (!pipeline.isArray) {
+            return null;
+        }
+        if (pipeline.items == null) {
+            return pipeline.root;
+        }
+        Iterator<JsonNode> items = pipeline.items;
+        return () -> items;
+    }
+
+    /**
+     * Run a stage builtin over its array argument, fusing any stages nested inside it.
+     * The result is a {@link LazySequence} when no lambda in the chain can observe when
+     * it runs, and a fully built array otherwise.
+     */
+    static JsonNode apply(String name, List<Expression> args, Context context) {
+        Pipeline pipeline = build(args.get(0), context);
+        pipeline.add(name, args, context);
+        if (!pipeline.isArray) {
+            // Only peek passes a non-array through
+            return pipeline.root;
+        }
+        if (pipeline.deferrable) {
+            context.markLazyValue();
+            return LazySequence.of(pipeline.items);
+        }
+        ArrayNode result = JsonUtil.createArray();
+        while (pipeline.items.hasNext()) {
+            result.add(pipeline.items.next());
+        }
+        return result;
+    }
+
+    private static Pipeline build(Expression arrayExpr, Context context) {
+        List<CallExpr> chain = new ArrayList<>();
+        Expression current = arrayExpr;
+        while (isStage(current, context)) {
+            chain.add((CallExpr) current);
+            current = ((CallExpr) current).getArguments().get(0);
+        }
+
+        Pipeline pipeline = new Pipeline(current.evaluate(context));
+        // Innermost stage first, in the order the nested calls would have run
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            CallExpr call = chain.get(i);
+            pipeline.add(((IdentifierExpr) call.getCallee()).getName(), call.getArguments(), context);
+        }
+        return pipeline;
+    }
+
+    /**
+     * A source value and the stages applied to it so far.
+     */
+    private static final class Pipeline {
+        private final JsonNode root;
+        private boolean isArray;
+        // Null until a stage is added, the root array is then consumed directly
+        private Iterator<JsonNode> items;
+        private boolean deferrable = true;
+
+        Pipeline(JsonNode root) {
+            // A missing property reads as null, which a stage treats like any non-array
+            this.root = root != null ? root : NullNode.getInstance();
+            this.isArray = this.root.isArray();
+        }
+
+        void add(String name, List<Expression> args, Context context) {
+            if (!isArray && !name.equals("peek")) {
+                // Every stage but peek turns a non-array into an empty array
+                isArray = true;
+                items = Collections.emptyIterator();
+            } else if (items == null) {
+                items = isArray ? root.iterator() : Collections.<JsonNode>emptyIterator();
+            }
+            boolean eager = false;
+            if (STAGES.get(name) == 3) {
+                Expression body = args.get(2);
+                eager = !(body instanceof ScopedExpr && ((ScopedExpr) body).isDeferrable());
+                deferrable &= !eager;
+            }
+            items = stage(name, args, items, context);
+            if (eager) {
+                // Finish this stage now, before anything downstream or after it runs
+                List<JsonNode> done = new ArrayList<>();
+                items.forEachRemaining(done::add);
+                items = done.iterator();
+            }
+        }
+    }
+
+    /**
+     * Count the items of a source without materializing them.
+     */
+    static int size(Iterable<JsonNode> items) {
+        if (items instanceof JsonNode) {
+            return ((JsonNode) items).size();
+        }
+        int count = 0;
+        for (Iterator<JsonNode> it = items.iterator(); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean isStage(Expression expr, Context context) {
+        if (!(expr instanceof CallExpr) || !(((CallExpr) expr).getCallee() instanceof IdentifierExpr)) {
+            return false;
+        }
+        CallExpr call = (CallExpr) expr;
+        String name = ((IdentifierExpr) call.getCallee()).getName();
+        Integer arity = STAGES.get(name);
+        // User functions take precedence over builtins of the same name
+        return arity != null && call.getArguments().size() >= arity && context.getFunction(name) == null;
+    }
+
+    private static Iterator<JsonNode> stage(String name, List<Expression> args, Iterator<JsonNode> upstream,
+                                            Context context) {
+        switch (name) {
+            case "map":
+                return new MapStage(upstream, args, context, false);
+            case "flatMap":
+                return new MapStage(upstream, args, context, true);
+            case "filter":
+                return new FilterStage(upstream, args, context);
+            case "peek":
+                return new PeekStage(upstream, args, context);
+            case "skip":
+                return new SkipStage(upstream, args.get(1).evaluate(context).asInt());
+            case "limit":
+                return new LimitStage(upstream, args.get(1).evaluate(context).asInt());
+            case "distinct":
+                return new DistinctStage(upstream);
+            default:
+                throw new IllegalStateException("Not a stream stage: " + name);
+        }
+    }
+
+    /**
+     * Base for stages that compute their next item on demand; null marks the end.
+     */
+    private abstract static class Stage implements Iterator<JsonNode> {
+        protected final Iterator<JsonNode> upstream;
+        private JsonNode next;
+
+        Stage(Iterator<JsonNode> upstream) {
+            this.upstream = upstream;
+        }
+
+        protected abstract JsonNode advance();
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public JsonNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JsonNode item = next;
+            next = null;
+            return item;
+        }
+    }
+
+    private abstract static class LambdaStage extends Stage {
+        protected final Expression body;
+        protected final Context itemContext;
+        private final String itemName;
+
+        LambdaStage(Iterator<JsonNode> upstream, List<Expression> args, Context context) {
+            super(upstream);
+            this.itemName = args.get(1).evaluate(context).asText();
+            this.body = args.get(2);
+            this.itemContext = context.newLambdaContext(body);
+        }
+
+        protected JsonNode apply(JsonNode item) {
+            itemContext.redefine(itemName, item);
+            return body.evaluate(itemContext);
+        }
+    }
+
+    private static final class MapStage extends LambdaStage {
+        private final boolean flatten;
+        private Iterator<JsonNode> expanded = Collections.emptyIterator();
+
+        MapStage(Iterator<JsonNode> upstream, List<Expression> args, Context context, boolean flatten) {
+            super(upstream, args, context);
+            this.flatten = flatten;
+        }
+
+        @Override
+        protected JsonNode advance() {
+            while (!expanded.hasNext()) {
+                if (!upstream.hasNext()) {
+                    return null;
+                }
+                JsonNode mapped = apply(upstream.next());
+                // Arrays store a missing value as null
+                if (mapped == null) {
+                    mapped = NullNode.getInstance();
+                }
+                if (!flatten || !mapped.isArray()) {
+                    return mapped;
+                }
+                expanded = mapped.iterator();
+            }
+            JsonNode item = expanded.next();
+            return item != null ? item : NullNode.getInstance();
+        }
+    }
+
+    private static final class FilterStage extends LambdaStage {
+        FilterStage(Iterator<JsonNode> upstream, List<Expression> args, Context context) {
+            super(upstream, args, context);
+        }
+
+        @Override
+        protected JsonNode advance() {
+            while (upstream.hasNext()) {
+                JsonNode item = upstream.next();
+                if (isTruthy(apply(item))) {
+                    return item;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class PeekStage extends LambdaStage {
+        PeekStage(Iterator<JsonNode> upstream, List<Expression> args, Context context) {
+            super(upstream, args, context);
+        }
+
+        @Override
+        protected JsonNode advance() {
+            if (!upstream.hasNext()) {
+                return null;
+            }
+            JsonNode item = upstream.next();
+            apply(item);
+            return item;
+        }
+    }
+
+    private static final class SkipStage extends Stage {
+        private int remaining;
+
+        SkipStage(Iterator<JsonNode> upstream, int n) {
+            super(upstream);
+            this.remaining = n;
+        }
+
+        @Override
+        protected JsonNode advance() {
+            while (remaining > 0 && upstream.hasNext()) {
+                upstream.next();
+                remaining--;
+            }
+            return upstream.hasNext() ? upstream.next() : null;
+        }
+    }
+
+    private static final class LimitStage extends Stage {
+        private int remaining;
+
+        LimitStage(Iterator<JsonNode> upstream, int n) {
+            super(upstream);
+            this.remaining = n;
+        }
+
+        @Override
+        protected JsonNode advance() {
+            // Stop before pulling, so nothing upstream runs past the limit
+            if (remaining <= 0 || !upstream.hasNext()) {
+                return null;
+            }
+            remaining--;
+            return upstream.next();
+        }
+    }
+
+    private static final class DistinctStage extends Stage {
+        private final Set<String> seen = new HashSet<>();
+
+        DistinctStage(Iterator<JsonNode> upstream) {
+            super(upstream);
+        }
+
+        @Override
+        protected JsonNode advance() {
+            while (upstream.hasNext()) {
+                JsonNode item = upstream.next();
+                if (seen.add(item.toString())) {
+                    return item;
+                }
+            }
+            return null;
+        }
+    }
+
+    static boolean isTruthy(JsonNode node) {
+        if (node == null || node.isNull()) return false;
+        if (node.isBoolean()) return node.asBoolean();
+        if (node.isNumber()) return node.asDouble() != 0;
+        if (node.isTextual()) return !node.asText().isEmpty();
+        if (node.isArray()) return !node.isEmpty();
+        if (node.isObject()) return !node.isEmpty();
+        return true;
+    }
+}
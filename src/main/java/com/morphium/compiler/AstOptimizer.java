@@ -0,0 +1,365 @@
+package com.morphium.compiler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.morphium.parser.ast.*;
+import com.morphium.util.JsonUtil;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a parsed tree into an equivalent, cheaper one.
+ *
+ * Operators over constants are folded, branches of if/switch/ternary/&&/|| with constant
+ * conditions are pruned, lets that nothing reads are dropped and object/array literals
+ * made only of constants are built once and shared. Truthiness and equality are always
+ * decided by evaluating the original node kinds, so the rules stay defined in one place.
+ *
+ * Shared literals are frozen with {@link JsonUtil#freeze(JsonNode)} and returned by
+ * reference from every evaluation: results may contain them, so a caller that modifies
+ * a result in place must copy it first, or the modification is rejected.
+ */
+public class AstOptimizer {
+    // Identity marker used to probe how a node treats a constant operand
+    private static final JsonNode PROBE = new TextNode("<probe>");
+
+    public Expression optimize(Expression expr) {
+        if (expr == null) {
+            return null;
+        }
+        if (expr instanceof BinaryExpr) {
+            return optimizeBinary((BinaryExpr) expr);
+        }
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            UnaryExpr optimized = new UnaryExpr(unary.getOperator(), optimize(unary.getOperand()));
+            return isConstant(optimized.getOperand()) ? fold(optimized) : optimized;
+        }
+        if (expr instanceof TernaryExpr) {
+            TernaryExpr ternary = (TernaryExpr) expr;
+            Expression condition = optimize(ternary.getCondition());
+            Expression thenExpr = optimize(ternary.getThenExpr());
+            Expression elseExpr = optimize(ternary.getElseExpr());
+            if (isConstant(condition)) {
+                return isTruthy(new TernaryExpr(condition, probe(), constant(NullNode.getInstance())))
+                    ? thenExpr : elseExpr;
+            }
+            return new TernaryExpr(condition, thenExpr, elseExpr);
+        }
+        if (expr instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) expr;
+            Expression condition = optimize(ifStmt.getCondition());
+            Expression thenBranch = optimize(ifStmt.getThenBranch());
+            Expression elseBranch = optimize(ifStmt.getElseBranch());
+            if (isConstant(condition)) {
+                if (isTruthy(new IfStatement(condition, probe(), null))) {
+                    return thenBranch;
+                }
+                return elseBranch != null ? elseBranch : constant(NullNode.getInstance());
+            }
+            return new IfStatement(condition, thenBranch, elseBranch);
+        }
+        if (expr instanceof SwitchStatement) {
+            return optimizeSwitch((SwitchStatement) expr);
+        }
+        if (expr instanceof ObjectExpr) {
+            ObjectExpr object = (ObjectExpr) expr;
+            ObjectExpr optimized = new ObjectExpr();
+            for (Map.Entry<String, Expression> entry : object.getProperties().entrySet()) {
+                optimized.addProperty(entry.getKey(), optimize(entry.getValue()));
+            }
+            for (Map.Entry<Expression, Expression> entry : object.getComputedProperties().entrySet()) {
+                optimized.addComputedProperty(optimize(entry.getKey()), optimize(entry.getValue()));
+            }
+            boolean literal = allConstant(optimized.getProperties().values())
+                && allConstant(optimized.getComputedProperties().keySet())
+                && allConstant(optimized.getComputedProperties().values());
+            return literal ? fold(optimized) : optimized;
+        }
+        if (expr instanceof ArrayExpr) {
+            ArrayExpr optimized = new ArrayExpr();
+            for (Expression element : ((ArrayExpr) expr).getElements()) {
+                optimized.addElement(optimize(element));
+            }
+            return allConstant(optimized.getElements()) ? fold(optimized) : optimized;
+        }
+        if (expr instanceof BlockExpr) {
+            return optimizeBlock((BlockExpr) expr);
+        }
+        if (expr instanceof MemberAccessExpr) {
+            MemberAccessExpr access = (MemberAccessExpr) expr;
+            // A non-computed property is a field name and stays as parsed
+            Expression property = access.isComputed() ? optimize(access.getProperty()) : access.getProperty();
+            return new MemberAccessExpr(optimize(access.getObject()), property, access.isSafe(), access.isComputed());
+        }
+        if (expr instanceof CallExpr) {
+            CallExpr call = (CallExpr) expr;
+            CallExpr optimized = new CallExpr(call.getCallee());
+            for (Expression arg : call.getArguments()) {
+                optimized.addArgument(optimize(arg));
+            }
+            return optimized;
+        }
+        if (expr instanceof LetStatement) {
+            LetStatement let = (LetStatement) expr;
+            Expression body = isNullLiteral(let.getBody()) ? let.getBody() : optimize(let.getBody());
+            return new LetStatement(let.getName(), optimize(let.getValue()), body);
+        }
+        if (expr instanceof GlobalVarStatement) {
+            GlobalVarStatement global = (GlobalVarStatement) expr;
+            return new GlobalVarStatement(global.getName(), optimize(global.getValue()));
+        }
+        if (expr instanceof ExportStatement) {
+            ExportStatement export = (ExportStatement) expr;
+            return new ExportStatement(export.getName(), optimize(export.getValue()));
+        }
+        if (expr instanceof FunctionDefExpr) {
+            FunctionDefExpr function = (FunctionDefExpr) expr;
+            return new FunctionDefExpr(function.getName(), function.getParameters(), optimize(function.getBody()));
+        }
+        if (expr instanceof ForOfStatement) {
+            ForOfStatement forOf = (ForOfStatement) expr;
+            return new ForOfStatement(forOf.getItemName(), optimize(forOf.getIterable()), optimize(forOf.getBody()));
+        }
+        if (expr instanceof ForInStatement) {
+            ForInStatement forIn = (ForInStatement) expr;
+            return new ForInStatement(forIn.getIndexName(), optimize(forIn.getIterable()), optimize(forIn.getBody()));
+        }
+        // Literals, identifiers, imports and break/continue have nothing to rewrite
+        return expr;
+    }
+
+    private Expression optimizeBinary(BinaryExpr binary) {
+        Expression left = optimize(binary.getLeft());
+        Expression right = optimize(binary.getRight());
+        BinaryExpr.Operator operator = binary.getOperator();
+        if (isConstant(left)) {
+            switch (operator) {
+                case AND:
+                    return isTruthy(new BinaryExpr(left, BinaryExpr.Operator.AND, probe())) ? right : left;
+                case OR:
+                    return isTruthy(new BinaryExpr(left, BinaryExpr.Operator.AND, probe())) ? left : right;
+                case NULL_COALESCE:
+                    return left.evaluate(null).isNull() ? right : left;
+                default:
+                    break;
+            }
+        }
+        BinaryExpr optimized = new BinaryExpr(left, operator, right);
+        return isConstant(left) && isConstant(right) ? fold(optimized) : optimized;
+    }
+
+    private Expression optimizeSwitch(SwitchStatement switchStmt) {
+        Expression value = optimize(switchStmt.getExpression());
+        List<SwitchStatement.CaseClause> cases = new ArrayList<>(switchStmt.getCases().size());
+        boolean constantCases = true;
+        for (SwitchStatement.CaseClause clause : switchStmt.getCases()) {
+            Expression caseValue = optimize(clause.getValue());
+            constantCases &= isConstant(caseValue);
+            cases.add(new SwitchStatement.CaseClause(caseValue, optimize(clause.getBody())));
+        }
+        Expression defaultCase = optimize(switchStmt.getDefaultCase());
+        if (!isConstant(value) || !constantCases) {
+            return new SwitchStatement(value, cases, defaultCase);
+        }
+
+        // Let the switch itself pick the branch, with each body replaced by its index
+        List<SwitchStatement.CaseClause> indexed = new ArrayList<>(cases.size());
+        for (int i = 0; i < cases.size(); i++) {
+            indexed.add(new SwitchStatement.CaseClause(cases.get(i).getValue(), constant(IntNode.valueOf(i))));
+        }
+        JsonNode chosen = new SwitchStatement(value, indexed, constant(IntNode.valueOf(-1))).evaluate(null);
+        if (chosen.isInt() && chosen.asInt() >= 0) {
+            return cases.get(chosen.asInt()).getBody();
+        }
+        return defaultCase != null ? defaultCase : constant(NullNode.getInstance());
+    }
+
+    private Expression optimizeBlock(BlockExpr block) {
+        List<Expression> children = new ArrayList<>(block.getExpressions().size());
+        for (Expression child : block.getExpressions()) {
+            children.add(optimize(child));
+        }
+
+        // A let is visible to everything else in its block, including functions defined before it
+        Set<String> names = null;
+        BlockExpr optimized = new BlockExpr();
+        for (int i = 0; i < children.size(); i++) {
+            Expression child = children.get(i);
+            // The last expression is the block's result, so it is always kept
+            if (i < children.size() - 1 && isDroppableLet(child)) {
+                if (names == null) {
+                    names = new HashSet<>();
+                    for (Expression sibling : children) {
+                        collectNames(sibling, names);
+                    }
+                }
+                if (!names.contains(((LetStatement) child).getName())) {
+                    continue;
+                }
+            }
+            optimized.addExpression(child);
+        }
+        return optimized;
+    }
+
+    private boolean isDroppableLet(Expression expr) {
+        return expr instanceof LetStatement
+            && isNullLiteral(((LetStatement) expr).getBody())
+            && isPure(((LetStatement) expr).getValue());
+    }
+
+    /**
+     * True when evaluating the expression has no effect besides its value and cannot fail.
+     */
+    private boolean isPure(Expression expr) {
+        if (expr == null || expr instanceof LiteralExpr || expr instanceof ConstantExpr
+                || expr instanceof IdentifierExpr) {
+            return true;
+        }
+        if (expr instanceof ObjectExpr) {
+            ObjectExpr object = (ObjectExpr) expr;
+            return object.getProperties().values().stream().allMatch(this::isPure)
+                && object.getComputedProperties().keySet().stream().allMatch(this::isPure)
+                && object.getComputedProperties().values().stream().allMatch(this::isPure);
+        }
+        if (expr instanceof ArrayExpr) {
+            return ((ArrayExpr) expr).getElements().stream().allMatch(this::isPure);
+        }
+        if (expr instanceof BinaryExpr) {
+            return isPure(((BinaryExpr) expr).getLeft()) && isPure(((BinaryExpr) expr).getRight());
+        }
+        if (expr instanceof UnaryExpr) {
+            return isPure(((UnaryExpr) expr).getOperand());
+        }
+        if (expr instanceof TernaryExpr) {
+            TernaryExpr ternary = (TernaryExpr) expr;
+            return isPure(ternary.getCondition()) && isPure(ternary.getThenExpr()) && isPure(ternary.getElseExpr());
+        }
+        return false;
+    }
+
+    /**
+     * Collect every identifier name read anywhere in the tree. Over-approximates: field
+     * names after a dot are included too, which only keeps more lets alive.
+     */
+    private void collectNames(Expression expr, Set<String> names) {
+        if (expr == null) {
+            return;
+        }
+        if (expr instanceof IdentifierExpr) {
+            names.add(((IdentifierExpr) expr).getName());
+        } else if (expr instanceof MemberAccessExpr) {
+            collectNames(((MemberAccessExpr) expr).getObject(), names);
+            collectNames(((MemberAccessExpr) expr).getProperty(), names);
+        } else if (expr instanceof CallExpr) {
+            collectNames(((CallExpr) expr).getCallee(), names);
+            for (Expression arg : ((CallExpr) expr).getArguments()) {
+                collectNames(arg, names);
+            }
+        } else if (expr instanceof BinaryExpr) {
+            collectNames(((BinaryExpr) expr).getLeft(), names);
+            collectNames(((BinaryExpr) expr).getRight(), names);
+        } else if (expr instanceof UnaryExpr) {
+            collectNames(((UnaryExpr) expr).getOperand(), names);
+        } else if (expr instanceof TernaryExpr) {
+            collectNames(((TernaryExpr) expr).getCondition(), names);
+            collectNames(((TernaryExpr) expr).getThenExpr(), names);
+            collectNames(((TernaryExpr) expr).getElseExpr(), names);
+        } else if (expr instanceof ObjectExpr) {
+            for (Expression value : ((ObjectExpr) expr).getProperties().values()) {
+                collectNames(value, names);
+            }
+            for (Map.Entry<Expression, Expression> entry : ((ObjectExpr) expr).getComputedProperties().entrySet()) {
+                collectNames(entry.getKey(), names);
+                collectNames(entry.getValue(), names);
+            }
+        } else if (expr instanceof ArrayExpr) {
+            for (Expression element : ((ArrayExpr) expr).getElements()) {
+                collectNames(element, names);
+            }
+        } else if (expr instanceof BlockExpr) {
+            for (Expression child : ((BlockExpr) expr).getExpressions()) {
+                collectNames(child, names);
+            }
+        } else if (expr instanceof LetStatement) {
+            collectNames(((LetStatement) expr).getValue(), names);
+            collectNames(((LetStatement) expr).getBody(), names);
+        } else if (expr instanceof GlobalVarStatement) {
+            collectNames(((GlobalVarStatement) expr).getValue(), names);
+        } else if (expr instanceof ExportStatement) {
+            collectNames(((ExportStatement) expr).getValue(), names);
+        } else if (expr instanceof FunctionDefExpr) {
+            collectNames(((FunctionDefExpr) expr).getBody(), names);
+        } else if (expr instanceof IfStatement) {
+            collectNames(((IfStatement) expr).getCondition(), names);
+            collectNames(((IfStatement) expr).getThenBranch(), names);
+            collectNames(((IfStatement) expr).getElseBranch(), names);
+        } else if (expr instanceof SwitchStatement) {
+            SwitchStatement switchStmt = (SwitchStatement) expr;
+            collectNames(switchStmt.getExpression(), names);
+            for (SwitchStatement.CaseClause clause : switchStmt.getCases()) {
+                collectNames(clause.getValue(), names);
+                collectNames(clause.getBody(), names);
+            }
+            collectNames(switchStmt.getDefaultCase(), names);
+        } else if (expr instanceof ForOfStatement) {
+            collectNames(((ForOfStatement) expr).getIterable(), names);
+            collectNames(((ForOfStatement) expr).getBody(), names);
+        } else if (expr instanceof ForInStatement) {
+            collectNames(((ForInStatement) expr).getIterable(), names);
+            collectNames(((ForInStatement) expr).getBody(), names);
+        } else if (expr instanceof ImportStatement && ((ImportStatement) expr).isDynamic()) {
+            for (Expression arg : ((ImportStatement) expr).getDynamicArgs()) {
+                collectNames(arg, names);
+            }
+        }
+    }
+
+    /**
+     * Evaluate a node whose operands are all constant. Operations that fail are left in
+     * place so the error still surfaces at run time.
+     */
+    private Expression fold(Expression expr) {
+        try {
+            return constant(expr.evaluate(null));
+        } catch (RuntimeException e) {
+            return expr;
+        }
+    }
+
+    private boolean isTruthy(Expression probeExpr) {
+        return probeExpr.evaluate(null) == PROBE;
+    }
+
+    private static boolean allConstant(Iterable<Expression> exprs) {
+        for (Expression expr : exprs) {
+            if (!isConstant(expr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isConstant(Expression expr) {
+        return expr instanceof LiteralExpr || expr instanceof ConstantExpr;
+    }
+
+    private static Expression probe() {
+        return new ConstantExpr(PROBE);
+    }
+
+    private static Expression constant(JsonNode value) {
+        return new ConstantExpr(JsonUtil.freeze(value));
+    }
+
+    private static boolean isNullLiteral(Expression expr) {
+        return expr instanceof LiteralExpr && ((LiteralExpr) expr).getValue() == null;
+    }
+}
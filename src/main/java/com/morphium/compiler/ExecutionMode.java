@@ -0,0 +1,14 @@
+package com.morphium.compiler;
+
+/**
+ * How the engine runs parsed transforms. "Compiling" means specializing the parsed tree
+ * with {@link ExpressionCompiler}, not generating bytecode.
+ */
+public enum ExecutionMode {
+    /** Always walk the parsed tree. The default. */
+    INTERPRET,
+    /** Interpret until a script has run {@code compileThreshold} times, then compile it. */
+    TIERED,
+    /** Compile every script before its first run. */
+    COMPILE
+}
@@ -0,0 +1,254 @@
+package com.morphium.compiler;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.morphium.parser.ast.*;
+import com.morphium.runtime.Context;
+import com.morphium.util.JsonUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites a parsed tree into a specialized tree of the same node kinds plus a few
+ * closures. No JVM classes are generated.
+ *
+ * Literals become shared constant nodes, chains like {@code $.a.b?.c} become a single
+ * flattened path walk and object literals with static keys evaluate into pre-sized
+ * nodes. Every other node is rebuilt around its compiled children, so the semantics of
+ * each construct stay defined in one place.
+ *
+ * The gain is modest: on path-heavy scripts the specialized tree runs up to about a
+ * fifth faster than the interpreted one and is often within noise, while compiling a
+ * script costs microseconds once. {@code PerformanceBenchmark} measures both.
+ */
+public class ExpressionCompiler {
+
+    public Expression compile(Expression expr) {
+        if (expr == null) {
+            return null;
+        }
+        if (expr instanceof LiteralExpr) {
+            return compileLiteral((LiteralExpr) expr);
+        }
+        if (expr instanceof MemberAccessExpr) {
+            return compileMemberAccess((MemberAccessExpr) expr);
+        }
+        if (expr instanceof ObjectExpr) {
+            return compileObject((ObjectExpr) expr);
+        }
+        if (expr instanceof ArrayExpr) {
+            ArrayExpr compiled = new ArrayExpr();
+            for (Expression element : ((ArrayExpr) expr).getElements()) {
+                compiled.addElement(compile(element));
+            }
+            return compiled;
+        }
+        if (expr instanceof CallExpr) {
+            CallExpr call = (CallExpr) expr;
+            // The callee is resolved by name, never evaluated, so it stays as parsed
+            CallExpr compiled = new CallExpr(call.getCallee());
+            for (Expression arg : call.getArguments()) {
+                compiled.addArgument(compile(arg));
+            }
+            compiled.setShadowable(call.isShadowable());
+            return compiled;
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            return new BinaryExpr(compile(binary.getLeft()), binary.getOperator(), compile(binary.getRight()));
+        }
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            return new UnaryExpr(unary.getOperator(), compile(unary.getOperand()));
+        }
+        if (expr instanceof TernaryExpr) {
+            TernaryExpr ternary = (TernaryExpr) expr;
+            return new TernaryExpr(compile(ternary.getCondition()), compile(ternary.getThenExpr()),
+                compile(ternary.getElseExpr()));
+        }
+        if (expr instanceof BlockExpr) {
+            BlockExpr block = (BlockExpr) expr;
+            BlockExpr compiled = new BlockExpr();
+            for (Expression child : block.getExpressions()) {
+                compiled.addExpression(compile(child));
+            }
+            compiled.setScope(block.getScope());
+            return compiled;
+        }
+        if (expr instanceof LetStatement) {
+            LetStatement let = (LetStatement) expr;
+            // The empty body marks a plain binding, keep it recognizable
+            Expression body = isNullLiteral(let.getBody()) ? let.getBody() : compile(let.getBody());
+            LetStatement compiled = new LetStatement(let.getName(), compile(let.getValue()), body);
+            compiled.setBinding(let.getBinding());
+            return compiled;
+        }
+        if (expr instanceof GlobalVarStatement) {
+            GlobalVarStatement global = (GlobalVarStatement) expr;
+            return new GlobalVarStatement(global.getName(), compile(global.getValue()));
+        }
+        if (expr instanceof ExportStatement) {
+            ExportStatement export = (ExportStatement) expr;
+            return new ExportStatement(export.getName(), compile(export.getValue()));
+        }
+        if (expr instanceof FunctionDefExpr) {
+            FunctionDefExpr function = (FunctionDefExpr) expr;
+            FunctionDefExpr compiled = new FunctionDefExpr(function.getName(), function.getParameters(),
+                compile(function.getBody()));
+            compiled.setScope(function.getScope());
+            return compiled;
+        }
+        if (expr instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) expr;
+            return new IfStatement(compile(ifStmt.getCondition()), compile(ifStmt.getThenBranch()),
+                compile(ifStmt.getElseBranch()));
+        }
+        if (expr instanceof SwitchStatement) {
+            SwitchStatement switchStmt = (SwitchStatement) expr;
+            List<SwitchStatement.CaseClause> cases = new ArrayList<>(switchStmt.getCases().size());
+            for (SwitchStatement.CaseClause clause : switchStmt.getCases()) {
+                cases.add(new SwitchStatement.CaseClause(compile(clause.getValue()), compile(clause.getBody())));
+            }
+            return new SwitchStatement(compile(switchStmt.getExpression()), cases, compile(switchStmt.getDefaultCase()));
+        }
+        if (expr instanceof ForOfStatement) {
+            ForOfStatement forOf = (ForOfStatement) expr;
+            ForOfStatement compiled = new ForOfStatement(forOf.getItemName(), compile(forOf.getIterable()),
+                compile(forOf.getBody()));
+            compiled.setScope(forOf.getScope());
+            return compiled;
+        }
+        if (expr instanceof ForInStatement) {
+            ForInStatement forIn = (ForInStatement) expr;
+            ForInStatement compiled = new ForInStatement(forIn.getIndexName(), compile(forIn.getIterable()),
+                compile(forIn.getBody()));
+            compiled.setScope(forIn.getScope());
+            return compiled;
+        }
+        if (expr instanceof ScopedExpr) {
+            ScopedExpr scoped = (ScopedExpr) expr;
+            return new ScopedExpr(scoped.getScope(), compile(scoped.getBody()), scoped.isDeferrable(),
+                scoped.isParallelizable());
+        }
+        // Identifiers (with their resolved binding), imports, break/continue and already
+        // compiled nodes run as they are
+        return expr;
+    }
+
+    private Expression compileLiteral(LiteralExpr literal) {
+        // Literal nodes are immutable value nodes, one instance serves every evaluation
+        JsonNode constant = literal.evaluate(null);
+        return context -> constant;
+    }
+
+    private Expression compileMemberAccess(MemberAccessExpr access) {
+        if (access.isComputed()) {
+            Expression object = compile(access.getObject());
+            boolean safe = access.isSafe();
+            if (access.getProperty() instanceof LiteralExpr) {
+                JsonNode key = access.getProperty().evaluate(null);
+                return context -> MemberAccessExpr.getComputed(object.evaluate(context), key, safe);
+            }
+            return new MemberAccessExpr(object, compile(access.getProperty()), safe, true);
+        }
+
+        // Flatten a.b?.c.d into one walk over the property names
+        List<String> names = new ArrayList<>();
+        List<Boolean> safeFlags = new ArrayList<>();
+        Expression current = access;
+        while (current instanceof MemberAccessExpr
+                && !((MemberAccessExpr) current).isComputed()
+                && ((MemberAccessExpr) current).getProperty() instanceof IdentifierExpr) {
+            MemberAccessExpr step = (MemberAccessExpr) current;
+            names.add(0, ((IdentifierExpr) step.getProperty()).getName());
+            safeFlags.add(0, step.isSafe());
+            current = step.getObject();
+        }
+        if (names.isEmpty()) {
+            return new MemberAccessExpr(compile(access.getObject()), compile(access.getProperty()), access.isSafe(), false);
+        }
+
+        Expression root = compile(current);
+        String[] path = names.toArray(new String[0]);
+        boolean[] safe = new boolean[path.length];
+        for (int i = 0; i < safe.length; i++) {
+            safe[i] = safeFlags.get(i);
+        }
+        if (path.length == 1) {
+            String name = path[0];
+            boolean safeStep = safe[0];
+            return context -> MemberAccessExpr.getProperty(root.evaluate(context), name, safeStep);
+        }
+        return context -> {
+            JsonNode node = root.evaluate(context);
+            for (int i = 0; i < path.length; i++) {
+                node = MemberAccessExpr.getProperty(node, path[i], safe[i]);
+            }
+            return node;
+        };
+    }
+
+    private Expression compileObject(ObjectExpr object) {
+        if (!object.getComputedProperties().isEmpty()) {
+            ObjectExpr compiled = new ObjectExpr();
+            for (Map.Entry<String, Expression> entry : object.getProperties().entrySet()) {
+                compiled.addProperty(entry.getKey(), compile(entry.getValue()));
+            }
+            for (Map.Entry<Expression, Expression> entry : object.getComputedProperties().entrySet()) {
+                compiled.addComputedProperty(compile(entry.getKey()), compile(entry.getValue()));
+            }
+            return compiled;
+        }
+
+        int size = object.getProperties().size();
+        String[] keys = new String[size];
+        Expression[] values = new Expression[size];
+        int i = 0;
+        for (Map.Entry<String, Expression> entry : object.getProperties().entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = compile(entry.getValue());
+            i++;
+        }
+        return new CompiledObject(keys, values);
+    }
+
+    /**
+     * Object literal with constant keys, its fields held in arrays.
+     */
+    private static final class CompiledObject implements Expression {
+        private final String[] keys;
+        private final Expression[] values;
+
+        CompiledObject(String[] keys, Expression[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public JsonNode evaluate(Context context) {
+            ObjectNode result = JsonUtil.createObject(keys.length);
+            for (int field = 0; field < keys.length; field++) {
+                result.set(keys[field], values[field].evaluate(context));
+            }
+            return result;
+        }
+
+        @Override
+        public void writeTo(Context context, JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            for (int field = 0; field < keys.length; field++) {
+                generator.writeFieldName(keys[field]);
+                values[field].writeTo(context, generator);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static boolean isNullLiteral(Expression expr) {
+        return expr instanceof LiteralExpr && ((LiteralExpr) expr).getValue() == null;
+    }
+}
@@ -0,0 +1,347 @@
+package com.morphium.compiler;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.morphium.parser.ast.*;
+import com.morphium.util.JsonUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of the input ({@code $}) a script can read, and a reader that parses only
+ * those parts.
+ *
+ * Every chain like {@code $.order.customer.name} adds its path; the value at the end of a
+ * chain may be used as a whole, so everything below it is kept. When the analysis cannot
+ * tell what is read, because {@code $} or a prefix of a chain is used as a value or
+ * indexed with a computed key, the whole value at that point is kept. Arrays are
+ * transparent: the projection of an array applies to each of its elements, and elements
+ * are never dropped, so indexes and sizes stay the same.
+ *
+ * Fields outside the projection are skipped by the parser without building nodes. A
+ * script reading the projected input sees the same values as with the full input.
+ */
+public final class InputProjection {
+    /** Projection that keeps the whole input. */
+    public static final InputProjection ALL = new InputProjection(Node.all());
+
+    private final Node root;
+
+    private InputProjection(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Analyze a parsed or resolved script.
+     */
+    public static InputProjection of(Expression script) {
+        Node root = new Node();
+        new Analyzer(root).visit(script);
+        return root.all ? ALL : new InputProjection(root);
+    }
+
+    /**
+     * True when the whole input is kept.
+     */
+    public boolean isAll() {
+        return root.all;
+    }
+
+    /**
+     * Read the value the parser is positioned on, or the next value if it is positioned
+     * before one, keeping only the projected fields. Like {@code ObjectMapper.readTree},
+     * returns a missing node when there is no content.
+     */
+    public JsonNode read(JsonParser parser) throws IOException {
+        if (parser.currentToken() == null && parser.nextToken() == null) {
+            return MissingNode.getInstance();
+        }
+        return read(parser, root);
+    }
+
+    private static JsonNode read(JsonParser parser, Node node) throws IOException {
+        if (node.all) {
+            return JsonUtil.getMapper().readTree(parser);
+        }
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            ObjectNode object = JsonUtil.createObject(node.children.size());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                Node child = node.children.get(name);
+                if (child == null) {
+                    parser.skipChildren();
+                } else {
+                    object.set(name, read(parser, child));
+                }
+            }
+            return object;
+        }
+        if (token == JsonToken.START_ARRAY) {
+            ArrayNode array = JsonUtil.createArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                array.add(read(parser, node));
+            }
+            return array;
+        }
+        return JsonUtil.getMapper().readTree(parser);
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    /**
+     * A field path segment: a name, or an index that may also be read as a name.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean all;
+
+        static Node all() {
+            Node node = new Node();
+            node.all = true;
+            return node;
+        }
+
+        void add(List<Object> path, int from) {
+            if (all) {
+                return;
+            }
+            if (from == path.size()) {
+                all = true;
+                children.clear();
+                return;
+            }
+            Object segment = path.get(from);
+            if (segment instanceof Integer) {
+                // An index reads an array element, or a field of that name on an object
+                add(path, from + 1);
+                children.computeIfAbsent(segment.toString(), k -> new Node()).add(path, from + 1);
+            } else {
+                children.computeIfAbsent((String) segment, k -> new Node()).add(path, from + 1);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return all ? "*" : children.toString();
+        }
+    }
+
+    /**
+     * Walks the tree and adds every path read from {@code $}.
+     */
+    private static final class Analyzer {
+        private final Node root;
+
+        Analyzer(Node root) {
+            this.root = root;
+        }
+
+        void visit(Expression expr) {
+            if (expr == null || root.all) {
+                return;
+            }
+            if (expr instanceof LiteralExpr || expr instanceof ConstantExpr
+                    || expr instanceof BreakStatement || expr instanceof ContinueStatement) {
+                return;
+            }
+            if (expr instanceof IdentifierExpr) {
+                if (((IdentifierExpr) expr).getName().equals("$")) {
+                    // $ used as a value
+                    root.add(new ArrayList<>(), 0);
+                }
+                return;
+            }
+            if (expr instanceof MemberAccessExpr) {
+                visitAccess((MemberAccessExpr) expr);
+                return;
+            }
+            if (expr instanceof CallExpr) {
+                CallExpr call = (CallExpr) expr;
+                visit(call.getCallee());
+                for (Expression arg : call.getArguments()) {
+                    visit(arg);
+                }
+                return;
+            }
+            if (expr instanceof BinaryExpr) {
+                visit(((BinaryExpr) expr).getLeft());
+                visit(((BinaryExpr) expr).getRight());
+                return;
+            }
+            if (expr instanceof UnaryExpr) {
+                visit(((UnaryExpr) expr).getOperand());
+                return;
+            }
+            if (expr instanceof TernaryExpr) {
+                TernaryExpr ternary = (TernaryExpr) expr;
+                visit(ternary.getCondition());
+                visit(ternary.getThenExpr());
+                visit(ternary.getElseExpr());
+                return;
+            }
+            if (expr instanceof ObjectExpr) {
+                ObjectExpr object = (ObjectExpr) expr;
+                object.getProperties().values().forEach(this::visit);
+                for (Map.Entry<Expression, Expression> entry : object.getComputedProperties().entrySet()) {
+                    visit(entry.getKey());
+                    visit(entry.getValue());
+                }
+                return;
+            }
+            if (expr instanceof ArrayExpr) {
+                ((ArrayExpr) expr).getElements().forEach(this::visit);
+                return;
+            }
+            if (expr instanceof BlockExpr) {
+                ((BlockExpr) expr).getExpressions().forEach(this::visit);
+                return;
+            }
+            if (expr instanceof LetStatement) {
+                LetStatement let = (LetStatement) expr;
+                rebinds(let.getName());
+                visit(let.getValue());
+                visit(let.getBody());
+                return;
+            }
+            if (expr instanceof GlobalVarStatement) {
+                rebinds(((GlobalVarStatement) expr).getName());
+                visit(((GlobalVarStatement) expr).getValue());
+                return;
+            }
+            if (expr instanceof ExportStatement) {
+                visit(((ExportStatement) expr).getValue());
+                return;
+            }
+            if (expr instanceof ImportStatement) {
+                ImportStatement importStmt = (ImportStatement) expr;
+                if (importStmt.isDynamic()) {
+                    importStmt.getDynamicArgs().forEach(this::visit);
+                }
+                return;
+            }
+            if (expr instanceof FunctionDefExpr) {
+                FunctionDefExpr function = (FunctionDefExpr) expr;
+                function.getParameters().forEach(this::rebinds);
+                visit(function.getBody());
+                return;
+            }
+            if (expr instanceof IfStatement) {
+                IfStatement ifStmt = (IfStatement) expr;
+                visit(ifStmt.getCondition());
+                visit(ifStmt.getThenBranch());
+                visit(ifStmt.getElseBranch());
+                return;
+            }
+            if (expr instanceof SwitchStatement) {
+                SwitchStatement switchStmt = (SwitchStatement) expr;
+                visit(switchStmt.getExpression());
+                for (SwitchStatement.CaseClause clause : switchStmt.getCases()) {
+                    visit(clause.getValue());
+                    visit(clause.getBody());
+                }
+                visit(switchStmt.getDefaultCase());
+                return;
+            }
+            if (expr instanceof ForOfStatement) {
+                rebinds(((ForOfStatement) expr).getItemName());
+                visit(((ForOfStatement) expr).getIterable());
+                visit(((ForOfStatement) expr).getBody());
+                return;
+            }
+            if (expr instanceof ForInStatement) {
+                rebinds(((ForInStatement) expr).getIndexName());
+                visit(((ForInStatement) expr).getIterable());
+                visit(((ForInStatement) expr).getBody());
+                return;
+            }
+            if (expr instanceof ScopedExpr) {
+                visit(((ScopedExpr) expr).getBody());
+                return;
+            }
+            if (expr instanceof TieredExpression) {
+                visit(((TieredExpression) expr).getSource());
+                return;
+            }
+            // A node this analysis does not know may read anything
+            root.add(new ArrayList<>(), 0);
+        }
+
+        /**
+         * Add the path of a chain rooted at {@code $}, or visit the parts of any other
+         * member access.
+         */
+        private void visitAccess(MemberAccessExpr access) {
+            List<Object> path = new ArrayList<>();
+            Expression current = access;
+            while (current instanceof MemberAccessExpr) {
+                MemberAccessExpr link = (MemberAccessExpr) current;
+                Object segment = segment(link);
+                if (segment == null) {
+                    // Unknown key: everything below this point may be read
+                    path.clear();
+                    visit(link.getProperty());
+                } else {
+                    path.add(segment);
+                }
+                current = link.getObject();
+            }
+            if (current instanceof IdentifierExpr && ((IdentifierExpr) current).getName().equals("$")) {
+                Collections.reverse(path);
+                root.add(path, 0);
+            } else {
+                visit(current);
+            }
+        }
+
+        /**
+         * The key a single access reads, a String or an Integer index, or null when it is
+         * only known at run time.
+         */
+        private static Object segment(MemberAccessExpr link) {
+            Expression property = link.getProperty();
+            if (!link.isComputed() && property instanceof IdentifierExpr) {
+                return ((IdentifierExpr) property).getName();
+            }
+            Object value = null;
+            if (property instanceof LiteralExpr) {
+                value = ((LiteralExpr) property).getValue();
+            } else if (property instanceof ConstantExpr) {
+                JsonNode constant = ((ConstantExpr) property).getValue();
+                value = constant.isTextual() ? constant.textValue() : constant.isNumber() ? constant.numberValue() : null;
+            }
+            if (value instanceof String) {
+                return value;
+            }
+            if (link.isComputed() && value instanceof Number) {
+                double number = ((Number) value).doubleValue();
+                // An index is read with asInt, a non-integral number as its text
+                return number == Math.rint(number) && Math.abs(number) < Integer.MAX_VALUE
+                    ? (Object) (int) number : null;
+            }
+            return null;
+        }
+
+        /**
+         * A declaration named {@code $} would hide the input, so nothing can be skipped.
+         */
+        private void rebinds(String name) {
+            if ("$".equals(name)) {
+                root.add(new ArrayList<>(), 0);
+            }
+        }
+    }
+}
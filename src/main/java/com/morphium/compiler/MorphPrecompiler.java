@@ -0,0 +1,100 @@
+package com.morphium.compiler;
+
+import com.morphium.parser.Lexer;
+import com.morphium.parser.Parser;
+import com.morphium.parser.ast.Expression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Build step that checks every {@code .morph} file under a source directory and writes
+ * its {@code .morphc} artifact to an output directory, keeping the relative layout.
+ *
+ * Files that do not parse are reported and get no artifact; with {@code failOnError}
+ * set the build fails instead, so broken transforms are caught before they are deployed.
+ * Run by the {@code precompile-morphs} execution in the pom:
+ * <pre>
+ *   java com.morphium.compiler.MorphPrecompiler &lt;sourceDir&gt; &lt;outputDir&gt; [failOnError]
+ * </pre>
+ */
+public final class MorphPrecompiler {
+
+    private MorphPrecompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            throw new IllegalArgumentException("Usage: MorphPrecompiler <sourceDir> <outputDir> [failOnError]");
+        }
+        boolean failOnError = args.length < 3 || Boolean.parseBoolean(args[2]);
+        Path sourceDir = Paths.get(args[0]);
+        if (!Files.isDirectory(sourceDir)) {
+            System.out.println("No morph sources in " + sourceDir);
+            return;
+        }
+        List<String> errors = precompile(sourceDir, Paths.get(args[1]));
+        errors.forEach(System.err::println);
+        if (!errors.isEmpty() && failOnError) {
+            throw new IllegalStateException(errors.size() + " morph file(s) failed to compile");
+        }
+    }
+
+    /**
+     * Compile every morph file under {@code sourceDir}.
+     * @return One message per file that failed, empty if all compiled
+     */
+    public static List<String> precompile(Path sourceDir, Path outputDir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(sourceDir)) {
+            files = walk.filter(p -> p.toString().endsWith(".morph") && Files.isRegularFile(p))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+
+        List<String> errors = new ArrayList<>();
+        int written = 0;
+        for (Path file : files) {
+            Path relative = sourceDir.relativize(file);
+            try {
+                String source = Files.readString(file, StandardCharsets.UTF_8);
+                byte[] artifact = compile(source, relative.toString().replace('\\', '/'));
+                Path target = outputDir.resolve(relative.toString() + "c");
+                Files.createDirectories(target.getParent());
+                Files.write(target, artifact);
+                written++;
+            } catch (RuntimeException e) {
+                errors.add(relative + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Precompiled " + written + " of " + files.size() + " morph file(s) to " + outputDir);
+        return errors;
+    }
+
+    /**
+     * Parse and check one script and return its artifact.
+     * @throws RuntimeException describing the first problem found
+     */
+    public static byte[] compile(String source, String sourcePath) {
+        Expression parsed = new Parser(new Lexer(source, sourcePath)).parse();
+        byte[] artifact = MorphcCodec.encode(parsed, source);
+
+        // Resolution rewrites the tree it is given, so the check runs on the decoded copy,
+        // which also proves the artifact reads back
+        Expression decoded;
+        try {
+            decoded = MorphcCodec.decode(artifact, source);
+        } catch (IOException e) {
+            throw new IllegalStateException("Artifact does not read back: " + e.getMessage(), e);
+        }
+        new ScopeResolver().resolveModule(new AstOptimizer().optimize(decoded));
+        return artifact;
+    }
+}
@@ -0,0 +1,518 @@
+package com.morphium.compiler;
+
+import com.morphium.parser.ast.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of parsed scripts, stored in {@code .morphc} files next to their
+ * {@code .morph} source.
+ *
+ * An artifact starts with a magic number, the format version and the SHA-256 hash of the
+ * source it was compiled from, followed by the tree in prefix order: one tag byte per
+ * node, then its fields. Names and strings are written once and referenced by index
+ * afterwards. Loading an artifact skips lexing and parsing; the engine still optimizes
+ * and resolves the tree as it does for freshly parsed scripts, so an artifact does not
+ * depend on engine settings.
+ */
+public final class MorphcCodec {
+    public static final String EXTENSION = ".morphc";
+
+    private static final int MAGIC = 0x4D4F5243; // "MORC"
+    private static final int VERSION = 1;
+
+    private static final int NULL = 0;
+    private static final int LITERAL = 1;
+    private static final int IDENTIFIER = 2;
+    private static final int MEMBER = 3;
+    private static final int CALL = 4;
+    private static final int BINARY = 5;
+    private static final int UNARY = 6;
+    private static final int TERNARY = 7;
+    private static final int OBJECT = 8;
+    private static final int ARRAY = 9;
+    private static final int BLOCK = 10;
+    private static final int LET = 11;
+    private static final int GLOBAL = 12;
+    private static final int EXPORT = 13;
+    private static final int IMPORT = 14;
+    private static final int FUNCTION = 15;
+    private static final int IF = 16;
+    private static final int SWITCH = 17;
+    private static final int FOR_OF = 18;
+    private static final int FOR_IN = 19;
+    private static final int BREAK = 20;
+    private static final int CONTINUE = 21;
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_TRUE = 1;
+    private static final int VALUE_FALSE = 2;
+    private static final int VALUE_LONG = 3;
+    private static final int VALUE_DOUBLE = 4;
+    private static final int VALUE_STRING = 5;
+
+    private MorphcCodec() {
+    }
+
+    /**
+     * Encode a parsed, not yet optimized or resolved, tree of {@code source}.
+     */
+    public static byte[] encode(Expression root, String source) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, source.length() / 2));
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.write(hash(source));
+            new Writer(out).write(root);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode an artifact compiled from {@code source}.
+     * @return the tree, or null when the artifact is from another format version or
+     *         another source
+     * @throws IOException when the artifact is damaged
+     */
+    public static Expression decode(byte[] data, String source) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (data.length < 38 || in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+            return null;
+        }
+        byte[] sourceHash = new byte[32];
+        in.readFully(sourceHash);
+        if (!Arrays.equals(sourceHash, hash(source))) {
+            return null;
+        }
+        return new Reader(in).read();
+    }
+
+    public static byte[] hash(String source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(Expression expr) throws IOException {
+            if (expr == null) {
+                out.writeByte(NULL);
+            } else if (expr instanceof LiteralExpr) {
+                out.writeByte(LITERAL);
+                writeValue(((LiteralExpr) expr).getValue());
+            } else if (expr instanceof IdentifierExpr) {
+                out.writeByte(IDENTIFIER);
+                writeString(((IdentifierExpr) expr).getName());
+            } else if (expr instanceof MemberAccessExpr) {
+                MemberAccessExpr access = (MemberAccessExpr) expr;
+                out.writeByte(MEMBER);
+                out.writeBoolean(access.isSafe());
+                out.writeBoolean(access.isComputed());
+                write(access.getObject());
+                write(access.getProperty());
+            } else if (expr instanceof CallExpr) {
+                CallExpr call = (CallExpr) expr;
+                out.writeByte(CALL);
+                write(call.getCallee());
+                writeList(call.getArguments());
+            } else if (expr instanceof BinaryExpr) {
+                BinaryExpr binary = (BinaryExpr) expr;
+                out.writeByte(BINARY);
+                out.writeByte(binary.getOperator().ordinal());
+                write(binary.getLeft());
+                write(binary.getRight());
+            } else if (expr instanceof UnaryExpr) {
+                UnaryExpr unary = (UnaryExpr) expr;
+                out.writeByte(UNARY);
+                out.writeByte(unary.getOperator().ordinal());
+                write(unary.getOperand());
+            } else if (expr instanceof TernaryExpr) {
+                TernaryExpr ternary = (TernaryExpr) expr;
+                out.writeByte(TERNARY);
+                write(ternary.getCondition());
+                write(ternary.getThenExpr());
+                write(ternary.getElseExpr());
+            } else if (expr instanceof ObjectExpr) {
+                ObjectExpr object = (ObjectExpr) expr;
+                out.writeByte(OBJECT);
+                writeCount(object.getProperties().size());
+                for (Map.Entry<String, Expression> entry : object.getProperties().entrySet()) {
+                    writeString(entry.getKey());
+                    write(entry.getValue());
+                }
+                writeCount(object.getComputedProperties().size());
+                for (Map.Entry<Expression, Expression> entry : object.getComputedProperties().entrySet()) {
+                    write(entry.getKey());
+                    write(entry.getValue());
+                }
+            } else if (expr instanceof ArrayExpr) {
+                out.writeByte(ARRAY);
+                writeList(((ArrayExpr) expr).getElements());
+            } else if (expr instanceof BlockExpr) {
+                out.writeByte(BLOCK);
+                writeList(((BlockExpr) expr).getExpressions());
+            } else if (expr instanceof LetStatement) {
+                LetStatement let = (LetStatement) expr;
+                out.writeByte(LET);
+                writeString(let.getName());
+                write(let.getValue());
+                write(let.getBody());
+            } else if (expr instanceof GlobalVarStatement) {
+                GlobalVarStatement global = (GlobalVarStatement) expr;
+                out.writeByte(GLOBAL);
+                writeString(global.getName());
+                write(global.getValue());
+            } else if (expr instanceof ExportStatement) {
+                ExportStatement export = (ExportStatement) expr;
+                out.writeByte(EXPORT);
+                writeString(export.getName());
+                write(export.getValue());
+            } else if (expr instanceof ImportStatement) {
+                ImportStatement importStmt = (ImportStatement) expr;
+                out.writeByte(IMPORT);
+                writeString(importStmt.getModulePath());
+                writeString(importStmt.getAlias());
+                writeStrings(importStmt.getSpecificImports());
+                out.writeBoolean(importStmt.isDynamic());
+                if (importStmt.isDynamic()) {
+                    writeList(importStmt.getDynamicArgs());
+                }
+            } else if (expr instanceof FunctionDefExpr) {
+                FunctionDefExpr function = (FunctionDefExpr) expr;
+                out.writeByte(FUNCTION);
+                writeString(function.getName());
+                writeStrings(function.getParameters());
+                write(function.getBody());
+            } else if (expr instanceof IfStatement) {
+                IfStatement ifStmt = (IfStatement) expr;
+                out.writeByte(IF);
+                write(ifStmt.getCondition());
+                write(ifStmt.getThenBranch());
+                write(ifStmt.getElseBranch());
+            } else if (expr instanceof SwitchStatement) {
+                SwitchStatement switchStmt = (SwitchStatement) expr;
+                out.writeByte(SWITCH);
+                write(switchStmt.getExpression());
+                writeCount(switchStmt.getCases().size());
+                for (SwitchStatement.CaseClause clause : switchStmt.getCases()) {
+                    write(clause.getValue());
+                    write(clause.getBody());
+                }
+                write(switchStmt.getDefaultCase());
+            } else if (expr instanceof ForOfStatement) {
+                ForOfStatement forOf = (ForOfStatement) expr;
+                out.writeByte(FOR_OF);
+                writeString(forOf.getItemName());
+                write(forOf.getIterable());
+                write(forOf.getBody());
+            } else if (expr instanceof ForInStatement) {
+                ForInStatement forIn = (ForInStatement) expr;
+                out.writeByte(FOR_IN);
+                writeString(forIn.getIndexName());
+                write(forIn.getIterable());
+                write(forIn.getBody());
+            } else if (expr instanceof BreakStatement) {
+                out.writeByte(BREAK);
+            } else if (expr instanceof ContinueStatement) {
+                out.writeByte(CONTINUE);
+            } else {
+                // Optimized or resolved nodes are rebuilt when the artifact is loaded
+                throw new IllegalArgumentException("Cannot encode " + expr.getClass().getSimpleName());
+            }
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(VALUE_NULL);
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+            } else if (value instanceof Long || value instanceof Integer) {
+                out.writeByte(VALUE_LONG);
+                out.writeLong(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                out.writeByte(VALUE_DOUBLE);
+                out.writeDouble(((Number) value).doubleValue());
+            } else {
+                out.writeByte(VALUE_STRING);
+                writeString((String) value);
+            }
+        }
+
+        private void writeList(List<Expression> exprs) throws IOException {
+            writeCount(exprs.size());
+            for (Expression expr : exprs) {
+                write(expr);
+            }
+        }
+
+        private void writeStrings(List<String> values) throws IOException {
+            if (values == null) {
+                writeCount(0);
+                return;
+            }
+            writeCount(values.size() + 1);
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        /**
+         * Strings are written as 0 and their bytes the first time, then as index + 1; a
+         * null string is written as index 0 followed by length -1.
+         */
+        private void writeString(String value) throws IOException {
+            Integer index = value != null ? strings.get(value) : null;
+            if (index != null) {
+                writeCount(index + 1);
+                return;
+            }
+            writeCount(0);
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+            strings.put(value, strings.size());
+        }
+
+        private void writeCount(int count) throws IOException {
+            // Unsigned LEB128, counts and string indexes are almost always one byte
+            while ((count & ~0x7F) != 0) {
+                out.writeByte((count & 0x7F) | 0x80);
+                count >>>= 7;
+            }
+            out.writeByte(count);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        Expression read() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case LITERAL:
+                    return new LiteralExpr(readValue());
+                case IDENTIFIER:
+                    return new IdentifierExpr(readString());
+                case MEMBER: {
+                    boolean safe = in.readBoolean();
+                    boolean computed = in.readBoolean();
+                    Expression object = read();
+                    return new MemberAccessExpr(object, read(), safe, computed);
+                }
+                case CALL: {
+                    CallExpr call = new CallExpr(read());
+                    for (Expression arg : readList()) {
+                        call.addArgument(arg);
+                    }
+                    return call;
+                }
+                case BINARY: {
+                    BinaryExpr.Operator operator = BinaryExpr.Operator.values()[in.readUnsignedByte()];
+                    Expression left = read();
+                    return new BinaryExpr(left, operator, read());
+                }
+                case UNARY: {
+                    UnaryExpr.Operator operator = UnaryExpr.Operator.values()[in.readUnsignedByte()];
+                    return new UnaryExpr(operator, read());
+                }
+                case TERNARY: {
+                    Expression condition = read();
+                    Expression thenExpr = read();
+                    return new TernaryExpr(condition, thenExpr, read());
+                }
+                case OBJECT: {
+                    ObjectExpr object = new ObjectExpr();
+                    for (int i = readCount(); i > 0; i--) {
+                        String key = readString();
+                        object.addProperty(key, read());
+                    }
+                    for (int i = readCount(); i > 0; i--) {
+                        Expression key = read();
+                        object.addComputedProperty(key, read());
+                    }
+                    return object;
+                }
+                case ARRAY: {
+                    ArrayExpr array = new ArrayExpr();
+                    for (Expression element : readList()) {
+                        array.addElement(element);
+                    }
+                    return array;
+                }
+                case BLOCK: {
+                    BlockExpr block = new BlockExpr();
+                    for (Expression child : readList()) {
+                        block.addExpression(child);
+                    }
+                    return block;
+                }
+                case LET: {
+                    String name = readString();
+                    Expression value = read();
+                    return new LetStatement(name, value, read());
+                }
+                case GLOBAL: {
+                    String name = readString();
+                    return new GlobalVarStatement(name, read());
+                }
+                case EXPORT: {
+                    String name = readString();
+                    return new ExportStatement(name, read());
+                }
+                case IMPORT: {
+                    String modulePath = readString();
+                    String alias = readString();
+                    List<String> specificImports = readStrings();
+                    boolean dynamic = in.readBoolean();
+                    return dynamic
+                        ? new ImportStatement(modulePath, alias, specificImports, true, readList())
+                        : new ImportStatement(modulePath, alias, specificImports);
+                }
+                case FUNCTION: {
+                    String name = readString();
+                    List<String> parameters = readStrings();
+                    return new FunctionDefExpr(name, parameters, read());
+                }
+                case IF: {
+                    Expression condition = read();
+                    Expression thenBranch = read();
+                    return new IfStatement(condition, thenBranch, read());
+                }
+                case SWITCH: {
+                    Expression expression = read();
+                    List<SwitchStatement.CaseClause> cases = new ArrayList<>();
+                    for (int i = readCount(); i > 0; i--) {
+                        Expression value = read();
+                        cases.add(new SwitchStatement.CaseClause(value, read()));
+                    }
+                    return new SwitchStatement(expression, cases, read());
+                }
+                case FOR_OF: {
+                    String itemName = readString();
+                    Expression iterable = read();
+                    return new ForOfStatement(itemName, iterable, read());
+                }
+                case FOR_IN: {
+                    String indexName = readString();
+                    Expression iterable = read();
+                    return new ForInStatement(indexName, iterable, read());
+                }
+                case BREAK:
+                    return new BreakStatement();
+                case CONTINUE:
+                    return new ContinueStatement();
+                default:
+                    throw new IOException("Unknown node tag " + tag);
+            }
+        }
+
+        private Object readValue() throws IOException {
+            int kind = in.readUnsignedByte();
+            switch (kind) {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_TRUE:
+                    return true;
+                case VALUE_FALSE:
+                    return false;
+                case VALUE_LONG:
+                    return in.readLong();
+                case VALUE_DOUBLE:
+                    return in.readDouble();
+                case VALUE_STRING:
+                    return readString();
+                default:
+                    throw new IOException("Unknown literal kind " + kind);
+            }
+        }
+
+        private List<Expression> readList() throws IOException {
+            int count = readCount();
+            List<Expression> exprs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                exprs.add(read());
+            }
+            return exprs;
+        }
+
+        private List<String> readStrings() throws IOException {
+            int count = readCount();
+            if (count == 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(count - 1);
+            for (int i = 1; i < count; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        private String readString() throws IOException {
+            int index = readCount();
+            if (index > 0) {
+                if (index > strings.size()) {
+                    throw new IOException("Invalid string reference " + index);
+                }
+                return strings.get(index - 1);
+            }
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] utf8 = new byte[length];
+            in.readFully(utf8);
+            String value = new String(utf8, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        private int readCount() throws IOException {
+            int count = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                count |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return count;
+                }
+            }
+            throw new IOException("Malformed count");
+        }
+    }
+}
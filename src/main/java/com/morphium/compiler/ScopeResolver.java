@@ -0,0 +1,463 @@
+package com.morphium.compiler;
+
+import com.morphium.builtin.BuiltinFunctions;
+import com.morphium.parser.ast.*;
+import com.morphium.runtime.Binding;
+import com.morphium.runtime.Scope;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves variables to frame slots after parsing.
+ *
+ * The pass mirrors how the interpreter creates frames: one per block, function call,
+ * loop iteration and stream builtin lambda. Each identifier, {@code let}, parameter and
+ * loop variable is bound to a (depth, slot) pair so reads become array loads instead of
+ * map lookups up the scope chain. Names that are not statically visible (globals, names
+ * bound by non-literal lambda arguments) are left unresolved and use the name walk.
+ *
+ * Resolution annotates the tree in place, so it must run before the tree is shared. A
+ * resolver instance handles a single tree.
+ */
+public class ScopeResolver {
+    // Lambda builtins: argument positions holding the bound names, and the body position
+    private static final Map<String, int[]> LAMBDA_BUILTINS = new HashMap<>();
+
+    static {
+        int[] itemLambda = {1, 2};
+        for (String name : new String[]{"map", "filter", "flatMap", "forEach", "anyMatch", "allMatch",
+                "noneMatch", "findFirst", "count", "peek", "partition", "findIndex", "findLastIndex",
+                "pmap", "pfilter", "pflatMap"}) {
+            LAMBDA_BUILTINS.put(name, itemLambda);
+        }
+        LAMBDA_BUILTINS.put("reduce", new int[]{1, 2, 4});
+    }
+
+    // Functions defined anywhere in the tree; they shadow builtins of the same name
+    private final Set<String> functionNames = new HashSet<>();
+    // Bodies of the functions defined under each name
+    private final Map<String, List<Expression>> functionBodies = new HashMap<>();
+    // Lambda bodies are wrapped once the whole tree is known
+    private final List<Runnable> pendingLambdas = new ArrayList<>();
+    // Calls by name, marked once all function definitions are known
+    private final List<CallExpr> namedCalls = new ArrayList<>();
+
+    /**
+     * Resolve a transform script. The returned scope describes the frame the engine
+     * evaluates the script in, which holds {@code $} and the import aliases.
+     */
+    public Scope resolveProgram(Expression root) {
+        Scope programScope = new Scope(null);
+        programScope.declare("$");
+        if (root instanceof BlockExpr) {
+            for (Expression expr : ((BlockExpr) root).getExpressions()) {
+                if (expr instanceof ImportStatement) {
+                    resolveImport((ImportStatement) expr, programScope);
+                }
+            }
+        } else if (root instanceof ImportStatement) {
+            resolveImport((ImportStatement) root, programScope);
+        }
+        resolve(root, programScope);
+        wrapLambdas();
+        return programScope;
+    }
+
+    /**
+     * Resolve a module. Module statements run directly in the module frame, so the root
+     * block does not get a frame of its own.
+     */
+    public Scope resolveModule(Expression root) {
+        Scope moduleScope = new Scope(null);
+        if (root instanceof BlockExpr) {
+            for (Expression expr : ((BlockExpr) root).getExpressions()) {
+                resolve(expr, moduleScope);
+            }
+        } else {
+            resolve(root, moduleScope);
+        }
+        wrapLambdas();
+        return moduleScope;
+    }
+
+    private void resolveImport(ImportStatement importStmt, Scope programScope) {
+        // The engine evaluates dynamic arguments and defines the alias in the program frame
+        if (importStmt.isDynamic()) {
+            for (Expression arg : importStmt.getDynamicArgs()) {
+                resolve(arg, programScope);
+            }
+        }
+        if (importStmt.getAlias() != null) {
+            programScope.declare(importStmt.getAlias());
+        }
+    }
+
+    private void resolve(Expression expr, Scope scope) {
+        if (expr == null) {
+            return;
+        }
+        if (expr instanceof IdentifierExpr) {
+            IdentifierExpr identifier = (IdentifierExpr) expr;
+            identifier.setBinding(scope.resolve(identifier.getName()));
+        } else if (expr instanceof MemberAccessExpr) {
+            MemberAccessExpr access = (MemberAccessExpr) expr;
+            resolve(access.getObject(), scope);
+            // A non-computed property is a field name, not a variable
+            if (access.isComputed() || !(access.getProperty() instanceof IdentifierExpr)) {
+                resolve(access.getProperty(), scope);
+            }
+        } else if (expr instanceof CallExpr) {
+            resolveCall((CallExpr) expr, scope);
+        } else if (expr instanceof BinaryExpr) {
+            resolve(((BinaryExpr) expr).getLeft(), scope);
+            resolve(((BinaryExpr) expr).getRight(), scope);
+        } else if (expr instanceof UnaryExpr) {
+            resolve(((UnaryExpr) expr).getOperand(), scope);
+        } else if (expr instanceof TernaryExpr) {
+            TernaryExpr ternary = (TernaryExpr) expr;
+            resolve(ternary.getCondition(), scope);
+            resolve(ternary.getThenExpr(), scope);
+            resolve(ternary.getElseExpr(), scope);
+        } else if (expr instanceof ObjectExpr) {
+            ObjectExpr object = (ObjectExpr) expr;
+            for (Expression value : object.getProperties().values()) {
+                resolve(value, scope);
+            }
+            for (Map.Entry<Expression, Expression> entry : object.getComputedProperties().entrySet()) {
+                resolve(entry.getKey(), scope);
+                resolve(entry.getValue(), scope);
+            }
+        } else if (expr instanceof ArrayExpr) {
+            for (Expression element : ((ArrayExpr) expr).getElements()) {
+                resolve(element, scope);
+            }
+        } else if (expr instanceof BlockExpr) {
+            BlockExpr block = (BlockExpr) expr;
+            Scope blockScope = new Scope(scope);
+            block.setScope(blockScope);
+            for (Expression child : block.getExpressions()) {
+                // Imports are evaluated by the engine in the program frame
+                if (!(child instanceof ImportStatement)) {
+                    resolve(child, blockScope);
+                }
+            }
+        } else if (expr instanceof LetStatement) {
+            LetStatement let = (LetStatement) expr;
+            // The value is evaluated before the name is bound
+            resolve(let.getValue(), scope);
+            if (let.getBody() instanceof LiteralExpr && ((LiteralExpr) let.getBody()).getValue() == null) {
+                int slot = scope.declare(let.getName());
+                let.setBinding(new Binding(scope, slot, 0));
+            } else {
+                // A let with a body binds the name in an unresolved frame of its own
+                resolve(let.getBody(), new Scope(scope, true));
+            }
+        } else if (expr instanceof GlobalVarStatement) {
+            resolve(((GlobalVarStatement) expr).getValue(), scope);
+        } else if (expr instanceof ExportStatement) {
+            resolve(((ExportStatement) expr).getValue(), scope);
+        } else if (expr instanceof FunctionDefExpr) {
+            FunctionDefExpr function = (FunctionDefExpr) expr;
+            functionNames.add(function.getName());
+            functionBodies.computeIfAbsent(function.getName(), k -> new ArrayList<>()).add(function.getBody());
+            Scope functionScope = new Scope(scope);
+            for (String parameter : function.getParameters()) {
+                functionScope.declare(parameter);
+            }
+            function.setScope(functionScope);
+            resolve(function.getBody(), functionScope);
+        } else if (expr instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) expr;
+            resolve(ifStmt.getCondition(), scope);
+            resolve(ifStmt.getThenBranch(), scope);
+            resolve(ifStmt.getElseBranch(), scope);
+        } else if (expr instanceof SwitchStatement) {
+            SwitchStatement switchStmt = (SwitchStatement) expr;
+            resolve(switchStmt.getExpression(), scope);
+            for (SwitchStatement.CaseClause clause : switchStmt.getCases()) {
+                resolve(clause.getValue(), scope);
+                resolve(clause.getBody(), scope);
+            }
+            resolve(switchStmt.getDefaultCase(), scope);
+        } else if (expr instanceof ForOfStatement) {
+            ForOfStatement forOf = (ForOfStatement) expr;
+            resolve(forOf.getIterable(), scope);
+            Scope loopScope = new Scope(scope);
+            loopScope.declare(forOf.getItemName());
+            forOf.setScope(loopScope);
+            resolve(forOf.getBody(), loopScope);
+        } else if (expr instanceof ForInStatement) {
+            ForInStatement forIn = (ForInStatement) expr;
+            resolve(forIn.getIterable(), scope);
+            Scope loopScope = new Scope(scope);
+            loopScope.declare(forIn.getIndexName());
+            forIn.setScope(loopScope);
+            resolve(forIn.getBody(), loopScope);
+        } else if (expr instanceof ScopedExpr) {
+            resolve(((ScopedExpr) expr).getBody(), ((ScopedExpr) expr).getScope());
+        }
+    }
+
+    private void resolveCall(CallExpr call, Scope scope) {
+        List<Expression> args = call.getArguments();
+        int[] lambda = null;
+        if (call.getCallee() instanceof IdentifierExpr) {
+            namedCalls.add(call);
+            lambda = LAMBDA_BUILTINS.get(((IdentifierExpr) call.getCallee()).getName());
+        }
+        int bodyIndex = lambda != null ? lambda[lambda.length - 1] : -1;
+        if (bodyIndex < 0 || bodyIndex >= args.size() || args.get(bodyIndex) instanceof ScopedExpr) {
+            for (Expression arg : args) {
+                resolve(arg, scope);
+            }
+            return;
+        }
+
+        // Names bound per item must be string literals to get slots
+        String[] names = new String[lambda.length - 1];
+        boolean literalNames = true;
+        for (int i = 0; i < names.length; i++) {
+            Expression nameArg = args.get(lambda[i]);
+            if (nameArg instanceof LiteralExpr && ((LiteralExpr) nameArg).getValue() instanceof String) {
+                names[i] = (String) ((LiteralExpr) nameArg).getValue();
+            } else {
+                literalNames = false;
+            }
+        }
+
+        for (int i = 0; i < args.size(); i++) {
+            if (i != bodyIndex) {
+                resolve(args.get(i), scope);
+            }
+        }
+
+        Expression body = args.get(bodyIndex);
+        if (!literalNames) {
+            // The builtin binds names only known at runtime, keep the body on the name walk
+            resolve(body, new Scope(scope, true));
+            return;
+        }
+        Scope lambdaScope = new Scope(scope);
+        for (String name : names) {
+            lambdaScope.declare(name);
+        }
+        resolve(body, lambdaScope);
+        pendingLambdas.add(() ->
+            args.set(bodyIndex, new ScopedExpr(lambdaScope, body, isSelfContained(body, lambdaScope),
+                isParallelizable(body, new HashSet<>()))));
+    }
+
+    private void wrapLambdas() {
+        for (Runnable wrap : pendingLambdas) {
+            wrap.run();
+        }
+        pendingLambdas.clear();
+        for (CallExpr call : namedCalls) {
+            call.setShadowable(functionNames.contains(((IdentifierExpr) call.getCallee()).getName()));
+        }
+        namedCalls.clear();
+    }
+
+    /**
+     * True when a lambda body only reads variables bound inside the lambda and {@code $},
+     * and only calls builtins without side effects. Such a body can run later, or not at
+     * all, without changing what the script observes.
+     */
+    private boolean isSelfContained(Expression expr, Scope lambdaScope) {
+        if (expr == null || expr instanceof LiteralExpr || expr instanceof ConstantExpr) {
+            return true;
+        }
+        if (expr instanceof IdentifierExpr) {
+            IdentifierExpr identifier = (IdentifierExpr) expr;
+            if (identifier.getName().equals("$")) {
+                return true;
+            }
+            return identifier.getBinding() != null && isWithin(identifier.getBinding().getScope(), lambdaScope);
+        }
+        if (expr instanceof MemberAccessExpr) {
+            MemberAccessExpr access = (MemberAccessExpr) expr;
+            return isSelfContained(access.getObject(), lambdaScope)
+                && (!access.isComputed() || isSelfContained(access.getProperty(), lambdaScope));
+        }
+        if (expr instanceof CallExpr) {
+            CallExpr call = (CallExpr) expr;
+            if (!(call.getCallee() instanceof IdentifierExpr)) {
+                return false;
+            }
+            String name = ((IdentifierExpr) call.getCallee()).getName();
+            if (functionNames.contains(name) || !BuiltinFunctions.isPure(name)) {
+                return false;
+            }
+            return allSelfContained(call.getArguments(), lambdaScope);
+        }
+        if (expr instanceof ScopedExpr) {
+            return isSelfContained(((ScopedExpr) expr).getBody(), lambdaScope);
+        }
+        if (expr instanceof BinaryExpr) {
+            return isSelfContained(((BinaryExpr) expr).getLeft(), lambdaScope)
+                && isSelfContained(((BinaryExpr) expr).getRight(), lambdaScope);
+        }
+        if (expr instanceof UnaryExpr) {
+            return isSelfContained(((UnaryExpr) expr).getOperand(), lambdaScope);
+        }
+        if (expr instanceof TernaryExpr) {
+            TernaryExpr ternary = (TernaryExpr) expr;
+            return isSelfContained(ternary.getCondition(), lambdaScope)
+                && isSelfContained(ternary.getThenExpr(), lambdaScope)
+                && isSelfContained(ternary.getElseExpr(), lambdaScope);
+        }
+        if (expr instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) expr;
+            return isSelfContained(ifStmt.getCondition(), lambdaScope)
+                && isSelfContained(ifStmt.getThenBranch(), lambdaScope)
+                && isSelfContained(ifStmt.getElseBranch(), lambdaScope);
+        }
+        if (expr instanceof ObjectExpr) {
+            ObjectExpr object = (ObjectExpr) expr;
+            return allSelfContained(object.getProperties().values(), lambdaScope)
+                && allSelfContained(object.getComputedProperties().keySet(), lambdaScope)
+                && allSelfContained(object.getComputedProperties().values(), lambdaScope);
+        }
+        if (expr instanceof ArrayExpr) {
+            return allSelfContained(((ArrayExpr) expr).getElements(), lambdaScope);
+        }
+        if (expr instanceof BlockExpr) {
+            return allSelfContained(((BlockExpr) expr).getExpressions(), lambdaScope);
+        }
+        if (expr instanceof LetStatement) {
+            LetStatement let = (LetStatement) expr;
+            return let.getBinding() != null && isSelfContained(let.getValue(), lambdaScope);
+        }
+        // Loops, switches, definitions and declarations keep the lambda eager
+        return false;
+    }
+
+    private boolean allSelfContained(Iterable<Expression> exprs, Scope lambdaScope) {
+        for (Expression expr : exprs) {
+            if (!isSelfContained(expr, lambdaScope)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * True when a lambda body, and every script function it calls, only calls builtins
+     * without side effects and declares nothing beyond the frames it creates. Such a body
+     * can run for several items at once, each in its own frame. {@code peek} counts as
+     * effectful here: it exists to observe items in order.
+     * @param calling Names of the functions being checked further up, assumed safe
+     */
+    private boolean isParallelizable(Expression expr, Set<String> calling) {
+        if (expr == null || expr instanceof LiteralExpr || expr instanceof ConstantExpr
+                || expr instanceof IdentifierExpr || expr instanceof BreakStatement
+                || expr instanceof ContinueStatement) {
+            return true;
+        }
+        if (expr instanceof MemberAccessExpr) {
+            MemberAccessExpr access = (MemberAccessExpr) expr;
+            return isParallelizable(access.getObject(), calling) && isParallelizable(access.getProperty(), calling);
+        }
+        if (expr instanceof CallExpr) {
+            CallExpr call = (CallExpr) expr;
+            // Module functions and host functions may do anything
+            if (!(call.getCallee() instanceof IdentifierExpr)) {
+                return false;
+            }
+            String name = ((IdentifierExpr) call.getCallee()).getName();
+            if (functionNames.contains(name)) {
+                if (calling.add(name)) {
+                    boolean safe = allParallelizable(functionBodies.get(name), calling);
+                    calling.remove(name);
+                    if (!safe) {
+                        return false;
+                    }
+                }
+            } else if (!BuiltinFunctions.isPure(name) || name.equals("peek")) {
+                return false;
+            }
+            return allParallelizable(call.getArguments(), calling);
+        }
+        if (expr instanceof ScopedExpr) {
+            return isParallelizable(((ScopedExpr) expr).getBody(), calling);
+        }
+        if (expr instanceof BinaryExpr) {
+            return isParallelizable(((BinaryExpr) expr).getLeft(), calling)
+                && isParallelizable(((BinaryExpr) expr).getRight(), calling);
+        }
+        if (expr instanceof UnaryExpr) {
+            return isParallelizable(((UnaryExpr) expr).getOperand(), calling);
+        }
+        if (expr instanceof TernaryExpr) {
+            TernaryExpr ternary = (TernaryExpr) expr;
+            return isParallelizable(ternary.getCondition(), calling)
+                && isParallelizable(ternary.getThenExpr(), calling)
+                && isParallelizable(ternary.getElseExpr(), calling);
+        }
+        if (expr instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) expr;
+            return isParallelizable(ifStmt.getCondition(), calling)
+                && isParallelizable(ifStmt.getThenBranch(), calling)
+                && isParallelizable(ifStmt.getElseBranch(), calling);
+        }
+        if (expr instanceof SwitchStatement) {
+            SwitchStatement switchStmt = (SwitchStatement) expr;
+            for (SwitchStatement.CaseClause clause : switchStmt.getCases()) {
+                if (!isParallelizable(clause.getValue(), calling) || !isParallelizable(clause.getBody(), calling)) {
+                    return false;
+                }
+            }
+            return isParallelizable(switchStmt.getExpression(), calling)
+                && isParallelizable(switchStmt.getDefaultCase(), calling);
+        }
+        if (expr instanceof ObjectExpr) {
+            ObjectExpr object = (ObjectExpr) expr;
+            return allParallelizable(object.getProperties().values(), calling)
+                && allParallelizable(object.getComputedProperties().keySet(), calling)
+                && allParallelizable(object.getComputedProperties().values(), calling);
+        }
+        if (expr instanceof ArrayExpr) {
+            return allParallelizable(((ArrayExpr) expr).getElements(), calling);
+        }
+        if (expr instanceof BlockExpr) {
+            return allParallelizable(((BlockExpr) expr).getExpressions(), calling);
+        }
+        if (expr instanceof LetStatement) {
+            LetStatement let = (LetStatement) expr;
+            return isParallelizable(let.getValue(), calling) && isParallelizable(let.getBody(), calling);
+        }
+        if (expr instanceof ForOfStatement) {
+            ForOfStatement forOf = (ForOfStatement) expr;
+            return isParallelizable(forOf.getIterable(), calling) && isParallelizable(forOf.getBody(), calling);
+        }
+        if (expr instanceof ForInStatement) {
+            ForInStatement forIn = (ForInStatement) expr;
+            return isParallelizable(forIn.getIterable(), calling) && isParallelizable(forIn.getBody(), calling);
+        }
+        // Globals, exports, imports and function definitions write to shared frames
+        return false;
+    }
+
+    private boolean allParallelizable(Iterable<Expression> exprs, Set<String> calling) {
+        for (Expression expr : exprs) {
+            if (!isParallelizable(expr, calling)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWithin(Scope scope, Scope ancestor) {
+        for (Scope current = scope; current != null; current = current.getParent()) {
+            if (current == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package com.morphium.compiler;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.morphium.parser.ast.Expression;
+import com.morphium.runtime.Context;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the interpreted tree until it has been invoked {@code threshold} times,
+ * then swaps in the compiled tree for every later invocation.
+ */
+public class TieredExpression implements Expression {
+    private final Expression source;
+    private final int threshold;
+    private final ExpressionCompiler compiler;
+    private final AtomicInteger invocations = new AtomicInteger();
+    private volatile Expression compiled;
+
+    public TieredExpression(Expression source, int threshold, ExpressionCompiler compiler) {
+        this.source = source;
+        this.threshold = threshold;
+        this.compiler = compiler;
+    }
+
+    @Override
+    public JsonNode evaluate(Context context) {
+        return current().evaluate(context);
+    }
+
+    @Override
+    public void writeTo(Context context, JsonGenerator generator) throws IOException {
+        current().writeTo(context, generator);
+    }
+
+    /**
+     * Count one invocation and return the tree that should run it.
+     */
+    public Expression current() {
+        Expression target = compiled;
+        if (target != null) {
+            return target;
+        }
+        if (invocations.incrementAndGet() >= threshold) {
+            return compileNow();
+        }
+        return source;
+    }
+
+    private synchronized Expression compileNow() {
+        if (compiled == null) {
+            compiled = compiler.compile(source);
+        }
+        return compiled;
+    }
+
+    public Expression getSource() {
+        return source;
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    public int getInvocationCount() {
+        return invocations.get();
+    }
+}
@@ -0,0 +1,71 @@
+package com.morphium.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Outcome of transforming a batch of inputs with {@link MorphiumEngine#transformAll}.
+ *
+ * Results are in input order. A record that failed has a null result and a
+ * {@link Failure} with its index; the other records are unaffected.
+ */
+@Getter
+public final class BatchResult {
+    private final List<JsonNode> results;
+    private final List<Failure> failures;
+    private final long elapsedNanos;
+
+    BatchResult(List<JsonNode> results, List<Failure> failures, long elapsedNanos) {
+        this.results = results;
+        this.failures = failures;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * The result of the record at {@code index}, or null when it failed.
+     */
+    public JsonNode get(int index) {
+        return results.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult(records=" + results.size() + ", failures=" + failures.size() + ")";
+    }
+
+    /**
+     * A record that could not be transformed.
+     */
+    public static final class Failure {
+        private final int index;
+        private final MorphiumException error;
+
+        Failure(int index, MorphiumException error) {
+            this.index = index;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public MorphiumException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "Record " + index + ": " + error.getMessage();
+        }
+    }
+}
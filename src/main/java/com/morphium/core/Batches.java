@@ -0,0 +1,232 @@
+package com.morphium.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.morphium.runtime.Context;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transforms of many independent inputs with one prepared script.
+ *
+ * Workers take chunks of inputs from a shared iterator until it is drained. Each worker
+ * sets up an evaluation frame once, with the script's imports in place, and only rebinds
+ * {@code $} for every record, so the per-record cost is the evaluation itself. Scripts
+ * with dynamic imports, whose modules may depend on the input, get a fresh frame per
+ * record instead. The calling thread works too, and workers the executor has not started
+ * by the time the inputs run out are skipped, so a busy or saturated executor delays a
+ * batch but cannot stall it.
+ *
+ * A record that fails is reported with its index; its frame is discarded and the
+ * worker carries on with the next record.
+ */
+final class Batches {
+    // Records a worker takes from the shared iterator at once
+    private static final int CHUNK_SIZE = 64;
+
+    private Batches() {
+    }
+
+    /**
+     * Executor used when none is configured: one virtual thread per task on Java 21 and
+     * later, a shared pool of daemon threads, one per processor, before that.
+     */
+    static Executor defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    static BatchResult run(MorphiumEngine engine, MorphiumEngine.PreparedScript script, Iterator<JsonNode> inputs,
+                           int expectedSize, Executor executor, int parallelism) {
+        long start = System.nanoTime();
+        Source source = new Source(inputs);
+        int helpers = parallelism - 1;
+        if (expectedSize >= 0) {
+            // No more workers than chunks, counting the calling thread
+            helpers = Math.min(helpers, (expectedSize + CHUNK_SIZE - 1) / CHUNK_SIZE - 1);
+        }
+
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < helpers; i++) {
+            workers.add(new Worker(engine, script, source));
+        }
+        CountDownLatch finished = new CountDownLatch(workers.size());
+        for (Worker worker : workers) {
+            worker.finished = finished;
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // Left unstarted, the worker is skipped below
+            }
+        }
+
+        new Worker(engine, script, source).process();
+        for (Worker worker : workers) {
+            if (worker.state.compareAndSet(Worker.NEW, Worker.SKIPPED)) {
+                finished.countDown();
+            }
+        }
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MorphiumException("Interrupted while transforming a batch", e);
+        }
+        if (source.error != null) {
+            throw new MorphiumException("Error reading batch inputs: " + source.error.getMessage(), source.error);
+        }
+        return source.collect(System.nanoTime() - start);
+    }
+
+    /**
+     * Hands out chunks of the inputs and gathers the finished chunks.
+     */
+    private static final class Source {
+        private final Iterator<JsonNode> inputs;
+        private final List<Chunk> done = new ArrayList<>();
+        private int taken;
+        private volatile RuntimeException error;
+
+        Source(Iterator<JsonNode> inputs) {
+            this.inputs = inputs;
+        }
+
+        /**
+         * @return The next chunk, or null once the inputs are drained or failed
+         */
+        synchronized Chunk next() {
+            if (error != null) {
+                return null;
+            }
+            List<JsonNode> records = new ArrayList<>(CHUNK_SIZE);
+            try {
+                while (records.size() < CHUNK_SIZE && inputs.hasNext()) {
+                    records.add(inputs.next());
+                }
+            } catch (RuntimeException e) {
+                error = e;
+                return null;
+            }
+            if (records.isEmpty()) {
+                return null;
+            }
+            Chunk chunk = new Chunk(taken, records);
+            taken += records.size();
+            return chunk;
+        }
+
+        synchronized void finish(Chunk chunk) {
+            done.add(chunk);
+        }
+
+        synchronized BatchResult collect(long elapsedNanos) {
+            JsonNode[] results = new JsonNode[taken];
+            List<BatchResult.Failure> failures = new ArrayList<>();
+            for (Chunk chunk : done) {
+                System.arraycopy(chunk.results, 0, results, chunk.start, chunk.results.length);
+                failures.addAll(chunk.failures);
+            }
+            failures.sort(Comparator.comparingInt(BatchResult.Failure::getIndex));
+            return new BatchResult(Collections.unmodifiableList(Arrays.asList(results)),
+                Collections.unmodifiableList(failures), elapsedNanos);
+        }
+    }
+
+    private static final class Chunk {
+        private final int start;
+        private final List<JsonNode> inputs;
+        private final JsonNode[] results;
+        private final List<BatchResult.Failure> failures = new ArrayList<>(0);
+
+        Chunk(int start, List<JsonNode> inputs) {
+            this.start = start;
+            this.inputs = inputs;
+            this.results = new JsonNode[inputs.size()];
+        }
+    }
+
+    private static final class Worker implements Runnable {
+        static final int NEW = 0;
+        static final int RUNNING = 1;
+        static final int SKIPPED = 2;
+
+        private final MorphiumEngine engine;
+        private final MorphiumEngine.PreparedScript script;
+        private final Source source;
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private CountDownLatch finished;
+        // Confined to the thread running this worker
+        private Context frame;
+
+        Worker(MorphiumEngine engine, MorphiumEngine.PreparedScript script, Source source) {
+            this.engine = engine;
+            this.script = script;
+            this.source = source;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                return;
+            }
+            try {
+                process();
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        void process() {
+            Chunk chunk;
+            while ((chunk = source.next()) != null) {
+                for (int i = 0; i < chunk.results.length; i++) {
+                    try {
+                        chunk.results[i] = apply(chunk.inputs.get(i));
+                    } catch (Exception e) {
+                        frame = null;
+                        chunk.failures.add(new BatchResult.Failure(chunk.start + i,
+                            new MorphiumException("Error evaluating transform: " + e.getMessage(), e)));
+                    }
+                }
+                source.finish(chunk);
+            }
+        }
+
+        private JsonNode apply(JsonNode input) {
+            if (!script.isFrameReusable()) {
+                return engine.run(script, input);
+            }
+            if (frame == null) {
+                frame = engine.newFrame(script);
+            }
+            return engine.run(script, frame, input);
+        }
+    }
+
+    private static final class DefaultExecutor {
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (Executor) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Before Java 21
+                return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, "morphium-batch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+}
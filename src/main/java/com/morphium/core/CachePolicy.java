@@ -0,0 +1,64 @@
+package com.morphium.core;
+
+import lombok.Getter;
+
+/**
+ * Limits and eviction strategy for the engine's script and module caches.
+ *
+ * A cache holds at most {@code maxEntries} scripts whose combined weight stays within
+ * {@code maxWeight}. The weight of a script is estimated from the length of its source,
+ * which grows with the size of its tree. A single script heavier than the limit is run
+ * but not cached.
+ */
+@Getter
+public final class CachePolicy {
+    /** Policy used by a new engine. */
+    public static final CachePolicy DEFAULT = lru(1024, 16L * 1024 * 1024);
+
+    public enum Eviction {
+        /** Evict the least recently used script. */
+        LRU,
+        /**
+         * Window TinyLFU: recent scripts enter a small LRU window, and a script leaving
+         * the window only displaces a cached one if it has been requested more often.
+         * Keeps frequently used scripts when many one-off scripts pass through.
+         */
+        TINY_LFU
+    }
+
+    private final Eviction eviction;
+    private final int maxEntries;
+    private final long maxWeight;
+
+    private CachePolicy(Eviction eviction, int maxEntries, long maxWeight) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must allow at least one entry");
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Cache weight limit must be positive");
+        }
+        this.eviction = eviction;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    public static CachePolicy lru(int maxEntries, long maxWeight) {
+        return new CachePolicy(Eviction.LRU, maxEntries, maxWeight);
+    }
+
+    public static CachePolicy tinyLfu(int maxEntries, long maxWeight) {
+        return new CachePolicy(Eviction.TINY_LFU, maxEntries, maxWeight);
+    }
+
+    /**
+     * No limits, every script stays cached until the cache is cleared.
+     */
+    public static CachePolicy unbounded() {
+        return new CachePolicy(Eviction.LRU, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return eviction + "(maxEntries=" + maxEntries + ", maxWeight=" + maxWeight + ")";
+    }
+}
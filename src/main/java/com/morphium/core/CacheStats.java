@@ -0,0 +1,41 @@
+package com.morphium.core;
+
+import lombok.Getter;
+
+/**
+ * Snapshot of a script cache's counters, see {@link MorphiumEngine#getCacheStats()}.
+ */
+@Getter
+public final class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int entryCount;
+    private final long weight;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, int entryCount, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.weight = weight;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Fraction of lookups served from the cache, 1.0 when there were none.
+     */
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats(hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+            + ", entries=" + entryCount + ", weight=" + weight + ")";
+    }
+}
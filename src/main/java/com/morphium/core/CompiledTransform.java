@@ -0,0 +1,204 @@
+package com.morphium.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.morphium.compiler.InputProjection;
+import com.morphium.util.JsonUtil;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A transform parsed and prepared once by {@link MorphiumEngine#compile(String)}.
+ *
+ * The handle is immutable and safe to share: each {@link #apply(JsonNode)} evaluates in
+ * a fresh context, so many threads can apply it at the same time. It keeps the tree it
+ * was compiled to, so later changes to the engine's execution mode, optimizer setting or
+ * cache do not affect it. Host functions are looked up on the engine at call time.
+ */
+public final class CompiledTransform {
+    private final MorphiumEngine engine;
+    private final MorphiumEngine.PreparedScript script;
+    @Getter
+    private final String sourcePath;
+
+    CompiledTransform(MorphiumEngine engine, MorphiumEngine.PreparedScript script, String sourcePath) {
+        this.engine = engine;
+        this.script = script;
+        this.sourcePath = sourcePath;
+    }
+
+    public JsonNode apply(JsonNode input) {
+        try {
+            return engine.run(script, input);
+        } catch (Exception e) {
+            throw new MorphiumException("Error evaluating transform: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Apply the transform to every input, in parallel on the engine's batch executor.
+     * Results keep the input order; inputs that fail are reported in the result and do
+     * not stop the others.
+     */
+    public BatchResult applyAll(List<JsonNode> inputs) {
+        return engine.runAll(script, inputs.iterator(), inputs.size());
+    }
+
+    /**
+     * Like {@link #applyAll(List)}, pulling inputs from {@code inputs} as workers need
+     * them. The iterator is only used by one thread at a time.
+     */
+    public BatchResult applyAll(Iterator<JsonNode> inputs) {
+        return engine.runAll(script, inputs, -1);
+    }
+
+    /**
+     * The fields of the input this transform can read, see {@link InputProjection}.
+     */
+    public InputProjection getInputProjection() {
+        return script.projection();
+    }
+
+    /**
+     * Parse an input for this transform, skipping the fields it never reads.
+     */
+    public JsonNode readInput(JsonParser parser) throws IOException {
+        return script.projection().read(parser);
+    }
+
+    public JsonNode readInput(String json) throws IOException {
+        try (JsonParser parser = JsonUtil.getMapper().getFactory().createParser(json)) {
+            return readInput(parser);
+        }
+    }
+
+    /**
+     * Apply the transform and write the result to {@code generator} as it is computed.
+     * Object and array literals are written field by field without building the result
+     * tree. The generator is not flushed or closed.
+     */
+    public void writeTo(JsonNode input, JsonGenerator generator) throws IOException {
+        try {
+            engine.run(script, input, generator);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MorphiumException("Error evaluating transform: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Apply the transform and write the result to {@code out} as UTF-8 JSON. The stream is
+     * flushed but not closed.
+     */
+    public void writeTo(JsonNode input, OutputStream out) throws IOException {
+        try (JsonGenerator generator = JsonStreams.createGenerator(out)) {
+            writeTo(input, generator);
+        }
+    }
+
+    /**
+     * Transform the JSON document in the file {@code in} and write the result to the file
+     * {@code out}, replacing it. The input is read through a memory mapping, keeping only
+     * the fields this transform reads, and the result is written as it is computed.
+     *
+     * The result goes to a temporary file next to {@code out} that replaces it once the
+     * transform succeeds, so {@code out} may be {@code in} and a failure leaves it as it was.
+     */
+    public void transformFile(Path in, Path out) throws IOException {
+        replace(out, output -> {
+            try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+                 OutputStream stream = JsonStreams.channelOutput(output);
+                 JsonParser parser = JsonStreams.createParser(JsonStreams.mappedInput(input));
+                 JsonGenerator generator = JsonStreams.createGenerator(stream)) {
+                JsonNode document = readInput(parser);
+                if (document.isMissingNode()) {
+                    throw new MorphiumException("Input file is empty: " + in);
+                }
+                writeTo(document, generator);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Transform every element of the array at {@code arrayPointer} in the file {@code in},
+     * one element at a time, and write the results to the file {@code out} as a JSON
+     * array. Memory stays bounded by one element however large the file is. {@code out}
+     * is replaced as by {@link #transformFile(Path, Path)}.
+     * @return The number of elements transformed
+     */
+    public long transformFile(Path in, Path out, String arrayPointer) throws IOException {
+        return replace(out, output -> {
+            try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+                 OutputStream stream = JsonStreams.channelOutput(output)) {
+                return transformStream(JsonStreams.mappedInput(input), stream, arrayPointer);
+            }
+        });
+    }
+
+    /**
+     * Write to a temporary file in the directory of {@code out}, then move it over
+     * {@code out}. The temporary file is removed if writing fails.
+     */
+    private static <T> T replace(Path out, FileWriter<T> writer) throws IOException {
+        Path target = out.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        boolean moved = false;
+        try {
+            T result;
+            try (FileChannel output = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                result = writer.write(output);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            return result;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private interface FileWriter<T> {
+        T write(FileChannel output) throws IOException;
+    }
+
+    /**
+     * Transform every element of the top-level array in {@code in} and write the results
+     * to {@code out} as a JSON array, one element at a time. Neither stream is closed.
+     * @return The number of elements transformed
+     */
+    public long transformStream(InputStream in, OutputStream out) throws IOException {
+        return transformStream(in, out, "");
+    }
+
+    /**
+     * Like {@link #transformStream(InputStream, OutputStream)}, for the array selected by
+     * a JSON Pointer such as {@code /data/items}. Everything outside it is skipped.
+     */
+    public long transformStream(InputStream in, OutputStream out, String arrayPointer) throws IOException {
+        JsonPointer pointer = JsonPointer.compile(arrayPointer);
+        try (JsonParser parser = JsonStreams.createParser(in);
+             JsonGenerator generator = JsonStreams.createGenerator(out)) {
+            return JsonStreams.transformArray(this, parser, generator, pointer);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.morphium.core;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.morphium.util.JsonUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * Element-by-element transforms of large JSON arrays.
+ *
+ * The parser is moved to the array selected by a JSON Pointer, skipping everything before
+ * it without building nodes. Each element is then read into a tree on its own, keeping
+ * only the fields the transform reads, and transformed straight into the generator
+ * before the next element is read, so memory is bounded by the largest element rather
+ * than the document.
+ */
+final class JsonStreams {
+
+    // Bytes mapped at once; a mapping cannot exceed 2 GB
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final int CHANNEL_BUFFER_SIZE = 1 << 16;
+
+    private JsonStreams() {
+    }
+
+    static JsonParser createParser(InputStream in) throws IOException {
+        JsonParser parser = factory().createParser(in);
+        // The caller opened the stream and closes it
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        return parser;
+    }
+
+    /**
+     * Input stream over a file mapped into memory. Jackson's byte parser copies from the
+     * mapping into its own small buffer, so the file is never copied onto the heap or
+     * decoded into a String. Files larger than one mapping are mapped a segment at a
+     * time as reading proceeds.
+     */
+    static InputStream mappedInput(FileChannel channel) throws IOException {
+        return new MappedInputStream(channel);
+    }
+
+    /**
+     * Buffered output stream writing to a file channel.
+     */
+    static OutputStream channelOutput(FileChannel channel) {
+        return new BufferedOutputStream(Channels.newOutputStream(channel), CHANNEL_BUFFER_SIZE);
+    }
+
+    static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = factory().createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    /**
+     * Transform each element of the array at {@code pointer} and write the results to
+     * {@code generator} as one array.
+     * @return The number of elements transformed
+     */
+    static long transformArray(CompiledTransform transform, JsonParser parser, JsonGenerator generator,
+                               JsonPointer pointer) throws IOException {
+        if (parser.nextToken() == null) {
+            throw new MorphiumException("Input is empty");
+        }
+        seek(parser, pointer);
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new MorphiumException("Expected an array at '" + pointer + "' but found " + parser.currentToken());
+        }
+
+        long count = 0;
+        generator.writeStartArray();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonNode element = transform.readInput(parser);
+            try {
+                transform.writeTo(element, generator);
+            } catch (MorphiumException e) {
+                throw new MorphiumException("Element " + count + ": " + e.getMessage(), e);
+            }
+            count++;
+        }
+        generator.writeEndArray();
+        generator.flush();
+        return count;
+    }
+
+    /**
+     * Advance the parser, positioned on a value's first token, to the first token of the
+     * value {@code pointer} selects. Values on the way that are not selected are skipped.
+     */
+    private static void seek(JsonParser parser, JsonPointer pointer) throws IOException {
+        JsonPointer remaining = pointer;
+        while (!remaining.matches()) {
+            JsonToken token = parser.currentToken();
+            boolean found = false;
+            if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if (remaining.matchesProperty(name)) {
+                        found = true;
+                        break;
+                    }
+                    parser.skipChildren();
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                for (int index = 0; parser.nextToken() != JsonToken.END_ARRAY; index++) {
+                    if (remaining.matchesElement(index)) {
+                        found = true;
+                        break;
+                    }
+                    parser.skipChildren();
+                }
+            }
+            if (!found) {
+                throw new MorphiumException("Nothing found at '" + pointer + "' in input");
+            }
+            remaining = remaining.tail();
+        }
+    }
+
+    private static JsonFactory factory() {
+        return JsonUtil.getMapper().getFactory();
+    }
+
+    private static final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        // File offset at which the current segment starts
+        private long segmentStart;
+        private MappedByteBuffer segment;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.segment = map(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            return segment.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            int count = Math.min(length, segment.remaining());
+            segment.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return segment.remaining();
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            if (segment.hasRemaining()) {
+                return true;
+            }
+            long next = segmentStart + segment.capacity();
+            if (next >= size) {
+                return false;
+            }
+            segment = map(next);
+            return true;
+        }
+
+        private MappedByteBuffer map(long start) throws IOException {
+            segmentStart = start;
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+    }
+}
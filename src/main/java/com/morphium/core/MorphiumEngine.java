@@ -2,45 +2,84 @@ package com.morphium.core;
 
 import com.morphium.util.JsonUtil;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.morphium.builtin.BuiltinFunctions;
+import com.morphium.compiler.AstOptimizer;
+import com.morphium.compiler.ExecutionMode;
+import com.morphium.compiler.ExpressionCompiler;
+import com.morphium.compiler.InputProjection;
+import com.morphium.compiler.ScopeResolver;
+import com.morphium.compiler.TieredExpression;
 import com.morphium.parser.Lexer;
 import com.morphium.parser.Parser;
 import com.morphium.parser.ast.Expression;
+import com.morphium.parser.ast.ImportStatement;
 import com.morphium.runtime.Context;
 import com.morphium.runtime.HostFunctionRegistry;
 import com.morphium.runtime.ModuleResolver;
+import com.morphium.runtime.MorphRunner;
+import com.morphium.runtime.Scope;
+import com.morphium.runtime.UserFunction;
 import lombok.Getter;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
 
 public class MorphiumEngine {
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+
     @Getter
     private final ModuleResolver moduleResolver;
     @Getter
     private final HostFunctionRegistry functionRegistry;
-    private final Context rootContext;
-    private final ConcurrentHashMap<String, Expression> parsedExpressionCache;
-    private final ConcurrentHashMap<String, Expression> moduleCache;
+    // Root of every run's frames; sealed, so runs on any thread can share it
+    private final Context prelude;
+    private volatile ScriptCache<ScriptKey, PreparedScript> parsedExpressionCache;
+    private volatile ScriptCache<String, ModuleInstance> moduleCache;
+    private volatile CachePolicy cachePolicy = CachePolicy.DEFAULT;
+    private final AstOptimizer optimizer = new AstOptimizer();
+    private final ExpressionCompiler compiler = new ExpressionCompiler();
+    private volatile ExecutionMode executionMode = ExecutionMode.INTERPRET;
+    private volatile int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+    private volatile boolean optimizationEnabled;
+    private volatile Executor batchExecutor;
+    private volatile int batchParallelism = Runtime.getRuntime().availableProcessors();
 
     public MorphiumEngine() {
         this.moduleResolver = new ModuleResolver();
         this.functionRegistry = new HostFunctionRegistry();
-        this.rootContext = new Context(functionRegistry);
-        this.parsedExpressionCache = new ConcurrentHashMap<>();
-        this.moduleCache = new ConcurrentHashMap<>();
+        this.prelude = createPrelude(functionRegistry, this::runMorph);
+        this.parsedExpressionCache = new ScriptCache<>(cachePolicy, PreparedScript::getWeight);
+        this.moduleCache = new ScriptCache<>(cachePolicy, ModuleInstance::getWeight);
     }
 
     public MorphiumEngine(ModuleResolver moduleResolver) {
         this.moduleResolver = moduleResolver;
         this.functionRegistry = new HostFunctionRegistry();
-        this.rootContext = new Context(functionRegistry);
-        this.parsedExpressionCache = new ConcurrentHashMap<>();
-        this.moduleCache = new ConcurrentHashMap<>();
+        this.prelude = createPrelude(functionRegistry, this::runMorph);
+        this.parsedExpressionCache = new ScriptCache<>(cachePolicy, PreparedScript::getWeight);
+        this.moduleCache = new ScriptCache<>(cachePolicy, ModuleInstance::getWeight);
+    }
+
+    private static Context createPrelude(HostFunctionRegistry functionRegistry, MorphRunner morphRunner) {
+        Context prelude = new Context(functionRegistry, morphRunner);
+        prelude.seal();
+        return prelude;
     }
 
     public JsonNode transform(String transformPath, JsonNode input) throws IOException {
@@ -52,6 +91,94 @@ public class MorphiumEngine {
         return evaluate(source, input, "<string>");
     }
 
+    /**
+     * Transform {@code input} and write the result straight to {@code generator}. Object
+     * and array literals in the result are written field by field as they are computed,
+     * so the result tree is never built.
+     */
+    public void transformFromString(String source, JsonNode input, JsonGenerator generator) throws IOException {
+        compile(source).writeTo(input, generator);
+    }
+
+    /**
+     * Transform a large JSON array without reading it into memory: each element of the
+     * top-level array in {@code in} is transformed by {@code source} and its result
+     * written to {@code out}, which receives a JSON array. Neither stream is closed.
+     * @return The number of elements transformed
+     */
+    public long transformStream(String source, InputStream in, OutputStream out) throws IOException {
+        return compile(source).transformStream(in, out);
+    }
+
+    /**
+     * Like {@link #transformStream(String, InputStream, OutputStream)}, for the array at
+     * {@code arrayPointer}, a JSON Pointer such as {@code /data/items}.
+     */
+    public long transformStream(String source, InputStream in, OutputStream out, String arrayPointer)
+            throws IOException {
+        return compile(source).transformStream(in, out, arrayPointer);
+    }
+
+    /**
+     * Transform the JSON document in the file {@code in} with {@code source} and write the
+     * result to the file {@code out}. The input is memory-mapped and parsed from its bytes
+     * without being copied into a String.
+     */
+    public void transformFile(String source, Path in, Path out) throws IOException {
+        compile(source).transformFile(in, out);
+    }
+
+    /**
+     * Like {@link #transformStream(String, InputStream, OutputStream, String)} between
+     * files, with the input memory-mapped.
+     * @return The number of elements transformed
+     */
+    public long transformFile(String source, Path in, Path out, String arrayPointer) throws IOException {
+        return compile(source).transformFile(in, out, arrayPointer);
+    }
+
+    /**
+     * Transform many independent inputs with one script, in parallel on the batch
+     * executor. Inputs that fail are reported in the result without stopping the others.
+     */
+    public BatchResult transformAll(String source, List<JsonNode> inputs) {
+        return compile(source).applyAll(inputs);
+    }
+
+    /**
+     * Like {@link #transformAll(String, List)}, pulling inputs from {@code inputs} as
+     * workers need them.
+     */
+    public BatchResult transformAll(String source, Iterator<JsonNode> inputs) {
+        return compile(source).applyAll(inputs);
+    }
+
+    public BatchResult transformAll(String source, Spliterator<JsonNode> inputs) {
+        return compile(source).applyAll(Spliterators.iterator(inputs));
+    }
+
+    /**
+     * Parse and prepare a transform once. The returned handle can be applied to any
+     * number of inputs, from any number of threads, without further cache lookups.
+     */
+    public CompiledTransform compile(String source) {
+        return compile(source, "<string>");
+    }
+
+    public CompiledTransform compile(Path transformPath) throws IOException {
+        return compile(Files.readString(transformPath), transformPath.toString());
+    }
+
+    private CompiledTransform compile(String source, String sourcePath) {
+        try {
+            return new CompiledTransform(this, prepareScript(source, sourcePath), sourcePath);
+        } catch (MorphiumException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MorphiumException("Error compiling transform: " + e.getMessage(), e);
+        }
+    }
+
     public void setLogger(com.morphium.runtime.Logger logger) {
         functionRegistry.setLogger(logger);
     }
@@ -81,6 +208,101 @@ public class MorphiumEngine {
         });
     }
 
+    /**
+     * Choose between interpret-only (the default), tiered and compile-always execution.
+     * Compiling only specializes the parsed tree (see {@link ExpressionCompiler}), so it
+     * is opt-in. Cached scripts are dropped so they are prepared again under the new mode.
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+        clearCache();
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Number of runs after which a script is compiled in {@link ExecutionMode#TIERED} mode.
+     */
+    public void setCompileThreshold(int compileThreshold) {
+        if (compileThreshold < 1) {
+            throw new IllegalArgumentException("Compile threshold must be at least 1");
+        }
+        this.compileThreshold = compileThreshold;
+        clearCache();
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    /**
+     * Run the {@link AstOptimizer} over scripts and modules before they are cached.
+     * Off by default: optimized scripts share read-only constant object and array literals
+     * between runs, so results must be copied before they are modified in place.
+     */
+    public void setOptimizationEnabled(boolean optimizationEnabled) {
+        this.optimizationEnabled = optimizationEnabled;
+        clearCache();
+    }
+
+    public boolean isOptimizationEnabled() {
+        return optimizationEnabled;
+    }
+
+    /**
+     * Replace the limits and eviction strategy of the script and module caches. Each
+     * cache applies the policy on its own. Cached scripts and counters are dropped.
+     */
+    public void setCachePolicy(CachePolicy cachePolicy) {
+        this.cachePolicy = cachePolicy;
+        this.parsedExpressionCache = new ScriptCache<>(cachePolicy, PreparedScript::getWeight);
+        this.moduleCache = new ScriptCache<>(cachePolicy, ModuleInstance::getWeight);
+    }
+
+    /**
+     * Executor that batch transforms run on. Null, the default, selects virtual threads
+     * on Java 21 and later and a shared pool of daemon threads before that.
+     */
+    public void setBatchExecutor(Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    public Executor getBatchExecutor() {
+        Executor executor = batchExecutor;
+        return executor != null ? executor : Batches.defaultExecutor();
+    }
+
+    /**
+     * Number of threads, the calling thread included, a batch transform uses at most.
+     */
+    public void setBatchParallelism(int batchParallelism) {
+        if (batchParallelism < 1) {
+            throw new IllegalArgumentException("Batch parallelism must be at least 1");
+        }
+        this.batchParallelism = batchParallelism;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * Hit, miss and eviction counters and the current size of the script cache.
+     */
+    public CacheStats getCacheStats() {
+        return parsedExpressionCache.stats();
+    }
+
+    public CacheStats getModuleCacheStats() {
+        return moduleCache.stats();
+    }
+
     private String loadSource(String path) throws IOException {
         Path filePath = Paths.get(path);
         return Files.readString(filePath);
@@ -88,39 +310,215 @@ public class MorphiumEngine {
 
     private JsonNode evaluate(String source, JsonNode input, String sourcePath) {
         try {
-            String cacheKey = sourcePath + ":" + source.hashCode();
-            Expression rootExpression = parsedExpressionCache.computeIfAbsent(cacheKey, k -> {
-                Lexer lexer = new Lexer(source, sourcePath);
-                Parser parser = new Parser(lexer);
-                return parser.parse();
-            });
-
-            Context evalContext = new Context(rootContext);
-            evalContext.define("$", input);
-
-            // Process imports BEFORE evaluating the main expression
-            processImports(rootExpression, evalContext);
-            
-            // Now evaluate with imports available
-
-            return rootExpression.evaluate(evalContext);
+            return run(prepareScript(source, sourcePath), input);
         } catch (Exception e) {
             throw new MorphiumException("Error evaluating transform: " + e.getMessage(), e);
         }
     }
 
-    private void processImports(Expression rootExpr, Context context) {
+    /**
+     * Run a transform file for the {@code runMorph} builtin. The file is loaded through the
+     * module resolver and prepared through the script cache, so it follows the same reload
+     * rules as imports and is parsed once rather than per call.
+     */
+    private JsonNode runMorph(String morphPath, JsonNode input) throws IOException {
+        return run(prepareScript(moduleResolver.resolve(morphPath), morphPath), input);
+    }
+
+    private PreparedScript prepareScript(String source, String sourcePath) {
+        // Keyed on the full source, so scripts with equal hash codes never share a tree
+        return parsedExpressionCache.computeIfAbsent(new ScriptKey(sourcePath, source), k -> {
+            Expression parsed = optimize(parse(source, sourcePath));
+            Scope scope = new ScopeResolver().resolveProgram(parsed);
+            return new PreparedScript(parsed, prepare(parsed), scope, source.length());
+        });
+    }
+
+    /**
+     * Evaluate a prepared script against one input. Every run gets its own context, so
+     * a script can run on several threads at once.
+     */
+    JsonNode run(PreparedScript script, JsonNode input) {
+        Context context = runContext(script, input);
+        return materialize(script.current().evaluate(context), context);
+    }
+
+    /**
+     * Evaluate a prepared script and write its result to {@code generator} as it is
+     * computed, without building the result tree where the result is an object or array
+     * literal.
+     */
+    void run(PreparedScript script, JsonNode input, JsonGenerator generator) throws IOException {
+        script.current().writeTo(runContext(script, input), generator);
+    }
+
+    /**
+     * Transform a batch of inputs with a prepared script, see {@link Batches}.
+     * @param expectedSize Number of inputs, or -1 when unknown
+     */
+    BatchResult runAll(PreparedScript script, Iterator<JsonNode> inputs, int expectedSize) {
+        return Batches.run(this, script, inputs, expectedSize, getBatchExecutor(), batchParallelism);
+    }
+
+    /**
+     * Create a frame to run a script in repeatedly, with its imports in place. Only valid
+     * for scripts whose frame is reusable.
+     */
+    Context newFrame(PreparedScript script) {
+        return runContext(script, NullNode.getInstance());
+    }
+
+    /**
+     * Evaluate a prepared script in a frame from {@link #newFrame}, rebinding {@code $}.
+     */
+    JsonNode run(PreparedScript script, Context frame, JsonNode input) {
+        // Globals and exports of the previous run must not leak into this one
+        frame.resetGlobals();
+        frame.define("$", input);
+        // Computed before the frame is rebound for the next record, which a lazy array
+        // reading $ would otherwise see
+        return materialize(script.current().evaluate(frame), frame);
+    }
+
+    /**
+     * Compute the lazy arrays of a result while the run's frames are still current, so
+     * errors surface here and the result holds no frames. Runs that produced no lazy
+     * array skip the walk over the result.
+     */
+    private static JsonNode materialize(JsonNode result, Context context) {
+        return context.hasLazyValues() ? BuiltinFunctions.materialize(result) : result;
+    }
+
+    /**
+     * Create the global frame of one run below the prelude, with {@code $} bound and
+     * the script's imports in place. Everything the run declares stays in this frame.
+     */
+    private Context runContext(PreparedScript script, JsonNode input) {
+        Context evalContext = Context.newGlobalContext(prelude, script.scope);
+        evalContext.define("$", input);
+
+        // Process imports BEFORE evaluating the main expression
+        for (ImportStatement importStmt : script.imports) {
+            handleImport(importStmt, evalContext);
+        }
+        return evalContext;
+    }
+
+    /**
+     * Parse a script, using its precompiled {@code .morphc} tree when one matches the source.
+     */
+    private Expression parse(String source, String sourcePath) {
+        Expression precompiled = moduleResolver.loadPrecompiled(sourcePath, source);
+        if (precompiled != null) {
+            return precompiled;
+        }
+        return new Parser(new Lexer(source, sourcePath)).parse();
+    }
+
+    private Expression optimize(Expression parsed) {
+        return optimizationEnabled ? optimizer.optimize(parsed) : parsed;
+    }
+
+    private Expression prepare(Expression parsed) {
+        switch (executionMode) {
+            case COMPILE:
+                return compiler.compile(parsed);
+            case TIERED:
+                return new TieredExpression(parsed, compileThreshold, compiler);
+            default:
+                return parsed;
+        }
+    }
+
+    /**
+     * Cache key of a script: where it was loaded from and its full text.
+     */
+    private static final class ScriptKey {
+        private final String sourcePath;
+        private final String source;
+
+        ScriptKey(String sourcePath, String source) {
+            this.sourcePath = sourcePath;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ScriptKey)) return false;
+            ScriptKey other = (ScriptKey) o;
+            return sourcePath.equals(other.sourcePath) && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            // String caches its hash, so repeated lookups do not rescan the source
+            return 31 * sourcePath.hashCode() + source.hashCode();
+        }
+    }
+
+    /**
+     * A parsed and resolved script together with the tree it is executed through.
+     */
+    static final class PreparedScript {
+        private final Expression source;
+        private final Expression executable;
+        private final Scope scope;
+        // Top-level imports, processed before each run
+        private final List<ImportStatement> imports;
+        // False when an import depends on the input, so each run needs its own frame
+        private final boolean frameReusable;
+        // Estimated memory cost, the length of the source the tree was parsed from
+        private final long weight;
+        // Fields of the input the script can read, computed on first use
+        private volatile InputProjection projection;
+
+        PreparedScript(Expression source, Expression executable, Scope scope, long weight) {
+            this.source = source;
+            this.executable = executable;
+            this.scope = scope;
+            this.imports = collectImports(source);
+            this.frameReusable = imports.stream().noneMatch(ImportStatement::isDynamic);
+            this.weight = weight;
+        }
+
+        long getWeight() {
+            return weight;
+        }
+
+        boolean isFrameReusable() {
+            return frameReusable;
+        }
+
+        Expression current() {
+            return executable instanceof TieredExpression ? ((TieredExpression) executable).current() : executable;
+        }
+
+        InputProjection projection() {
+            InputProjection result = projection;
+            if (result == null) {
+                // Racing threads compute equal projections, either may be kept
+                result = InputProjection.of(source);
+                projection = result;
+            }
+            return result;
+        }
+    }
+
+    private static List<ImportStatement> collectImports(Expression rootExpr) {
+        List<ImportStatement> imports = new ArrayList<>();
         if (rootExpr instanceof com.morphium.parser.ast.BlockExpr) {
             com.morphium.parser.ast.BlockExpr block = (com.morphium.parser.ast.BlockExpr) rootExpr;
             for (Expression expr : block.getExpressions()) {
-                if (expr instanceof com.morphium.parser.ast.ImportStatement) {
-                    handleImport((com.morphium.parser.ast.ImportStatement) expr, context);
+                if (expr instanceof ImportStatement) {
+                    imports.add((ImportStatement) expr);
                 }
             }
         }
+        return imports.isEmpty() ? Collections.emptyList() : imports;
     }
 
-    private void handleImport(com.morphium.parser.ast.ImportStatement importStmt, Context context) {
+    private void handleImport(ImportStatement importStmt, Context context) {
         try {
             String modulePath = importStmt.getModulePath();
             String moduleSource;
@@ -151,38 +549,16 @@ public class MorphiumEngine {
                 return; // Already imported, skip
             }
             
-            // Parse the module with caching
-            Expression moduleExpr = moduleCache.computeIfAbsent(cacheKey, k -> {
-                Lexer lexer = new Lexer(moduleSource, modulePath);
-                Parser parser = new Parser(lexer);
-                return parser.parse();
-            });
-            
-            Context moduleContext = new Context(rootContext);
-            
-            // Evaluate module expressions directly in moduleContext to preserve functions
-            if (moduleExpr instanceof com.morphium.parser.ast.BlockExpr) {
-                com.morphium.parser.ast.BlockExpr block = (com.morphium.parser.ast.BlockExpr) moduleExpr;
-                for (Expression expr : block.getExpressions()) {
-                    expr.evaluate(moduleContext);
-                }
-            } else {
-                moduleExpr.evaluate(moduleContext);
-            }
-            
+            ModuleInstance module = loadModule(cacheKey, modulePath, moduleSource);
+
             // Import exports into current context
             if (alias != null) {
-                // Import all exports under alias namespace
-                com.fasterxml.jackson.databind.node.ObjectNode exports = com.morphium.util.JsonUtil.createObject();
-                for (java.util.Map.Entry<String, JsonNode> entry : moduleContext.getAllExports().entrySet()) {
-                    exports.set(entry.getKey(), entry.getValue());
+                context.define(alias, module.exports);
+                for (Map.Entry<String, UserFunction> entry : module.functions.entrySet()) {
+                    context.defineModuleFunction(alias, entry.getKey(), entry.getValue());
                 }
-                context.define(alias, exports);
-                
-                // Also import functions
-                importModuleFunctions(moduleContext, context, alias);
             }
-            
+
             // Mark this module as imported
             context.markModuleAsImported(importKey);
         } catch (IOException e) {
@@ -190,16 +566,71 @@ public class MorphiumEngine {
         }
     }
 
-    private void importModuleFunctions(Context moduleContext, Context targetContext, String namespace) {
-        Map<String, com.morphium.runtime.UserFunction> moduleFuncs = moduleContext.getUserFunctions();
-        for (Map.Entry<String, com.morphium.runtime.UserFunction> entry : moduleFuncs.entrySet()) {
-            targetContext.defineModuleFunction(namespace, entry.getKey(), entry.getValue());
+    /**
+     * Return the evaluated instance of a module, evaluating it on first use or when its
+     * source no longer matches the cached instance.
+     */
+    private ModuleInstance loadModule(String cacheKey, String modulePath, String moduleSource) {
+        ScriptCache<String, ModuleInstance> cache = moduleCache;
+        ModuleInstance module = cache.computeIfAbsent(cacheKey, k -> evaluateModule(modulePath, moduleSource));
+        if (!module.source.equals(moduleSource)) {
+            // Transforms already holding the old instance finish with it
+            module = cache.replace(cacheKey, evaluateModule(modulePath, moduleSource));
+        }
+        return module;
+    }
+
+    private ModuleInstance evaluateModule(String modulePath, String moduleSource) {
+        Expression parsed = optimize(parse(moduleSource, modulePath));
+        Scope scope = new ScopeResolver().resolveModule(parsed);
+        // The body runs once, so a module is only compiled when every script is
+        Expression moduleExpr = executionMode == ExecutionMode.COMPILE ? compiler.compile(parsed) : parsed;
+
+        Context moduleContext = Context.newModuleContext(prelude, scope);
+        // Evaluate module expressions directly in moduleContext to preserve functions
+        if (moduleExpr instanceof com.morphium.parser.ast.BlockExpr) {
+            com.morphium.parser.ast.BlockExpr block = (com.morphium.parser.ast.BlockExpr) moduleExpr;
+            for (Expression expr : block.getExpressions()) {
+                expr.evaluate(moduleContext);
+            }
+        } else {
+            moduleExpr.evaluate(moduleContext);
+        }
+
+        ObjectNode exports = JsonUtil.createObject();
+        for (Map.Entry<String, JsonNode> entry : moduleContext.getAllExports().entrySet()) {
+            exports.set(entry.getKey(), entry.getValue());
+        }
+        // Its functions run in this frame for every importer, on any thread
+        moduleContext.seal();
+        return new ModuleInstance(moduleSource, (ObjectNode) JsonUtil.freeze(exports),
+            Collections.unmodifiableMap(moduleContext.getUserFunctions()));
+    }
+
+    /**
+     * A module evaluated once and shared by every script importing it. Its exports reject
+     * modification and its functions keep the module frame they were defined in.
+     */
+    private static final class ModuleInstance {
+        private final String source;
+        private final ObjectNode exports;
+        private final Map<String, UserFunction> functions;
+
+        ModuleInstance(String source, ObjectNode exports, Map<String, UserFunction> functions) {
+            this.source = source;
+            this.exports = exports;
+            this.functions = functions;
+        }
+
+        long getWeight() {
+            return source.length();
         }
     }
 
     public void clearCache() {
         parsedExpressionCache.clear();
         moduleCache.clear();
+        moduleResolver.clearCache();
     }
 
     public int getCacheSize() {
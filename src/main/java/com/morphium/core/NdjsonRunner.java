@@ -0,0 +1,284 @@
+package com.morphium.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.morphium.util.JsonUtil;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transforms newline-delimited JSON: every non-blank input line is one record, and every
+ * result is written as one output line.
+ *
+ * The calling thread reads lines in chunks of {@link #getChunkSize()} records and hands
+ * each chunk to a worker, which parses, transforms and serializes the whole chunk. The
+ * calling thread then writes finished chunks. By default output keeps the input order;
+ * unordered mode writes chunks as soon as they finish, so one slow chunk does not hold
+ * back the others. At most two chunks per worker are in flight, which bounds memory.
+ *
+ * A record that fails to parse or transform stops the run with an error naming its line.
+ * A runner can be reused and settings changed between runs apply to the next one. Each
+ * run starts its own pool unless an executor is set, which a server running many runs
+ * at once should do to share one set of threads between them.
+ * <pre>
+ *   NdjsonRunner runner = new NdjsonRunner(engine.compile(script));
+ *   runner.setWorkers(8);
+ *   NdjsonStats stats = runner.run(in, out);
+ * </pre>
+ */
+@Getter
+public final class NdjsonRunner {
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final CompiledTransform transform;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = 512;
+    private boolean ordered = true;
+    private Executor executor;
+
+    public NdjsonRunner(CompiledTransform transform) {
+        this.transform = transform;
+    }
+
+    /**
+     * Number of worker threads. A fresh pool of this size is used for each run.
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Workers must be at least 1");
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Records handed to a worker at once. Larger chunks cost less coordination, smaller
+     * ones keep memory and the latency of the first output lower.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Whether output lines follow input order, true by default.
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * Executor to run chunks on instead of a fresh pool per run. It is shared, not shut
+     * down by runs, and {@link #getWorkers()} still bounds the chunks a run has in flight.
+     * Null, the default, starts a pool of {@link #getWorkers()} threads for every run.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Transform every record of {@code in} and write the results to {@code out}. Neither
+     * stream is closed.
+     */
+    public NdjsonStats run(InputStream in, OutputStream out) throws IOException {
+        if (executor != null) {
+            return new Run(executor, out).execute(in);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "morphium-ndjson");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            return new Run(pool, out).execute(in);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * State of one call to {@link #run}.
+     */
+    private final class Run {
+        private final Executor executor;
+        private final OutputStream out;
+        private final boolean inOrder = ordered;
+        // Only used unordered; in order, futures are awaited in submission order instead
+        private final CompletionService<Chunk> completion;
+        // Chunks in flight in submission order, cancelled when the run fails
+        private final Deque<Future<Chunk>> pending = new ArrayDeque<>();
+        private final int maxInFlight = workers * 2;
+        private final AtomicLong parseNanos = new AtomicLong();
+        private final AtomicLong transformNanos = new AtomicLong();
+        private final AtomicLong serializeNanos = new AtomicLong();
+        private long readNanos;
+        private long writeNanos;
+        private long records;
+        private long chunks;
+        private int inFlight;
+
+        Run(Executor executor, OutputStream out) {
+            this.executor = executor;
+            this.out = out;
+            this.completion = new ExecutorCompletionService<>(executor);
+        }
+
+        NdjsonStats execute(InputStream in) throws IOException {
+            try {
+                return transform(in);
+            } catch (IOException | RuntimeException e) {
+                // A shared executor outlives the run, so its remaining chunks are dropped here
+                for (Future<Chunk> future : pending) {
+                    future.cancel(true);
+                }
+                throw e;
+            }
+        }
+
+        private NdjsonStats transform(InputStream in) throws IOException {
+            long start = System.nanoTime();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+                READ_BUFFER_SIZE);
+            long lineNumber = 0;
+            while (true) {
+                long readStart = System.nanoTime();
+                long firstLine = lineNumber + 1;
+                List<String> lines = new ArrayList<>(chunkSize);
+                String line;
+                while (lines.size() < chunkSize && (line = reader.readLine()) != null) {
+                    lineNumber++;
+                    lines.add(line);
+                }
+                readNanos += System.nanoTime() - readStart;
+                if (lines.isEmpty()) {
+                    break;
+                }
+                submit(lines, firstLine);
+                if (lines.size() < chunkSize) {
+                    break;
+                }
+            }
+            while (inFlight > 0) {
+                writeNext();
+            }
+            out.flush();
+            return new NdjsonStats(records, chunks, System.nanoTime() - start, readNanos, parseNanos.get(),
+                transformNanos.get(), serializeNanos.get(), writeNanos);
+        }
+
+        private void submit(List<String> lines, long firstLine) throws IOException {
+            if (inOrder) {
+                FutureTask<Chunk> task = new FutureTask<>(() -> process(lines, firstLine));
+                pending.add(task);
+                executor.execute(task);
+            } else {
+                pending.add(completion.submit(() -> process(lines, firstLine)));
+            }
+            inFlight++;
+            chunks++;
+            while (inFlight >= maxInFlight) {
+                writeNext();
+            }
+        }
+
+        private void writeNext() throws IOException {
+            try {
+                Future<Chunk> future = inOrder ? pending.poll() : completion.take();
+                if (!inOrder) {
+                    pending.remove(future);
+                }
+                Chunk chunk = future.get();
+                inFlight--;
+                long writeStart = System.nanoTime();
+                chunk.output.writeTo(out);
+                writeNanos += System.nanoTime() - writeStart;
+                records += chunk.records;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MorphiumException("Interrupted while transforming records", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof MorphiumException) {
+                    throw (MorphiumException) cause;
+                }
+                throw new MorphiumException("Error transforming records: " + cause.getMessage(), cause);
+            }
+        }
+
+        /**
+         * Parse, transform and serialize one chunk on a worker.
+         */
+        private Chunk process(List<String> lines, long firstLine) throws IOException {
+            ObjectWriter writer = JsonUtil.getMapper().writer();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(lines.size() * 128);
+            long parse = 0;
+            long apply = 0;
+            long serialize = 0;
+            int count = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.isBlank()) {
+                    continue;
+                }
+                long lineNumber = firstLine + i;
+                long t0 = System.nanoTime();
+                JsonNode input;
+                try {
+                    input = transform.readInput(line);
+                } catch (JsonProcessingException e) {
+                    throw new MorphiumException("Line " + lineNumber + ": invalid JSON: " + e.getOriginalMessage(), e);
+                }
+                long t1 = System.nanoTime();
+                JsonNode result;
+                try {
+                    result = transform.apply(input);
+                } catch (MorphiumException e) {
+                    throw new MorphiumException("Line " + lineNumber + ": " + e.getMessage(), e);
+                }
+                long t2 = System.nanoTime();
+                writer.writeValue(output, result);
+                output.write('\n');
+                serialize += System.nanoTime() - t2;
+                apply += t2 - t1;
+                parse += t1 - t0;
+                count++;
+            }
+            parseNanos.addAndGet(parse);
+            transformNanos.addAndGet(apply);
+            serializeNanos.addAndGet(serialize);
+            return new Chunk(output, count);
+        }
+    }
+
+    private static final class Chunk {
+        private final ByteArrayOutputStream output;
+        private final int records;
+
+        Chunk(ByteArrayOutputStream output, int records) {
+            this.output = output;
+            this.records = records;
+        }
+    }
+}
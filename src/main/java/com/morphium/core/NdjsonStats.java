@@ -0,0 +1,52 @@
+package com.morphium.core;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters and timings of one {@link NdjsonRunner#run} call.
+ *
+ * Read and write times are spent on the calling thread. Parse, transform and serialize
+ * times are summed over all workers, so with several workers they can add up to more
+ * than the elapsed time.
+ */
+@Getter
+public final class NdjsonStats {
+    private final long recordCount;
+    private final long chunkCount;
+    private final long elapsedNanos;
+    private final long readNanos;
+    private final long parseNanos;
+    private final long transformNanos;
+    private final long serializeNanos;
+    private final long writeNanos;
+
+    NdjsonStats(long recordCount, long chunkCount, long elapsedNanos, long readNanos, long parseNanos,
+                long transformNanos, long serializeNanos, long writeNanos) {
+        this.recordCount = recordCount;
+        this.chunkCount = chunkCount;
+        this.elapsedNanos = elapsedNanos;
+        this.readNanos = readNanos;
+        this.parseNanos = parseNanos;
+        this.transformNanos = transformNanos;
+        this.serializeNanos = serializeNanos;
+        this.writeNanos = writeNanos;
+    }
+
+    public double getRecordsPerSecond() {
+        return elapsedNanos == 0 ? 0 : recordCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NdjsonStats(records=%d, chunks=%d, elapsed=%dms, records/s=%.0f, read=%dms, "
+                + "parse=%dms, transform=%dms, serialize=%dms, write=%dms)",
+            recordCount, chunkCount, millis(elapsedNanos), getRecordsPerSecond(), millis(readNanos),
+            millis(parseNanos), millis(transformNanos), millis(serializeNanos), millis(writeNanos));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,364 @@
+package com.morphium.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache of prepared scripts, limited by entry count and estimated weight.
+ *
+ * Under {@link CachePolicy.Eviction#LRU} every entry lives in one access-ordered map.
+ * Under {@link CachePolicy.Eviction#TINY_LFU} new entries go to a window of about 1% of
+ * the capacity; an entry pushed out of the window is admitted to the main map only when
+ * a frequency sketch says it is requested more often than the main map's least recently
+ * used entry, which is then evicted instead.
+ *
+ * Lookups read a concurrent map and take no lock. Each lookup is recorded in a small
+ * buffer that is replayed into the recency order and the sketch under the eviction lock,
+ * by whichever thread finds it full or next adds an entry; lookups made while the buffer
+ * is full are dropped, which only makes the eviction order approximate. Loading runs
+ * outside the lock, once per key however many threads miss it at the same time.
+ */
+final class ScriptCache<K, V> {
+    // Lookups recorded between two replays, further lookups are not recorded
+    private static final int READ_BUFFER_SIZE = 64;
+
+    private final CachePolicy policy;
+    private final ToLongFunction<V> weigher;
+    private final ConcurrentHashMap<K, Node<V>> data = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, Load<V>> loads = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<K> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicInteger reads = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // Guards everything below
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Recently added entries, holds everything under LRU
+    private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    // Entries admitted from the window under TinyLFU
+    private final LinkedHashMap<K, Node<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final int windowMax;
+    private long weight;
+    private long evictions;
+
+    ScriptCache(CachePolicy policy, ToLongFunction<V> weigher) {
+        this.policy = policy;
+        this.weigher = weigher;
+        if (policy.getEviction() == CachePolicy.Eviction.TINY_LFU) {
+            this.windowMax = Math.max(1, policy.getMaxEntries() / 100);
+            this.sketch = new FrequencySketch(policy.getMaxEntries());
+        } else {
+            this.windowMax = policy.getMaxEntries();
+            this.sketch = null;
+        }
+    }
+
+    /**
+     * Return the cached value for {@code key}, loading and caching it on a miss. Threads
+     * that miss a key while another thread loads it wait for that load and get its value,
+     * or its exception. A load that asks for its own key again runs the loader directly.
+     */
+    V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Load<V> load = new Load<>();
+        Load<V> running = loads.putIfAbsent(key, load);
+        if (running != null) {
+            return running.owner == Thread.currentThread() ? loader.apply(key) : running.await();
+        }
+        try {
+            // The previous load may have finished between the lookup and the claim
+            Node<V> node = data.get(key);
+            V value = node != null ? node.value : put(key, loader.apply(key), null);
+            load.future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    V get(K key) {
+        Node<V> node = data.get(key);
+        recordRead(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    private void recordRead(K key) {
+        int index = reads.getAndIncrement();
+        if (index < READ_BUFFER_SIZE) {
+            readBuffer.lazySet(index, key);
+        }
+        if (index >= READ_BUFFER_SIZE - 1 && evictionLock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replay the recorded lookups into the recency order and the sketch. Called with
+     * the eviction lock held.
+     */
+    private void drainReads() {
+        int count = Math.min(reads.get(), READ_BUFFER_SIZE);
+        for (int i = 0; i < count; i++) {
+            K key = readBuffer.getAndSet(i, null);
+            if (key == null) {
+                continue;
+            }
+            if (sketch != null) {
+                sketch.increment(key.hashCode());
+            }
+            // An access-ordered get moves the entry to the most recently used end
+            if (window.get(key) == null) {
+                main.get(key);
+            }
+        }
+        reads.set(0);
+    }
+
+    /**
+     * Cache {@code value} unless another value is cached for {@code key}, or only
+     * {@code replacing}, which is then swapped out.
+     */
+    private V put(K key, V value, Node<V> replacing) {
+        evictionLock.lock();
+        try {
+            drainReads();
+            Node<V> existing = data.get(key);
+            if (existing != null && existing != replacing) {
+                return existing.value;
+            }
+            if (existing != null) {
+                remove(key);
+                weight -= existing.weight;
+            }
+            long valueWeight = Math.max(1, weigher.applyAsLong(value));
+            if (valueWeight > policy.getMaxWeight()) {
+                // Too heavy to ever fit, run it without caching
+                if (existing != null) {
+                    data.remove(key, existing);
+                }
+                return value;
+            }
+
+            Node<V> node = new Node<>(value, valueWeight);
+            data.put(key, node);
+            window.put(key, node);
+            weight += valueWeight;
+            while (window.size() > windowMax) {
+                Map.Entry<K, Node<V>> eldest = removeEldest(window);
+                if (sketch == null) {
+                    evicted(eldest.getKey(), eldest.getValue());
+                } else {
+                    admit(eldest.getKey(), eldest.getValue());
+                }
+            }
+            while (window.size() + main.size() > policy.getMaxEntries() || weight > policy.getMaxWeight()) {
+                Map.Entry<K, Node<V>> eldest = removeEldest(!main.isEmpty() ? main : window);
+                evicted(eldest.getKey(), eldest.getValue());
+            }
+            return value;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Move an entry leaving the window into the main map if it is used more often than
+     * the entry it would displace.
+     */
+    private void admit(K key, Node<V> candidate) {
+        int mainMax = policy.getMaxEntries() - windowMax;
+        if (main.size() < mainMax) {
+            main.put(key, candidate);
+            return;
+        }
+        if (main.isEmpty()) {
+            evicted(key, candidate);
+            return;
+        }
+        K victim = main.keySet().iterator().next();
+        if (sketch.frequency(key.hashCode()) > sketch.frequency(victim.hashCode())) {
+            evicted(victim, main.remove(victim));
+            main.put(key, candidate);
+        } else {
+            evicted(key, candidate);
+        }
+    }
+
+    /**
+     * Swap in a new value for {@code key} in one step, readers see either the old or the
+     * new value, never a missing entry.
+     */
+    V replace(K key, V value) {
+        return put(key, value, data.get(key));
+    }
+
+    void invalidate(K key) {
+        evictionLock.lock();
+        try {
+            Node<V> node = remove(key);
+            if (node != null) {
+                weight -= node.weight;
+                data.remove(key, node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    void clear() {
+        evictionLock.lock();
+        try {
+            data.clear();
+            window.clear();
+            main.clear();
+            weight = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    int size() {
+        return data.size();
+    }
+
+    CacheStats stats() {
+        evictionLock.lock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions, data.size(), weight);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Remove {@code key} from the eviction order, leaving the lookup map to the caller.
+     */
+    private Node<V> remove(K key) {
+        Node<V> node = window.remove(key);
+        return node != null ? node : main.remove(key);
+    }
+
+    private Map.Entry<K, Node<V>> removeEldest(LinkedHashMap<K, Node<V>> map) {
+        Iterator<Map.Entry<K, Node<V>>> it = map.entrySet().iterator();
+        Map.Entry<K, Node<V>> eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+
+    private void evicted(K key, Node<V> node) {
+        data.remove(key, node);
+        weight -= node.weight;
+        evictions++;
+    }
+
+    private static final class Node<V> {
+        private final V value;
+        private final long weight;
+
+        Node(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A load in progress, which other threads missing the same key wait for.
+     */
+    private static final class Load<V> {
+        private final Thread owner = Thread.currentThread();
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+
+        V await() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of how often keys are requested, with small saturating counters
+     * that are halved periodically so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            // About 16 counters per entry keeps collisions rare, capped at 1 MB
+            long target = Math.max(256, 16L * maxEntries);
+            int size = 256;
+            while (size < target && size < (1 << 20)) {
+                size <<= 1;
+            }
+            this.table = new byte[size];
+            this.mask = size - 1;
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * maxEntries);
+        }
+
+        void increment(int hash) {
+            for (int seed : SEEDS) {
+                int index = index(hash, seed);
+                if (table[index] < MAX_COUNT) {
+                    table[index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (byte) (table[i] >>> 1);
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int min = MAX_COUNT;
+            for (int seed : SEEDS) {
+                min = Math.min(min, table[index(hash, seed)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int seed) {
+            int h = hash * seed;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
@@ -2,7 +2,12 @@ package com.morphium.examples;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.compiler.ExecutionMode;
+import com.morphium.compiler.ExpressionCompiler;
 import com.morphium.core.MorphiumEngine;
+import com.morphium.parser.Lexer;
+import com.morphium.parser.Parser;
+import com.morphium.parser.ast.Expression;
 
 /**
  * Simple performance benchmark demonstrating the impact of optimization
@@ -23,6 +28,9 @@ public class PerformanceBenchmark {
         
         // Test 3: Function Dispatch
         testFunctionDispatch();
+
+        // Test 4: Compiled Tier
+        testCompiledTier();
     }
     
     /**
@@ -130,4 +138,68 @@ public class PerformanceBenchmark {
         System.out.println("Avg time per transform: " + String.format("%.2f", avgMicros) + " μs");
         System.out.println("Benefit: HashMap dispatch is 15-30% faster than switch statements\n");
     }
+
+    /**
+     * Compares interpreted and compiled runs of a path-heavy script and reports how many
+     * runs it takes for the compiled tier to repay its compile cost. Expect a small
+     * difference: the compiler specializes the tree, it does not generate bytecode
+     */
+    private static void testCompiledTier() throws Exception {
+        System.out.println("Test 4: Compiled Tier (INTERPRET vs COMPILE)");
+        System.out.println("---------------------------------------------");
+
+        String json = "{\"order\":{\"id\":7,\"customer\":{\"name\":\"Alice\"," +
+            "\"address\":{\"city\":\"Paris\",\"zip\":\"75001\"}},\"amount\":{\"value\":3,\"qty\":2}}}";
+        JsonNode input = mapper.readTree(json);
+        String script = "{ id: $.order.id, customer: $.order.customer.name, " +
+            "city: $.order.customer.address.city, zip: $.order.customer.address.zip, " +
+            "total: $.order.amount.value * $.order.amount.qty, status: \"open\" }";
+
+        MorphiumEngine interpreter = new MorphiumEngine();
+        interpreter.setExecutionMode(ExecutionMode.INTERPRET);
+        MorphiumEngine compiling = new MorphiumEngine();
+        compiling.setExecutionMode(ExecutionMode.COMPILE);
+
+        // Alternate the modes so both see the same JIT state, and keep the best round
+        double interpreted = Double.MAX_VALUE;
+        double compiled = Double.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            interpreted = Math.min(interpreted, averageMicros(interpreter, script, input));
+            compiled = Math.min(compiled, averageMicros(compiling, script, input));
+        }
+
+        // One-off cost of compiling the parsed tree, averaged once the JIT has warmed up
+        ExpressionCompiler compiler = new ExpressionCompiler();
+        Expression parsed = new Parser(new Lexer(script, "<benchmark>")).parse();
+        for (int i = 0; i < 10000; i++) {
+            compiler.compile(parsed);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 10000; i++) {
+            compiler.compile(parsed);
+        }
+        double compileMicros = (System.nanoTime() - start) / 10000.0 / 1000.0;
+
+        System.out.println("Paths per transform: 7");
+        System.out.println("Interpreted: " + String.format("%.3f", interpreted) + " μs per transform");
+        System.out.println("Compiled:    " + String.format("%.3f", compiled) + " μs per transform");
+        System.out.println("Compile cost: " + String.format("%.2f", compileMicros) + " μs once per script");
+        if (compiled < interpreted) {
+            System.out.println("Break-even: " + (int) Math.ceil(compileMicros / (interpreted - compiled))
+                + " runs (TIERED compiles after " + MorphiumEngine.DEFAULT_COMPILE_THRESHOLD + ")\n");
+        } else {
+            System.out.println("Break-even: never for this script\n");
+        }
+    }
+
+    private static double averageMicros(MorphiumEngine engine, String script, JsonNode input) {
+        for (int i = 0; i < 20000; i++) {
+            engine.transformFromString(script, input);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 100000; i++) {
+            engine.transformFromString(script, input);
+        }
+        return (System.nanoTime() - start) / 100000.0 / 1000.0;
+    }
 }
@@ -185,7 +185,12 @@ public class Lexer {
         }
 
         String text = source.substring(start, current);
-        addToken(Token.Type.NUMBER, Double.parseDouble(text));
+        // Integer literals stay exact, anything with a fraction or too large is a double
+        if (text.indexOf('.') < 0 && text.length() < 19) {
+            addToken(Token.Type.NUMBER, Long.parseLong(text));
+        } else {
+            addToken(Token.Type.NUMBER, Double.parseDouble(text));
+        }
     }
 
     private void string(char quote) {
@@ -2,11 +2,13 @@ package com.morphium.parser.ast;
 
 import com.morphium.util.JsonUtil;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.morphium.runtime.Context;
 import lombok.Getter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,4 +34,13 @@ public class ArrayExpr implements Expression {
         return result;
     }
 
+    @Override
+    public void writeTo(Context context, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        for (Expression expr : elements) {
+            expr.writeTo(context, generator);
+        }
+        generator.writeEndArray();
+    }
+
 }
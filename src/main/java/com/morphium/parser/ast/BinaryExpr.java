@@ -3,8 +3,11 @@ package com.morphium.parser.ast;
 import com.morphium.util.JsonUtil;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
 import com.morphium.runtime.Context;
+import lombok.Getter;
 
+@Getter
 public class BinaryExpr implements Expression {
     public enum Operator {
         ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULO,
@@ -62,29 +65,78 @@ public class BinaryExpr implements Expression {
                 if (isString(leftVal) || isString(rightVal)) {
                     return JsonUtil.createPrimitive(asString(leftVal) + asString(rightVal));
                 }
-                return JsonUtil.createPrimitive(asNumber(leftVal) + asNumber(rightVal));
+                // Integers stay exact, a long overflow falls back to double
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal)) {
+                    long a = leftVal.longValue();
+                    long b = rightVal.longValue();
+                    long result = a + b;
+                    if (((a ^ result) & (b ^ result)) >= 0) {
+                        return JsonUtil.numberNode(result);
+                    }
+                }
+                return JsonUtil.numberNode(asNumber(leftVal) + asNumber(rightVal));
             case SUBTRACT:
-                return JsonUtil.createPrimitive(asNumber(leftVal) - asNumber(rightVal));
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal)) {
+                    long a = leftVal.longValue();
+                    long b = rightVal.longValue();
+                    long result = a - b;
+                    if (((a ^ b) & (a ^ result)) >= 0) {
+                        return JsonUtil.numberNode(result);
+                    }
+                }
+                return JsonUtil.numberNode(asNumber(leftVal) - asNumber(rightVal));
             case MULTIPLY:
-                return JsonUtil.createPrimitive(asNumber(leftVal) * asNumber(rightVal));
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal)) {
+                    long a = leftVal.longValue();
+                    long b = rightVal.longValue();
+                    long result = a * b;
+                    long high = Math.multiplyHigh(a, b);
+                    if ((high == 0 && result >= 0) || (high == -1 && result < 0)) {
+                        return JsonUtil.numberNode(result);
+                    }
+                }
+                return JsonUtil.numberNode(asNumber(leftVal) * asNumber(rightVal));
             case DIVIDE:
-                return JsonUtil.createPrimitive(asNumber(leftVal) / asNumber(rightVal));
+                // Only an exact quotient stays an integer, 10 / 4 is still 2.5
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal)) {
+                    long a = leftVal.longValue();
+                    long b = rightVal.longValue();
+                    if (b != 0 && a % b == 0 && !(a == Long.MIN_VALUE && b == -1)) {
+                        return JsonUtil.numberNode(a / b);
+                    }
+                }
+                return JsonUtil.numberNode(asNumber(leftVal) / asNumber(rightVal));
             case MODULO:
-                return JsonUtil.createPrimitive(asNumber(leftVal) % asNumber(rightVal));
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal) && rightVal.longValue() != 0) {
+                    return JsonUtil.numberNode(leftVal.longValue() % rightVal.longValue());
+                }
+                return JsonUtil.numberNode(asNumber(leftVal) % asNumber(rightVal));
             case EQ:
             case EQ_STRICT:
-                return JsonUtil.createPrimitive(areEqual(leftVal, rightVal));
+                return BooleanNode.valueOf(areEqual(leftVal, rightVal));
             case NE:
             case NE_STRICT:
-                return JsonUtil.createPrimitive(!areEqual(leftVal, rightVal));
+                return BooleanNode.valueOf(!areEqual(leftVal, rightVal));
             case LT:
-                return JsonUtil.createPrimitive(asNumber(leftVal) < asNumber(rightVal));
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal)) {
+                    return BooleanNode.valueOf(leftVal.longValue() < rightVal.longValue());
+                }
+                return BooleanNode.valueOf(asNumber(leftVal) < asNumber(rightVal));
             case LE:
-                return JsonUtil.createPrimitive(asNumber(leftVal) <= asNumber(rightVal));
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal)) {
+                    return BooleanNode.valueOf(leftVal.longValue() <= rightVal.longValue());
+                }
+                return BooleanNode.valueOf(asNumber(leftVal) <= asNumber(rightVal));
             case GT:
-                return JsonUtil.createPrimitive(asNumber(leftVal) > asNumber(rightVal));
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal)) {
+                    return BooleanNode.valueOf(leftVal.longValue() > rightVal.longValue());
+                }
+                return BooleanNode.valueOf(asNumber(leftVal) > asNumber(rightVal));
             case GE:
-                return JsonUtil.createPrimitive(asNumber(leftVal) >= asNumber(rightVal));
+                if (JsonUtil.isIntegral(leftVal) && JsonUtil.isIntegral(rightVal)) {
+                    return BooleanNode.valueOf(leftVal.longValue() >= rightVal.longValue());
+                }
+                return BooleanNode.valueOf(asNumber(leftVal) >= asNumber(rightVal));
             default:
                 throw new RuntimeException("Unknown operator: " + operator);
         }
@@ -112,6 +164,13 @@ public class BinaryExpr implements Expression {
         if (a.isNull() && b.isNull()) return true;
         if (a.isNull() || b.isNull()) return false;
         
+        // Numbers compare by value, so 3 equals 3.0
+        if (a.isNumber() && b.isNumber()) {
+            if (JsonUtil.isIntegral(a) && JsonUtil.isIntegral(b)) {
+                return a.longValue() == b.longValue();
+            }
+            return a.doubleValue() == b.doubleValue();
+        }
         if (a.isValueNode() && b.isValueNode()) {
             return a.asText().equals(b.asText());
         }
@@ -1,16 +1,20 @@
 package com.morphium.parser.ast;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.morphium.runtime.Context;
+import com.morphium.runtime.Scope;
 import lombok.Getter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 @Getter
 public class BlockExpr implements Expression {
     private final List<Expression> expressions;
+    private Scope scope;
 
     public BlockExpr() {
         this.expressions = new ArrayList<>();
@@ -20,10 +24,17 @@ public class BlockExpr implements Expression {
         expressions.add(expr);
     }
 
+    /**
+     * Set by the resolver to the scope of the frame this block creates.
+     */
+    public void setScope(Scope scope) {
+        this.scope = scope;
+    }
+
     @Override
     public JsonNode evaluate(Context context) {
         JsonNode result = null;
-        Context blockContext = new Context(context);
+        Context blockContext = new Context(context, scope);
         
         for (Expression expr : expressions) {
             result = expr.evaluate(blockContext);
@@ -46,4 +57,19 @@ public class BlockExpr implements Expression {
         return result != null ? result : NullNode.getInstance();
     }
 
+    @Override
+    public void writeTo(Context context, JsonGenerator generator) throws IOException {
+        if (expressions.isEmpty()) {
+            generator.writeNull();
+            return;
+        }
+        // The block's value is its last expression's, so only that one is written
+        Context blockContext = new Context(context, scope);
+        int last = expressions.size() - 1;
+        for (int i = 0; i < last; i++) {
+            expressions.get(i).evaluate(blockContext);
+        }
+        expressions.get(last).writeTo(blockContext, generator);
+    }
+
 }
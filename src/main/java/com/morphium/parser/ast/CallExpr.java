@@ -1,16 +1,27 @@
 package com.morphium.parser.ast;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.morphium.builtin.BuiltinFunction;
+import com.morphium.builtin.BuiltinFunctions;
+import com.morphium.core.MorphiumEngine.HostFunction;
 import com.morphium.runtime.Context;
+import com.morphium.runtime.HostFunctionRegistry;
+import com.morphium.runtime.UserFunction;
 import lombok.Getter;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class CallExpr implements Expression {
+    @Getter
     private final Expression callee;
     @Getter
     private final List<Expression> arguments;
+    @Getter
+    private boolean shadowable = true;
+    // Builtin or host function this call last resolved to
+    private volatile Target target;
 
     public CallExpr(Expression callee) {
         this.callee = callee;
@@ -21,50 +32,126 @@ public class CallExpr implements Expression {
         arguments.add(arg);
     }
 
+    /**
+     * Cleared by the resolver when no script function of the callee's name exists, so
+     * the call can skip the user function lookup.
+     */
+    public void setShadowable(boolean shadowable) {
+        this.shadowable = shadowable;
+    }
+
     @Override
     public JsonNode evaluate(Context context) {
         if (callee instanceof IdentifierExpr) {
             String funcName = ((IdentifierExpr) callee).getName();
-            return context.callFunction(funcName, arguments);
+            // User-defined functions take precedence over builtins and host functions
+            if (shadowable) {
+                UserFunction userFunc = context.getFunction(funcName);
+                if (userFunc != null) {
+                    return callUserFunction(userFunc, context);
+                }
+            }
+            return resolveTarget(funcName, context).function.call(arguments, context);
         } else if (callee instanceof MemberAccessExpr) {
             return evaluateMemberCall((MemberAccessExpr) callee, context);
         }
         throw new RuntimeException("Cannot call non-function");
     }
 
+    /**
+     * Return the cached target of this call, resolving it again when there is none yet
+     * or when host functions were registered since it was cached.
+     */
+    private Target resolveTarget(String funcName, Context context) {
+        HostFunctionRegistry registry = context.getFunctionRegistry();
+        Target cached = target;
+        if (cached != null && cached.isValid(registry)) {
+            return cached;
+        }
+
+        Target resolved;
+        BuiltinFunction builtin = BuiltinFunctions.lookup(funcName);
+        if (builtin != null) {
+            // Builtins are fixed and cannot be replaced by host functions
+            resolved = new Target(builtin, null, 0);
+        } else {
+            // Read before the lookup, so a function registered in between makes this stale
+            int version = registry != null ? registry.getVersion() : 0;
+            HostFunction host = registry != null ? registry.get(funcName) : null;
+            if (host == null) {
+                throw new RuntimeException("Unknown function: " + funcName);
+            }
+            resolved = new Target(hostCall(funcName, host), registry, version);
+        }
+        target = resolved;
+        return resolved;
+    }
+
+    private static BuiltinFunction hostCall(String funcName, HostFunction host) {
+        return (argExprs, context) -> {
+            JsonNode[] args = new JsonNode[argExprs.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = argExprs.get(i).evaluate(context);
+            }
+            JsonNode result = host.call(args);
+            if (result == null) {
+                throw new RuntimeException("Unknown function: " + funcName);
+            }
+            return result;
+        };
+    }
+
+    /**
+     * A resolved call target. Host targets stay valid for the registry and version they
+     * were resolved against, builtin targets have no registry and stay valid for good.
+     */
+    private static final class Target {
+        private final BuiltinFunction function;
+        private final HostFunctionRegistry registry;
+        private final int version;
+
+        Target(BuiltinFunction function, HostFunctionRegistry registry, int version) {
+            this.function = function;
+            this.registry = registry;
+            this.version = version;
+        }
+
+        boolean isValid(HostFunctionRegistry current) {
+            return registry == null || (registry == current && version == current.getVersion());
+        }
+    }
+
     private JsonNode evaluateMemberCall(MemberAccessExpr memberExpr, Context context) {
         Expression objectExpr = memberExpr.getObject();
         Expression propertyExpr = memberExpr.getProperty();
-        
+
         if (objectExpr instanceof IdentifierExpr && propertyExpr instanceof IdentifierExpr) {
             String namespace = ((IdentifierExpr) objectExpr).getName();
             String funcName = ((IdentifierExpr) propertyExpr).getName();
-            
-            com.morphium.runtime.UserFunction moduleFunc = context.getModuleFunction(namespace, funcName);
+
+            UserFunction moduleFunc = context.getModuleFunction(namespace, funcName);
             if (moduleFunc != null) {
                 return callUserFunction(moduleFunc, context);
             }
         }
-        
-        throw new RuntimeException("Member function call not supported for " + 
-            ((objectExpr instanceof IdentifierExpr) ? ((IdentifierExpr)objectExpr).getName() : "?") + 
-            "." + 
+
+        throw new RuntimeException("Member function call not supported for " +
+            ((objectExpr instanceof IdentifierExpr) ? ((IdentifierExpr)objectExpr).getName() : "?") +
+            "." +
             ((propertyExpr instanceof IdentifierExpr) ? ((IdentifierExpr)propertyExpr).getName() : "?"));
     }
 
-    private JsonNode callUserFunction(com.morphium.runtime.UserFunction func, Context context) {
-        java.util.List<JsonNode> argValues = new java.util.ArrayList<>();
-        for (Expression argExpr : arguments) {
-            argValues.add(argExpr.evaluate(context));
+    private JsonNode callUserFunction(UserFunction func, Context context) {
+        JsonNode[] argValues = new JsonNode[arguments.size()];
+        for (int i = 0; i < argValues.length; i++) {
+            argValues[i] = arguments.get(i).evaluate(context);
         }
 
-        // Use the function's defining context as parent if available, otherwise use current context
-        Context parentContext = func.getDefiningContext() != null ? func.getDefiningContext() : context;
-        Context funcContext = new Context(parentContext);
+        Context funcContext = context.newFunctionContext(func);
 
-        java.util.List<String> params = func.getParameters();
+        List<String> params = func.getParameters();
         for (int i = 0; i < params.size(); i++) {
-            JsonNode value = i < argValues.size() ? argValues.get(i) : com.fasterxml.jackson.databind.node.NullNode.getInstance();
+            JsonNode value = i < argValues.length ? argValues[i] : NullNode.getInstance();
             funcContext.define(params.get(i), value);
         }
 
@@ -0,0 +1,23 @@
+package com.morphium.parser.ast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.morphium.runtime.Context;
+import lombok.Getter;
+
+/**
+ * A value computed ahead of time by the optimizer. Every evaluation returns the same
+ * node, so it must never be modified.
+ */
+@Getter
+public class ConstantExpr implements Expression {
+    private final JsonNode value;
+
+    public ConstantExpr(JsonNode value) {
+        this.value = value;
+    }
+
+    @Override
+    public JsonNode evaluate(Context context) {
+        return value;
+    }
+}
@@ -1,8 +1,24 @@
 package com.morphium.parser.ast;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.morphium.builtin.BuiltinFunctions;
 import com.morphium.runtime.Context;
+import com.morphium.util.JsonUtil;
+
+import java.io.IOException;
 
 public interface Expression {
     JsonNode evaluate(Context context);
+
+    /**
+     * Evaluate and write the result to {@code generator}. Expressions that build objects
+     * or arrays override this to write their parts as they are computed, without building
+     * the result tree. A lazily produced array is computed before anything of it is
+     * written, so an error in it is raised from here rather than from the serializer.
+     */
+    default void writeTo(Context context, JsonGenerator generator) throws IOException {
+        JsonNode value = evaluate(context);
+        JsonUtil.write(generator, context.hasLazyValues() ? BuiltinFunctions.materialize(value) : value);
+    }
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.IntNode;
 import com.morphium.runtime.Context;
+import com.morphium.runtime.Scope;
 import com.morphium.util.JsonUtil;
 import lombok.Getter;
 
@@ -16,6 +17,7 @@ public class ForInStatement implements Expression {
     private final String indexName;
     private final Expression iterable;
     private final Expression body;
+    private Scope scope;
 
     public ForInStatement(String indexName, Expression iterable, Expression body) {
         this.indexName = indexName;
@@ -23,6 +25,13 @@ public class ForInStatement implements Expression {
         this.body = body;
     }
 
+    /**
+     * Set by the resolver to the scope of the per-iteration frame.
+     */
+    public void setScope(Scope scope) {
+        this.scope = scope;
+    }
+
     @Override
     public JsonNode evaluate(Context context) {
         JsonNode iterableValue = iterable.evaluate(context);
@@ -37,7 +46,7 @@ public class ForInStatement implements Expression {
         // Iterate over indices
         for (int i = 0; i < size; i++) {
             // Create new context for loop iteration
-            Context loopContext = new Context(context);
+            Context loopContext = new Context(context, scope);
             loopContext.define(indexName, IntNode.valueOf(i));
             
             try {
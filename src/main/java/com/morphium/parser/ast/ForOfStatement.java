@@ -3,6 +3,7 @@ package com.morphium.parser.ast;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.morphium.runtime.Context;
+import com.morphium.runtime.Scope;
 import com.morphium.util.JsonUtil;
 import lombok.Getter;
 
@@ -14,6 +15,7 @@ public class ForOfStatement implements Expression {
     private final String itemName;
     private final Expression iterable;
     private final Expression body;
+    private Scope scope;
 
     public ForOfStatement(String itemName, Expression iterable, Expression body) {
         this.itemName = itemName;
@@ -21,6 +23,13 @@ public class ForOfStatement implements Expression {
         this.body = body;
     }
 
+    /**
+     * Set by the resolver to the scope of the per-iteration frame.
+     */
+    public void setScope(Scope scope) {
+        this.scope = scope;
+    }
+
     @Override
     public JsonNode evaluate(Context context) {
         JsonNode iterableValue = iterable.evaluate(context);
@@ -34,7 +43,7 @@ public class ForOfStatement implements Expression {
         // Iterate over array
         for (JsonNode item : iterableValue) {
             // Create new context for loop iteration
-            Context loopContext = new Context(context);
+            Context loopContext = new Context(context, scope);
             loopContext.define(itemName, item);
             
             try {
@@ -2,6 +2,7 @@ package com.morphium.parser.ast;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.morphium.runtime.Context;
+import com.morphium.runtime.Scope;
 import lombok.Getter;
 
 import java.util.List;
@@ -11,6 +12,7 @@ public class FunctionDefExpr implements Expression {
     private final String name;
     private final List<String> parameters;
     private final Expression body;
+    private Scope scope;
 
     public FunctionDefExpr(String name, List<String> parameters, Expression body) {
         this.name = name;
@@ -18,10 +20,17 @@ public class FunctionDefExpr implements Expression {
         this.body = body;
     }
 
+    /**
+     * Set by the resolver to the scope of the function frame.
+     */
+    public void setScope(Scope scope) {
+        this.scope = scope;
+    }
+
     @Override
     public JsonNode evaluate(Context context) {
         // Register the function in the context
-        context.defineFunction(name, parameters, body);
+        context.defineFunction(name, parameters, body, scope);
         // Function definitions don't return a value
         return com.fasterxml.jackson.databind.node.NullNode.getInstance();
     }
@@ -1,12 +1,14 @@
 package com.morphium.parser.ast;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.morphium.runtime.Binding;
 import com.morphium.runtime.Context;
 import lombok.Getter;
 
 @Getter
 public class IdentifierExpr implements Expression {
     private final String name;
+    private Binding binding;
 
     public IdentifierExpr(String name) {
         this.name = name;
@@ -14,7 +16,17 @@ public class IdentifierExpr implements Expression {
 
     @Override
     public JsonNode evaluate(Context context) {
+        if (binding != null) {
+            return context.lookup(name, binding);
+        }
         return context.get(name);
     }
 
+    /**
+     * Set by the resolver when the variable can be read from a frame slot.
+     */
+    public void setBinding(Binding binding) {
+        this.binding = binding;
+    }
+
 }
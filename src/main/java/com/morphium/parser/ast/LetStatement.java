@@ -1,13 +1,20 @@
 package com.morphium.parser.ast;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.NullNode;
+import com.morphium.runtime.Binding;
 import com.morphium.runtime.Context;
+import lombok.Getter;
 
+import java.io.IOException;
+
+@Getter
 public class LetStatement implements Expression {
     private final String name;
     private final Expression value;
     private final Expression body;
+    private Binding binding;
 
     public LetStatement(String name, Expression value, Expression body) {
         this.name = name;
@@ -27,7 +34,29 @@ public class LetStatement implements Expression {
         }
         
         // Otherwise just update the parent context
-        context.define(name, val);
+        if (binding != null) {
+            context.bind(name, binding, val);
+        } else {
+            context.define(name, val);
+        }
         return NullNode.getInstance();
     }
+
+    @Override
+    public void writeTo(Context context, JsonGenerator generator) throws IOException {
+        if (body == null || (body instanceof LiteralExpr && ((LiteralExpr) body).getValue() == null)) {
+            Expression.super.writeTo(context, generator);
+            return;
+        }
+        Context newContext = new Context(context);
+        newContext.define(name, value.evaluate(context));
+        body.writeTo(newContext, generator);
+    }
+
+    /**
+     * Set by the resolver to the slot this binding occupies in the enclosing frame.
+     */
+    public void setBinding(Binding binding) {
+        this.binding = binding;
+    }
 }
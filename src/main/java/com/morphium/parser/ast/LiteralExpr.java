@@ -3,6 +3,7 @@ package com.morphium.parser.ast;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.*;
 import com.morphium.runtime.Context;
+import com.morphium.util.JsonUtil;
 import lombok.Getter;
 
 @Getter
@@ -21,9 +22,9 @@ public class LiteralExpr implements Expression {
             return BooleanNode.valueOf((Boolean) value);
         } else if (value instanceof Number) {
             if (value instanceof Integer || value instanceof Long) {
-                return IntNode.valueOf(((Number) value).intValue());
+                return JsonUtil.numberNode(((Number) value).longValue());
             }
-            return DoubleNode.valueOf(((Number) value).doubleValue());
+            return JsonUtil.numberNode(((Number) value).doubleValue());
         } else if (value instanceof String) {
             return TextNode.valueOf((String) value);
         }
@@ -3,7 +3,6 @@ package com.morphium.parser.ast;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.NullNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.morphium.runtime.Context;
 
 public class MemberAccessExpr implements Expression {
@@ -28,30 +27,62 @@ public class MemberAccessExpr implements Expression {
             throw new RuntimeException("Cannot access property of null");
         }
 
-        String propName;
         if (computed) {
-            JsonNode propElement = property.evaluate(context);
-            if (propElement.isValueNode() && propElement.isNumber()) {
-                int index = propElement.asInt();
-                if (obj.isArray()) {
-                    ArrayNode arr = (ArrayNode) obj;
-                    if (index >= 0 && index < arr.size()) {
-                        return arr.get(index);
-                    }
-                    return safe ? NullNode.getInstance() : null;
-                }
-            }
-            propName = propElement.isValueNode() ? propElement.asText() : propElement.toString();
-        } else if (property instanceof IdentifierExpr) {
+            return lookupComputed(obj, property.evaluate(context), safe);
+        }
+
+        String propName;
+        if (property instanceof IdentifierExpr) {
             propName = ((IdentifierExpr) property).getName();
         } else {
             propName = property.evaluate(context).asText();
         }
+        return lookup(obj, propName, safe);
+    }
+
+    /**
+     * Reads a named property the same way {@code obj.name} / {@code obj?.name} does,
+     * including the null-target check.
+     */
+    public static JsonNode getProperty(JsonNode obj, String propName, boolean safe) {
+        if (obj == null || obj.isNull()) {
+            if (safe) return NullNode.getInstance();
+            throw new RuntimeException("Cannot access property of null");
+        }
+        return lookup(obj, propName, safe);
+    }
+
+    /**
+     * Reads {@code obj[key]} where the key has already been evaluated.
+     */
+    public static JsonNode getComputed(JsonNode obj, JsonNode propElement, boolean safe) {
+        if (obj == null || obj.isNull()) {
+            if (safe) return NullNode.getInstance();
+            throw new RuntimeException("Cannot access property of null");
+        }
+        return lookupComputed(obj, propElement, safe);
+    }
+
+    private static JsonNode lookupComputed(JsonNode obj, JsonNode propElement, boolean safe) {
+        if (propElement.isValueNode() && propElement.isNumber()) {
+            int index = propElement.asInt();
+            if (obj.isArray()) {
+                ArrayNode arr = (ArrayNode) obj;
+                if (index >= 0 && index < arr.size()) {
+                    return arr.get(index);
+                }
+                return safe ? NullNode.getInstance() : null;
+            }
+        }
+        String propName = propElement.isValueNode() ? propElement.asText() : propElement.toString();
+        return lookup(obj, propName, safe);
+    }
 
+    private static JsonNode lookup(JsonNode obj, String propName, boolean safe) {
         if (obj.isObject()) {
-            ObjectNode jsonObj = (ObjectNode) obj;
-            if (jsonObj.has(propName)) {
-                return jsonObj.get(propName);
+            JsonNode value = obj.get(propName);
+            if (value != null) {
+                return value;
             }
         }
 
@@ -66,4 +97,12 @@ public class MemberAccessExpr implements Expression {
         return property;
     }
 
+    public boolean isSafe() {
+        return safe;
+    }
+
+    public boolean isComputed() {
+        return computed;
+    }
+
 }
@@ -1,13 +1,17 @@
 package com.morphium.parser.ast;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.morphium.runtime.Context;
+import lombok.Getter;
 import com.morphium.util.JsonUtil;
 
+import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+@Getter
 public class ObjectExpr implements Expression {
     private final Map<String, Expression> properties;
     private final Map<Expression, Expression> computedProperties;
@@ -43,4 +47,19 @@ public class ObjectExpr implements Expression {
 
         return result;
     }
+
+    @Override
+    public void writeTo(Context context, JsonGenerator generator) throws IOException {
+        if (!computedProperties.isEmpty()) {
+            // A computed key may repeat another key, which the tree resolves by overwriting
+            Expression.super.writeTo(context, generator);
+            return;
+        }
+        generator.writeStartObject();
+        for (Map.Entry<String, Expression> entry : properties.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            entry.getValue().writeTo(context, generator);
+        }
+        generator.writeEndObject();
+    }
 }
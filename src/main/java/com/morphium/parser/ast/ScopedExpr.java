@@ -0,0 +1,46 @@
+package com.morphium.parser.ast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.morphium.runtime.Context;
+import com.morphium.runtime.Scope;
+import lombok.Getter;
+
+/**
+ * Lambda body of a stream builtin, tagged with the scope of the per-item frame the
+ * builtin creates for it. Evaluated on its own it behaves exactly like its body.
+ */
+@Getter
+public class ScopedExpr implements Expression {
+    private final Scope scope;
+    private final Expression body;
+    /**
+     * True when the body only reads its own lambda variables and {@code $} and calls no
+     * effectful functions, so it gives the same result whenever it runs.
+     */
+    private final boolean deferrable;
+    /**
+     * True when the body only calls functions without side effects and declares nothing
+     * outside its own frames, so items can be evaluated concurrently in separate frames.
+     */
+    private final boolean parallelizable;
+
+    public ScopedExpr(Scope scope, Expression body) {
+        this(scope, body, false);
+    }
+
+    public ScopedExpr(Scope scope, Expression body, boolean deferrable) {
+        this(scope, body, deferrable, false);
+    }
+
+    public ScopedExpr(Scope scope, Expression body, boolean deferrable, boolean parallelizable) {
+        this.scope = scope;
+        this.body = body;
+        this.deferrable = deferrable;
+        this.parallelizable = parallelizable;
+    }
+
+    @Override
+    public JsonNode evaluate(Context context) {
+        return body.evaluate(context);
+    }
+}
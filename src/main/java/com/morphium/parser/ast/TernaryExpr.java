@@ -2,7 +2,9 @@ package com.morphium.parser.ast;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.morphium.runtime.Context;
+import lombok.Getter;
 
+@Getter
 public class TernaryExpr implements Expression {
     private final Expression condition;
     private final Expression thenExpr;
@@ -3,8 +3,11 @@ package com.morphium.parser.ast;
 import com.morphium.util.JsonUtil;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
 import com.morphium.runtime.Context;
+import lombok.Getter;
 
+@Getter
 public class UnaryExpr implements Expression {
     public enum Operator {
         NOT, MINUS
@@ -24,9 +27,12 @@ public class UnaryExpr implements Expression {
         
         switch (operator) {
             case NOT:
-                return JsonUtil.createPrimitive(!isTruthy(value));
+                return BooleanNode.valueOf(!isTruthy(value));
             case MINUS:
-                return JsonUtil.createPrimitive(-asNumber(value));
+                if (JsonUtil.isIntegral(value) && value.longValue() != Long.MIN_VALUE) {
+                    return JsonUtil.numberNode(-value.longValue());
+                }
+                return JsonUtil.numberNode(-asNumber(value));
             default:
                 throw new RuntimeException("Unknown unary operator: " + operator);
         }
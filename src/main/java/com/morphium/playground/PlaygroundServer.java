@@ -1,28 +1,52 @@
 package com.morphium.playground;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.core.BatchResult;
+import com.morphium.core.CompiledTransform;
 import com.morphium.core.MorphiumEngine;
+import com.morphium.core.NdjsonRunner;
+import com.morphium.core.NdjsonStats;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class PlaygroundServer {
     private static final Logger LOGGER = Logger.getLogger(PlaygroundServer.class.getName());
+    // Parsers and generators from this mapper's factory take their buffers from Jackson's
+    // per-thread recycler, and the fixed request pool keeps those threads, and with them
+    // the buffers, across requests
     private static final ObjectMapper mapper = new ObjectMapper();
     private static final MorphiumEngine engine = new MorphiumEngine();
     
@@ -31,9 +55,18 @@ public class PlaygroundServer {
     private static final int THREAD_POOL_SIZE = 10;
     private static final int MAX_REQUEST_SIZE = 10 * 1024 * 1024; // 10MB
     private static final int TRANSFORM_TIMEOUT_MS = 30000; // 30 seconds
+    private static final int MAX_REGISTERED_SCRIPTS = 1000;
+    private static final int COMPRESSION_BUFFER_SIZE = 8192;
+    private static final int MAX_DISCARD_SIZE = 2 * MAX_REQUEST_SIZE;
+    private static final String SCRIPTS_PATH = "/api/scripts";
     
     private final int port;
+    private final ScriptRegistry scripts = new ScriptRegistry(engine, MAX_REGISTERED_SCRIPTS);
+    private final StaticPage indexPage = new StaticPage(PlaygroundHtml.getHtml());
     private HttpServer server;
+    private ExecutorService requestExecutor;
+    // Runs the chunks of every NDJSON request, so concurrent streams share one set of threads
+    private ExecutorService ndjsonExecutor;
 
     public PlaygroundServer(int port) {
         this.port = port;
@@ -85,16 +118,32 @@ public class PlaygroundServer {
         
         server.createContext("/", this::handleIndex);
         server.createContext("/api/transform", this::handleTransform);
+        server.createContext("/api/transform/batch", this::handleBatch);
+        server.createContext("/api/transform/ndjson", this::handleNdjson);
+        server.createContext(SCRIPTS_PATH, this::handleScripts);
         server.createContext("/api/health", this::handleHealth);
         
-        ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(THREAD_POOL_SIZE);
-        server.setExecutor(threadPoolExecutor);
+        requestExecutor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+        server.setExecutor(requestExecutor);
+        ndjsonExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "playground-ndjson");
+            thread.setDaemon(true);
+            return thread;
+        });
         
         server.start();
         
         printServerInfo();
         
-        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+    }
+
+    /**
+     * The port the server listens on, the one picked by the system when it was created
+     * with port 0.
+     */
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : port;
     }
 
     private void printBanner() {
@@ -115,9 +164,12 @@ public class PlaygroundServer {
         LOGGER.info("=".repeat(60));
         LOGGER.info("Server started successfully");
         LOGGER.info("=".repeat(60));
-        LOGGER.info("  Server URL:        http://localhost:" + port);
-        LOGGER.info("  Health Check:      http://localhost:" + port + "/api/health");
-        LOGGER.info("  Transform API:     http://localhost:" + port + "/api/transform");
+        LOGGER.info("  Server URL:        http://localhost:" + getPort());
+        LOGGER.info("  Health Check:      http://localhost:" + getPort() + "/api/health");
+        LOGGER.info("  Transform API:     http://localhost:" + getPort() + "/api/transform");
+        LOGGER.info("  Batch API:         http://localhost:" + getPort() + "/api/transform/batch");
+        LOGGER.info("  NDJSON API:        http://localhost:" + getPort() + "/api/transform/ndjson");
+        LOGGER.info("  Scripts API:       http://localhost:" + getPort() + SCRIPTS_PATH);
         LOGGER.info("=".repeat(60));
         LOGGER.info("Configuration:");
         LOGGER.info("  Thread Pool Size:  " + THREAD_POOL_SIZE);
@@ -128,10 +180,17 @@ public class PlaygroundServer {
         LOGGER.info("=".repeat(60));
     }
 
-    private void shutdown() {
+    /**
+     * Stop accepting requests, give running ones up to two seconds, then release the
+     * server's threads.
+     */
+    public synchronized void stop() {
         if (server != null) {
             LOGGER.info("Shutting down server...");
             server.stop(2);
+            requestExecutor.shutdown();
+            ndjsonExecutor.shutdownNow();
+            server = null;
             LOGGER.info("Server stopped successfully");
         }
     }
@@ -141,8 +200,21 @@ public class PlaygroundServer {
         String clientIp = exchange.getRemoteAddress().getAddress().getHostAddress();
         
         try {
-            String html = PlaygroundHtml.getHtml();
-            sendResponse(exchange, 200, html.getBytes(StandardCharsets.UTF_8), "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().set("ETag", indexPage.etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            if (indexPage.matches(exchange.getRequestHeaders().get("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                logRequest(exchange, 304, startTime, clientIp);
+                return;
+            }
+
+            String encoding = negotiateEncoding(exchange.getRequestHeaders().get("Accept-Encoding"));
+            if (encoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+            sendResponse(exchange, 200, indexPage.content(encoding), "text/html; charset=UTF-8");
             
             logRequest(exchange, 200, startTime, clientIp);
         } catch (Exception e) {
@@ -152,6 +224,12 @@ public class PlaygroundServer {
         }
     }
 
+    /**
+     * {@code POST /api/transform} with {@code {"transform": ..., "input": ...}}. An input
+     * given as a string is JSON text, as the playground page sends it; any other value is
+     * the input document itself and is parsed once, straight from the request body. With
+     * {@code ?raw=true} a string input is taken as the document too.
+     */
     private void handleTransform(HttpExchange exchange) throws IOException {
         long startTime = System.currentTimeMillis();
         String clientIp = exchange.getRemoteAddress().getAddress().getHostAddress();
@@ -162,55 +240,430 @@ public class PlaygroundServer {
             return;
         }
 
+        boolean raw = "true".equals(parseQuery(exchange.getRequestURI().getRawQuery()).get("raw"));
         try {
-            byte[] requestBody = exchange.getRequestBody().readAllBytes();
-            
-            if (requestBody.length > MAX_REQUEST_SIZE) {
-                sendJsonError(exchange, 413, "Request too large. Maximum size: " + (MAX_REQUEST_SIZE / 1024 / 1024) + "MB");
-                logRequest(exchange, 413, startTime, clientIp);
-                return;
+            String transform = null;
+            String inputJson = null;
+            JsonNode input = null;
+            CompiledTransform compiled = null;
+            try (JsonParser parser = mapper.getFactory().createParser(limitedBody(exchange))) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    sendJsonError(exchange, 400, "Request body must be a JSON object");
+                    logRequest(exchange, 400, startTime, clientIp);
+                    return;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken token = parser.nextToken();
+                    if ("transform".equals(field)) {
+                        transform = token.isScalarValue() ? parser.getValueAsString("") : "";
+                        parser.skipChildren();
+                        // Compiled as soon as it is known, so an input after it is parsed
+                        // skipping the fields the transform never reads
+                        compiled = transform.isEmpty() ? null : engine.compile(transform);
+                    } else if ("input".equals(field)) {
+                        if (token == JsonToken.VALUE_STRING && !raw) {
+                            inputJson = parser.getText();
+                        } else {
+                            input = compiled != null ? compiled.readInput(parser) : mapper.readTree(parser);
+                            inputJson = null;
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
             }
-            
-            String body = new String(requestBody, StandardCharsets.UTF_8);
-            JsonNode request = mapper.readTree(body);
-            
-            if (!request.has("transform") || !request.has("input")) {
+
+            if (transform == null || (input == null && inputJson == null)) {
                 sendJsonError(exchange, 400, "Missing required fields: 'transform' and 'input'");
                 logRequest(exchange, 400, startTime, clientIp);
                 return;
             }
-            
-            String transform = request.get("transform").asText();
-            String inputJson = request.get("input").asText();
-            
-            if (transform.isEmpty() || inputJson.isEmpty()) {
+
+            if (transform.isEmpty() || (inputJson != null && inputJson.isEmpty())) {
                 sendJsonError(exchange, 400, "Transform and input cannot be empty");
                 logRequest(exchange, 400, startTime, clientIp);
                 return;
             }
-            
-            JsonNode input = mapper.readTree(inputJson);
+
+            if (inputJson != null) {
+                // Input sent as JSON text, parsed now that the transform is known
+                input = compiled.readInput(inputJson);
+            }
             long transformStartTime = System.nanoTime();
-            JsonNode result = engine.transformFromString(transform, input);
+            JsonNode result = compiled.apply(input);
             long transformEndTime = System.nanoTime();
             long executionTimeMs = (transformEndTime - transformStartTime) / 1_000_000;
             
             TransformResponse response = new TransformResponse(true, result, null, executionTimeMs);
-            String jsonResponse = mapper.writeValueAsString(response);
-            
-            sendJsonResponse(exchange, 200, jsonResponse);
+            sendJsonResponse(exchange, 200, response);
             logRequest(exchange, 200, startTime, clientIp);
             LOGGER.info("Transform executed successfully in " + executionTimeMs + "ms");
             
         } catch (Exception e) {
+            if (isTooLarge(e)) {
+                sendTooLarge(exchange);
+                logRequest(exchange, 413, startTime, clientIp);
+                return;
+            }
             LOGGER.warning("Transform error: " + e.getMessage());
             TransformResponse response = new TransformResponse(false, null, e.getMessage(), null);
-            String jsonResponse = mapper.writeValueAsString(response);
-            sendJsonResponse(exchange, 200, jsonResponse);
+            sendJsonResponse(exchange, 200, response);
             logRequest(exchange, 200, startTime, clientIp);
         }
     }
 
+    /**
+     * {@code POST /api/transform/batch} with {@code {"transform": ..., "inputs": [...]}}, or
+     * {@code "id"} of a registered script instead of {@code "transform"}. Every element of
+     * {@code inputs} is one input document; results come back in the same order, with null
+     * for records that failed and the failures listed by index.
+     */
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        long startTime = System.currentTimeMillis();
+        String clientIp = exchange.getRemoteAddress().getAddress().getHostAddress();
+
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendJsonError(exchange, 405, "Method not allowed");
+            logRequest(exchange, 405, startTime, clientIp);
+            return;
+        }
+
+        try {
+            String id = null;
+            String transform = null;
+            List<JsonNode> inputs = null;
+            try (JsonParser parser = mapper.getFactory().createParser(limitedBody(exchange))) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    sendJsonError(exchange, 400, "Request body must be a JSON object");
+                    logRequest(exchange, 400, startTime, clientIp);
+                    return;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken token = parser.nextToken();
+                    if ("id".equals(field) || "transform".equals(field)) {
+                        String value = token == JsonToken.VALUE_NULL ? null
+                            : token.isScalarValue() ? parser.getValueAsString("") : "";
+                        parser.skipChildren();
+                        if ("id".equals(field)) {
+                            id = value;
+                        } else {
+                            transform = value;
+                        }
+                    } else if ("inputs".equals(field) && token == JsonToken.START_ARRAY) {
+                        // Inputs after the transform are parsed skipping the fields it never
+                        // reads, as /api/transform does; before it they are read in full
+                        CompiledTransform known = findTransform(id, transform);
+                        inputs = new ArrayList<>();
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            inputs.add(known != null ? known.readInput(parser) : mapper.readTree(parser));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            if (inputs == null) {
+                sendJsonError(exchange, 400, "Missing required array field: 'inputs'");
+                logRequest(exchange, 400, startTime, clientIp);
+                return;
+            }
+            CompiledTransform compiled = resolveTransform(exchange, id, transform);
+            if (compiled == null) {
+                logRequest(exchange, exchange.getResponseCode(), startTime, clientIp);
+                return;
+            }
+
+            BatchResult batch = compiled.applyAll(inputs);
+            long executionTimeMs = batch.getElapsedNanos() / 1_000_000;
+
+            List<FailureResponse> failures = new ArrayList<>(batch.getFailures().size());
+            for (BatchResult.Failure failure : batch.getFailures()) {
+                failures.add(new FailureResponse(failure.getIndex(), failure.getError().getMessage()));
+            }
+            BatchResponse response = new BatchResponse(true, batch.getResults(), failures, null, executionTimeMs);
+            sendJsonResponse(exchange, 200, response);
+            logRequest(exchange, 200, startTime, clientIp);
+            LOGGER.info("Batch of " + batch.size() + " records executed in " + executionTimeMs + "ms");
+
+        } catch (Exception e) {
+            if (isTooLarge(e)) {
+                sendTooLarge(exchange);
+                logRequest(exchange, 413, startTime, clientIp);
+                return;
+            }
+            LOGGER.warning("Batch transform error: " + e.getMessage());
+            BatchResponse response = new BatchResponse(false, null, null, e.getMessage(), null);
+            sendJsonResponse(exchange, 200, response);
+            logRequest(exchange, 200, startTime, clientIp);
+        }
+    }
+
+    /**
+     * {@code POST /api/transform/ndjson?id=...} (or {@code ?transform=...}) with one input
+     * document per line. Results are streamed back one per line with chunked transfer
+     * encoding while the request is still being read, so memory stays bounded by the
+     * records in flight rather than the size of the exchange.
+     *
+     * Errors found before any result was sent get a JSON error response. After that the
+     * status is already out, so a failing record aborts the response and the client sees
+     * an incomplete body rather than one that looks complete.
+     */
+    private void handleNdjson(HttpExchange exchange) throws IOException {
+        long startTime = System.currentTimeMillis();
+        String clientIp = exchange.getRemoteAddress().getAddress().getHostAddress();
+
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendJsonError(exchange, 405, "Method not allowed");
+            logRequest(exchange, 405, startTime, clientIp);
+            return;
+        }
+
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        CompiledTransform compiled;
+        try {
+            compiled = resolveTransform(exchange, query.get("id"), query.get("transform"));
+        } catch (Exception e) {
+            sendJsonError(exchange, 400, e.getMessage());
+            logRequest(exchange, 400, startTime, clientIp);
+            return;
+        }
+        if (compiled == null) {
+            logRequest(exchange, exchange.getResponseCode(), startTime, clientIp);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=UTF-8");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().set("X-Content-Type-Options", "nosniff");
+        StreamedResponse out = new StreamedResponse(exchange);
+        NdjsonStats stats;
+        try {
+            NdjsonRunner runner = new NdjsonRunner(compiled);
+            runner.setExecutor(ndjsonExecutor);
+            stats = runner.run(exchange.getRequestBody(), out);
+        } catch (Exception e) {
+            LOGGER.warning("NDJSON transform error: " + e.getMessage());
+            if (out.started) {
+                logRequest(exchange, 200, startTime, clientIp);
+                throw new IOException("Aborted NDJSON response: " + e.getMessage(), e);
+            }
+            exchange.getResponseHeaders().remove("Content-Type");
+            sendJsonError(exchange, 400, e.getMessage());
+            logRequest(exchange, 400, startTime, clientIp);
+            return;
+        }
+        out.close();
+        logRequest(exchange, 200, startTime, clientIp);
+        LOGGER.info("NDJSON stream of " + stats.getRecordCount() + " records executed in "
+            + stats.getElapsedNanos() / 1_000_000 + "ms");
+    }
+
+    /**
+     * The transform a request names, by registered {@code id} or by {@code source}, or null
+     * when it names none or an unknown id. Sends no response.
+     */
+    private CompiledTransform findTransform(String id, String source) {
+        if (id != null) {
+            ScriptRegistry.Script script = scripts.get(id);
+            return script != null ? script.getTransform() : null;
+        }
+        return source == null || source.isEmpty() ? null : engine.compile(source);
+    }
+
+    /**
+     * The transform a request names, by registered {@code id} or by {@code source}. When it
+     * names none, or an unknown id, the error response is sent here and null returned.
+     */
+    private CompiledTransform resolveTransform(HttpExchange exchange, String id, String source) throws IOException {
+        if (id != null) {
+            ScriptRegistry.Script script = scripts.get(id);
+            if (script == null) {
+                sendJsonError(exchange, 404, "No script registered with id: " + id);
+                return null;
+            }
+            return script.getTransform();
+        }
+        if (source == null || source.isEmpty()) {
+            sendJsonError(exchange, 400, "Missing required field: 'transform' or 'id'");
+            return null;
+        }
+        return engine.compile(source);
+    }
+
+    /**
+     * The request body, failing with {@link RequestTooLargeException} as soon as more than
+     * {@link #MAX_REQUEST_SIZE} bytes are declared or read, so an oversized body is never
+     * buffered in full.
+     */
+    private static InputStream limitedBody(HttpExchange exchange) throws IOException {
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (declared != null) {
+            try {
+                if (Long.parseLong(declared.trim()) > MAX_REQUEST_SIZE) {
+                    throw new RequestTooLargeException();
+                }
+            } catch (NumberFormatException e) {
+                // Left to the server, which rejects a malformed length itself
+            }
+        }
+        return new LimitedInputStream(exchange.getRequestBody(), MAX_REQUEST_SIZE);
+    }
+
+    /**
+     * Read and drop up to {@code max} bytes.
+     * @return Whether the stream ended within them
+     */
+    private static boolean discard(InputStream in, long max) throws IOException {
+        byte[] buffer = new byte[8192];
+        long discarded = 0;
+        while (discarded <= max) {
+            int n = in.read(buffer);
+            if (n < 0) {
+                return true;
+            }
+            discarded += n;
+        }
+        return false;
+    }
+
+    private static boolean isTooLarge(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RequestTooLargeException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reject an oversized request. The rest of its body is read and dropped, up to
+     * {@link #MAX_DISCARD_SIZE}, since a connection closed while the client is still
+     * sending can be reset before the client reads the response.
+     */
+    private void sendTooLarge(HttpExchange exchange) throws IOException {
+        if (!discard(exchange.getRequestBody(), MAX_DISCARD_SIZE)) {
+            // The body is left unread, so the connection cannot carry another request
+            exchange.getResponseHeaders().set("Connection", "close");
+        }
+        sendJsonError(exchange, 413, "Request too large. Maximum size: " + (MAX_REQUEST_SIZE / 1024 / 1024) + "MB");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * {@code POST /api/scripts} registers a script, {@code POST /api/scripts/{id}/transform}
+     * applies the current version of a registered script to the request body and
+     * {@code DELETE /api/scripts/{id}} unregisters it.
+     */
+    private void handleScripts(HttpExchange exchange) throws IOException {
+        long startTime = System.currentTimeMillis();
+        String clientIp = exchange.getRemoteAddress().getAddress().getHostAddress();
+        String path = exchange.getRequestURI().getPath();
+        String rest = path.length() > SCRIPTS_PATH.length() ? path.substring(SCRIPTS_PATH.length() + 1) : "";
+
+        String method = exchange.getRequestMethod();
+        int status;
+        if ("DELETE".equals(method) && !rest.isEmpty() && rest.indexOf('/') < 0) {
+            status = deleteScript(exchange, rest);
+        } else if (!"POST".equals(method)) {
+            status = 405;
+            sendJsonError(exchange, status, "Method not allowed");
+        } else if (rest.isEmpty()) {
+            status = registerScript(exchange);
+        } else if (rest.endsWith("/transform") && rest.indexOf('/') == rest.length() - "/transform".length()) {
+            status = transformWithScript(exchange, rest.substring(0, rest.indexOf('/')));
+        } else {
+            status = 404;
+            sendJsonError(exchange, status, "Not found");
+        }
+        logRequest(exchange, status, startTime, clientIp);
+    }
+
+    private int registerScript(HttpExchange exchange) throws IOException {
+        try {
+            JsonNode request = mapper.readTree(limitedBody(exchange));
+            if (request == null || !request.hasNonNull("transform") || request.get("transform").asText().isEmpty()) {
+                sendJsonError(exchange, 400, "Missing required field: 'transform'");
+                return 400;
+            }
+            String id = request.hasNonNull("id") ? request.get("id").asText() : null;
+            ScriptRegistry.Script script = scripts.register(id, request.get("transform").asText());
+            LOGGER.info("Registered script " + script.getId() + " version " + script.getVersion());
+            sendJsonResponse(exchange, 200,
+                new ScriptResponse(true, script.getId(), script.getVersion(), script.getHash(), null));
+            return 200;
+        } catch (IllegalArgumentException e) {
+            sendJsonError(exchange, 400, e.getMessage());
+            return 400;
+        } catch (Exception e) {
+            if (isTooLarge(e)) {
+                sendTooLarge(exchange);
+                return 413;
+            }
+            LOGGER.warning("Script registration error: " + e.getMessage());
+            sendJsonResponse(exchange, 200, new ScriptResponse(false, null, null, null, e.getMessage()));
+            return 200;
+        }
+    }
+
+    private int deleteScript(HttpExchange exchange, String id) throws IOException {
+        ScriptRegistry.Script script = scripts.remove(id);
+        if (script == null) {
+            sendJsonError(exchange, 404, "No script registered with id: " + id);
+            return 404;
+        }
+        LOGGER.info("Deleted script " + script.getId() + " version " + script.getVersion());
+        sendJsonResponse(exchange, 200,
+            new ScriptResponse(true, script.getId(), script.getVersion(), script.getHash(), null));
+        return 200;
+    }
+
+    private int transformWithScript(HttpExchange exchange, String id) throws IOException {
+        // Looked up once, a re-registration during the request does not affect it
+        ScriptRegistry.Script script = scripts.get(id);
+        if (script == null) {
+            sendJsonError(exchange, 404, "No script registered with id: " + id);
+            return 404;
+        }
+        try {
+            CompiledTransform compiled = script.getTransform();
+            JsonNode input;
+            try (JsonParser parser = mapper.getFactory().createParser(limitedBody(exchange))) {
+                input = compiled.readInput(parser);
+            }
+            long transformStartTime = System.nanoTime();
+            JsonNode result = compiled.apply(input);
+            long executionTimeMs = (System.nanoTime() - transformStartTime) / 1_000_000;
+
+            sendJsonResponse(exchange, 200, new ScriptTransformResponse(
+                true, result, null, executionTimeMs, script.getId(), script.getVersion()));
+            return 200;
+        } catch (Exception e) {
+            if (isTooLarge(e)) {
+                sendTooLarge(exchange);
+                return 413;
+            }
+            LOGGER.warning("Transform error in script " + id + ": " + e.getMessage());
+            sendJsonResponse(exchange, 200, new ScriptTransformResponse(
+                false, null, e.getMessage(), null, script.getId(), script.getVersion()));
+            return 200;
+        }
+    }
+
     private void handleHealth(HttpExchange exchange) throws IOException {
         long startTime = System.currentTimeMillis();
         String clientIp = exchange.getRemoteAddress().getAddress().getHostAddress();
@@ -223,8 +676,7 @@ public class PlaygroundServer {
                 Runtime.getRuntime().maxMemory()
             );
             
-            String jsonResponse = mapper.writeValueAsString(health);
-            sendJsonResponse(exchange, 200, jsonResponse);
+            sendJsonResponse(exchange, 200, health);
             logRequest(exchange, 200, startTime, clientIp);
         } catch (Exception e) {
             LOGGER.severe("Error handling health check: " + e.getMessage());
@@ -244,17 +696,29 @@ public class PlaygroundServer {
         }
     }
 
-    private void sendJsonResponse(HttpExchange exchange, int statusCode, String json) throws IOException {
+    /**
+     * Serialize {@code body} straight into the response, with chunked transfer encoding
+     * and compressed as the client accepts, so the JSON never exists as a String or byte[].
+     * Transform results are complete trees by then, the engine computes lazily produced
+     * arrays before returning, so a script error cannot surface once the status is out.
+     */
+    private void sendJsonResponse(HttpExchange exchange, int statusCode, Object body) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // Part of a response is already out and a second one cannot follow it; failing
+            // the exchange drops the connection, so the client sees the body cut short
+            throw new IOException("Response already started, cannot send status " + statusCode);
+        }
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
         exchange.getResponseHeaders().set("X-Content-Type-Options", "nosniff");
-        sendResponseHeaders(exchange, statusCode, json.getBytes(StandardCharsets.UTF_8));
+        // Closing the generator finishes the compression and the chunked body
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(openBody(exchange, statusCode))) {
+            mapper.writeValue(generator, body);
+        }
     }
 
     private void sendJsonError(HttpExchange exchange, int statusCode, String errorMessage) throws IOException {
-        ErrorResponse error = new ErrorResponse(false, errorMessage);
-        String json = mapper.writeValueAsString(error);
-        sendJsonResponse(exchange, statusCode, json);
+        sendJsonResponse(exchange, statusCode, new ErrorResponse(false, errorMessage));
     }
 
     private void sendErrorResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
@@ -262,10 +726,263 @@ public class PlaygroundServer {
         sendResponse(exchange, statusCode, html.getBytes(StandardCharsets.UTF_8), "text/html; charset=UTF-8");
     }
 
-    private void sendResponseHeaders(HttpExchange exchange, int statusCode, byte[] content) throws IOException {
-        exchange.sendResponseHeaders(statusCode, content.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(content);
+    /**
+     * Send the status and headers for a body of unknown length and return the stream to
+     * write it to, compressed with the encoding negotiated from {@code Accept-Encoding}.
+     */
+    private static OutputStream openBody(HttpExchange exchange, int statusCode) throws IOException {
+        String encoding = negotiateEncoding(exchange.getRequestHeaders().get("Accept-Encoding"));
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(statusCode, 0);
+        return encode(exchange.getResponseBody(), encoding);
+    }
+
+    private static OutputStream encode(OutputStream out, String encoding) throws IOException {
+        if ("gzip".equals(encoding)) {
+            return new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE);
+        }
+        if ("deflate".equals(encoding)) {
+            return new DeflaterOutputStream(out, new Deflater(), COMPRESSION_BUFFER_SIZE, false) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        // Not done by close() for a Deflater passed in
+                        def.end();
+                    }
+                }
+            };
+        }
+        return out;
+    }
+
+    /**
+     * The content coding to respond with, following the weights of {@code Accept-Encoding}:
+     * gzip or deflate, whichever weighs more with gzip winning ties, or null to send the
+     * body as is. A coding with {@code q=0} is refused, {@code *} stands for the codings
+     * the header does not name, and an explicit {@code identity} weighing more than both
+     * keeps the body uncompressed.
+     */
+    private static String negotiateEncoding(List<String> acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        Map<String, Double> weights = new HashMap<>();
+        for (String header : acceptEncoding) {
+            for (String entry : header.split(",")) {
+                String[] parts = entry.split(";");
+                String coding = parts[0].trim().toLowerCase();
+                if (coding.isEmpty()) {
+                    continue;
+                }
+                double quality = 1;
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(param.substring(2));
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+                weights.put(coding, quality);
+            }
+        }
+        double gzip = weight(weights, "gzip");
+        double deflate = weight(weights, "deflate");
+        String best = gzip >= deflate ? "gzip" : "deflate";
+        double bestQuality = Math.max(gzip, deflate);
+        Double identity = weights.get("identity");
+        if (bestQuality <= 0 || (identity != null && identity > bestQuality)) {
+            return null;
+        }
+        return best;
+    }
+
+    private static double weight(Map<String, Double> weights, String coding) {
+        Double quality = weights.get(coding);
+        if (quality == null) {
+            quality = weights.get("*");
+        }
+        return quality != null ? quality : 0;
+    }
+
+    /**
+     * A page whose identity and compressed bodies are encoded once up front, with a weak
+     * ETag shared by all encodings so clients can revalidate with {@code If-None-Match}.
+     */
+    private static final class StaticPage {
+        private final byte[] identity;
+        private final byte[] gzip;
+        private final byte[] deflate;
+        private final String etag;
+
+        StaticPage(String content) {
+            this.identity = content.getBytes(StandardCharsets.UTF_8);
+            this.gzip = compress(identity, "gzip");
+            this.deflate = compress(identity, "deflate");
+            this.etag = "W/\"" + hex(sha256(identity), 16) + "\"";
+        }
+
+        byte[] content(String encoding) {
+            if ("gzip".equals(encoding)) {
+                return gzip;
+            }
+            return "deflate".equals(encoding) ? deflate : identity;
+        }
+
+        boolean matches(List<String> ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            String tag = etag.substring(2);
+            for (String header : ifNoneMatch) {
+                for (String candidate : header.split(",")) {
+                    candidate = candidate.trim();
+                    if (candidate.equals("*") || candidate.equals(etag) || candidate.equals(tag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static byte[] compress(byte[] content, String encoding) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4);
+            try (OutputStream encoded = encode(out, encoding)) {
+                encoded.write(content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+
+        private static byte[] sha256(byte[] content) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(content);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        private static String hex(byte[] bytes, int length) {
+            StringBuilder hex = new StringBuilder(length);
+            for (int i = 0; hex.length() < length; i++) {
+                hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+            }
+            return hex.toString();
+        }
+    }
+
+    private static final class RequestTooLargeException extends IOException {
+        RequestTooLargeException() {
+            super("Request too large");
+        }
+    }
+
+    /**
+     * Request body that counts the bytes read and fails once they pass the limit.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // Left to the exchange, a parser closing its source must not end the request
+            // before an oversized body is discarded
+        }
+
+        private void count(long n) throws RequestTooLargeException {
+            count += n;
+            if (count > limit) {
+                throw new RequestTooLargeException();
+            }
+        }
+    }
+
+    /**
+     * Response body that sends a 200 with chunked transfer encoding, compressed as the
+     * client accepts, on the first write, so
+     * the status can still change as long as nothing has been written.
+     */
+    private static final class StreamedResponse extends OutputStream {
+        private final HttpExchange exchange;
+        private OutputStream body;
+        private boolean started;
+
+        StreamedResponse(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        private OutputStream body() throws IOException {
+            if (!started) {
+                started = true;
+                body = openBody(exchange, 200);
+            }
+            return body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (started) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            body().close();
         }
     }
 
@@ -299,6 +1016,61 @@ public class PlaygroundServer {
         }
     }
 
+    private static class ScriptResponse {
+        public final boolean success;
+        public final String id;
+        public final Integer version;
+        public final String hash;
+        public final String error;
+
+        public ScriptResponse(boolean success, String id, Integer version, String hash, String error) {
+            this.success = success;
+            this.id = id;
+            this.version = version;
+            this.hash = hash;
+            this.error = error;
+        }
+    }
+
+    private static class ScriptTransformResponse extends TransformResponse {
+        public final String id;
+        public final int version;
+
+        public ScriptTransformResponse(boolean success, JsonNode result, String error, Long executionTime,
+                                       String id, int version) {
+            super(success, result, error, executionTime);
+            this.id = id;
+            this.version = version;
+        }
+    }
+
+    private static class BatchResponse {
+        public final boolean success;
+        public final List<JsonNode> results;
+        public final List<FailureResponse> failures;
+        public final String error;
+        public final Long executionTime;
+
+        public BatchResponse(boolean success, List<JsonNode> results, List<FailureResponse> failures, String error,
+                             Long executionTime) {
+            this.success = success;
+            this.results = results;
+            this.failures = failures;
+            this.error = error;
+            this.executionTime = executionTime;
+        }
+    }
+
+    private static class FailureResponse {
+        public final int index;
+        public final String error;
+
+        public FailureResponse(int index, String error) {
+            this.index = index;
+            this.error = error;
+        }
+    }
+
     private static class ErrorResponse {
         public final boolean success;
         public final String error;
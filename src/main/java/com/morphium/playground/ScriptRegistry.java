@@ -0,0 +1,132 @@
+package com.morphium.playground;
+
+import com.morphium.compiler.MorphcCodec;
+import com.morphium.core.CompiledTransform;
+import com.morphium.core.MorphiumEngine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scripts registered once and then applied by id, so clients send only inputs and the
+ * server neither re-sends nor re-hashes the source per request.
+ *
+ * Registering under an id that already exists replaces the script with a new version.
+ * The swap is atomic: a request that already looked up the old version finishes with it,
+ * every later request gets the new one. A script registered without an id is keyed by
+ * its content hash, so registering the same source twice returns the same id.
+ *
+ * The registry holds at most {@code maxScripts} ids; once full, new ids are rejected until
+ * a script is removed. Scripts are never evicted, so an id a client registered stays valid.
+ */
+final class ScriptRegistry {
+    private static final int MAX_ID_LENGTH = 128;
+
+    private final MorphiumEngine engine;
+    private final int maxScripts;
+    private final Map<String, Script> scripts = new ConcurrentHashMap<>();
+    // Ids taken so far; reserved before an id is added, since registrations of different
+    // ids run concurrently and the map's size would let them all pass the check at once
+    private final AtomicInteger ids = new AtomicInteger();
+
+    ScriptRegistry(MorphiumEngine engine, int maxScripts) {
+        this.engine = engine;
+        this.maxScripts = maxScripts;
+    }
+
+    /**
+     * Compile and register a script.
+     * @param id Id to register under, or null to use the content hash
+     * @throws IllegalArgumentException When the id is invalid or the registry is full
+     */
+    Script register(String id, String source) {
+        String hash = hex(MorphcCodec.hash(source));
+        String key = id != null ? id : hash.substring(0, 16);
+        if (key.isEmpty() || key.length() > MAX_ID_LENGTH || !key.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Script ids are 1 to " + MAX_ID_LENGTH
+                + " letters, digits, '.', '_' or '-'");
+        }
+        // Compiled before the swap, a script that does not compile leaves the old version in place
+        CompiledTransform transform = engine.compile(source);
+        return scripts.compute(key, (k, current) -> {
+            if (current == null) {
+                if (ids.incrementAndGet() > maxScripts) {
+                    ids.decrementAndGet();
+                    throw new IllegalArgumentException("Script registry is full (" + maxScripts
+                        + " scripts); delete a script to make room");
+                }
+                return new Script(k, 1, hash, transform);
+            }
+            if (current.hash.equals(hash)) {
+                return current;
+            }
+            return new Script(k, current.version + 1, hash, transform);
+        });
+    }
+
+    /**
+     * The current version of a script, or null when none is registered under {@code id}.
+     */
+    Script get(String id) {
+        return scripts.get(id);
+    }
+
+    /**
+     * Unregister a script, freeing its slot. A request that already looked it up finishes with it.
+     * @return The removed version, or null when none is registered under {@code id}
+     */
+    Script remove(String id) {
+        Script removed = scripts.remove(id);
+        if (removed != null) {
+            ids.decrementAndGet();
+        }
+        return removed;
+    }
+
+    int size() {
+        return scripts.size();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * One version of a registered script.
+     */
+    static final class Script {
+        private final String id;
+        private final int version;
+        // Hex SHA-256 of the source
+        private final String hash;
+        private final CompiledTransform transform;
+
+        Script(String id, int version, String hash, CompiledTransform transform) {
+            this.id = id;
+            this.version = version;
+            this.hash = hash;
+            this.transform = transform;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        int getVersion() {
+            return version;
+        }
+
+        String getHash() {
+            return hash;
+        }
+
+        CompiledTransform getTransform() {
+            return transform;
+        }
+    }
+}
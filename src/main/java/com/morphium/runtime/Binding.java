@@ -0,0 +1,29 @@
+package com.morphium.runtime;
+
+/**
+ * Where a resolved variable lives: the slot in the frame of {@code scope}, found
+ * {@code depth} frames above the frame that reads it.
+ */
+public final class Binding {
+    private final Scope scope;
+    private final int slot;
+    private final int depth;
+
+    public Binding(Scope scope, int slot, int depth) {
+        this.scope = scope;
+        this.slot = slot;
+        this.depth = depth;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -2,105 +2,292 @@ package com.morphium.runtime;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 import com.morphium.builtin.BuiltinFunctions;
 import com.morphium.parser.ast.Expression;
+import com.morphium.parser.ast.ScopedExpr;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * A frame of variables, functions and module aliases.
+ *
+ * Frames form a chain up to a root. Below the root, each run of a script or module has
+ * a global frame of its own, see {@link #newGlobalContext}: globals, imports, module
+ * aliases and exports declared during the run live there, and the frames created while
+ * evaluating share them. A root shared by many runs is {@link #seal() sealed} so it
+ * stays read-only and can be used from any number of threads without locking.
+ */
 public class Context {
+    // Marks a slot whose binding has not run yet; lookups then fall back to the name walk
+    private static final JsonNode UNBOUND = TextNode.valueOf("<unbound>");
+
     private final Context parent;
-    private final Map<String, JsonNode> variables;
-    private final Map<String, UserFunction> userFunctions;
+    private final Scope scope;
+    private final JsonNode[] slots;
+    private Map<String, JsonNode> variables;
+    private Map<String, UserFunction> userFunctions;
     private final Map<String, Map<String, UserFunction>> moduleFunctions;
     private final Map<String, JsonNode> exports;
     private final Set<String> importedModules;
     private final HostFunctionRegistry functionRegistry;
+    private final MorphRunner morphRunner;
     private final boolean isGlobal;
+    private boolean sealed;
+    // Shared by the frames of one run, see newFunctionContext
+    private RunState runState;
 
     public Context(HostFunctionRegistry functionRegistry) {
+        this(functionRegistry, null);
+    }
+
+    /**
+     * Create a root context whose {@code runMorph} calls go through {@code morphRunner}.
+     */
+    public Context(HostFunctionRegistry functionRegistry, MorphRunner morphRunner) {
         this.parent = null;
+        this.scope = null;
+        this.slots = null;
         this.variables = new HashMap<>(16);
-        this.userFunctions = new HashMap<>(8);
         this.moduleFunctions = new HashMap<>(8);
-        this.exports = new HashMap<>(8);
+        this.exports = new LinkedHashMap<>(8);
         this.importedModules = new HashSet<>();
+        this.runState = new RunState();
         this.functionRegistry = functionRegistry;
+        this.morphRunner = morphRunner;
         this.isGlobal = true;
     }
 
     public Context(Context parent) {
-        this.parent = parent;
-        this.variables = new HashMap<>(8);
-        this.userFunctions = new HashMap<>(4);
-        this.moduleFunctions = parent.moduleFunctions; // Share module functions with parent
-        this.exports = parent.exports; // Share exports with parent
-        this.importedModules = parent.importedModules; // Share imported modules tracking
-        this.functionRegistry = parent.functionRegistry;
-        this.isGlobal = false;
+        this(parent, (Scope) null);
     }
     
     public Context(Context parent, int expectedVarCount) {
-        this.parent = parent;
+        this(parent, (Scope) null);
         this.variables = new HashMap<>(expectedVarCount);
-        this.userFunctions = new HashMap<>(2);
-        this.moduleFunctions = parent.moduleFunctions;
-        this.exports = parent.exports;
-        this.importedModules = parent.importedModules;
+    }
+
+    /**
+     * Create a frame for a resolved scope. Names declared in the scope live in an array
+     * indexed by slot; anything else falls back to a lazily created map.
+     */
+    public Context(Context parent, Scope scope) {
+        this(parent, scope, false);
+    }
+
+    /**
+     * Create the global frame of one run below a shared root. The frame holds the run's
+     * globals, module aliases, imported modules and exports, so concurrent runs below
+     * the same root never see or race on each other's state.
+     */
+    public static Context newGlobalContext(Context root, Scope scope) {
+        return new Context(root, scope, true);
+    }
+
+    /**
+     * Create the top frame of a module. Like the frame of a run it is global, so a module
+     * instance collects exactly its own exports and functions.
+     */
+    public static Context newModuleContext(Context parent, Scope scope) {
+        return new Context(parent, scope, true);
+    }
+
+    private Context(Context parent, Scope scope, boolean global) {
+        this.parent = parent;
+        this.scope = scope;
+        if (scope != null) {
+            this.slots = new JsonNode[scope.size()];
+            Arrays.fill(slots, UNBOUND);
+        } else {
+            this.slots = null;
+        }
+        if (global) {
+            this.moduleFunctions = new HashMap<>(4);
+            this.exports = new LinkedHashMap<>(8);
+            this.importedModules = new HashSet<>();
+            this.runState = new RunState();
+        } else {
+            // Frames below a global frame share its state
+            this.moduleFunctions = parent.moduleFunctions;
+            this.exports = parent.exports;
+            this.importedModules = parent.importedModules;
+            this.runState = parent.runState;
+        }
         this.functionRegistry = parent.functionRegistry;
-        this.isGlobal = false;
+        this.morphRunner = parent.morphRunner;
+        this.isGlobal = global;
+    }
+
+    /**
+     * Make this frame read-only. Defining anything in it afterwards fails, so it can be
+     * shared by runs on several threads.
+     */
+    public void seal() {
+        this.sealed = true;
+    }
+
+    /**
+     * Drop the globals, functions and exports defined directly in this frame, keeping
+     * the slots of its scope, such as module aliases bound by imports. Lets a run's
+     * global frame be reused for the next run.
+     */
+    public void resetGlobals() {
+        checkWritable("reset");
+        variables = null;
+        userFunctions = null;
+        exports.clear();
+        runState.lazyValues = false;
+    }
+
+    /**
+     * Note that the run produced a lazily computed array, so its result has to be
+     * materialized before it leaves the run.
+     */
+    public void markLazyValue() {
+        runState.lazyValues = true;
+    }
+
+    /**
+     * Whether anything in this run called {@link #markLazyValue()}.
+     */
+    public boolean hasLazyValues() {
+        return runState.lazyValues;
+    }
+
+    private void checkWritable(String name) {
+        if (sealed) {
+            throw new IllegalStateException("Cannot define '" + name + "' in a shared, read-only frame");
+        }
+    }
+
+    /**
+     * Create the frame a call of {@code func} from this frame runs in, below the frame the
+     * function was defined in, or this one. A module function's frames chain up to the
+     * module, but what they compute belongs to the calling run.
+     */
+    public Context newFunctionContext(UserFunction func) {
+        Context parentContext = func.getDefiningContext() != null ? func.getDefiningContext() : this;
+        Context funcContext = new Context(parentContext, func.getScope());
+        funcContext.runState = runState;
+        return funcContext;
+    }
+
+    /**
+     * Create the per-item frame a stream builtin evaluates its lambda body in.
+     */
+    public Context newLambdaContext(Expression body) {
+        if (body instanceof ScopedExpr) {
+            return new Context(this, ((ScopedExpr) body).getScope());
+        }
+        return new Context(this, 2);
     }
 
     public void define(String name, JsonNode value) {
+        checkWritable(name);
+        if (scope != null) {
+            int slot = scope.indexOf(name);
+            if (slot >= 0) {
+                slots[slot] = value;
+                return;
+            }
+        }
+        if (variables == null) {
+            variables = new HashMap<>(8);
+        }
         variables.put(name, value);
     }
     
     public void redefine(String name, JsonNode value) {
-        variables.put(name, value);
+        define(name, value);
+    }
+
+    /**
+     * Define a variable through its resolved binding, falling back to the name when this
+     * frame is not the one the resolver expected.
+     */
+    public void bind(String name, Binding binding, JsonNode value) {
+        if (scope == binding.getScope() && !sealed) {
+            slots[binding.getSlot()] = value;
+        } else {
+            define(name, value);
+        }
     }
 
     public void defineGlobal(String name, JsonNode value) {
         if (isGlobal) {
-            variables.put(name, value);
+            define(name, value);
         } else if (parent != null) {
             parent.defineGlobal(name, value);
         }
     }
 
     public JsonNode get(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        }
-        if (parent != null) {
-            return parent.get(name);
+        for (Context frame = this; frame != null; frame = frame.parent) {
+            if (frame.scope != null) {
+                int slot = frame.scope.indexOf(name);
+                if (slot >= 0 && frame.slots[slot] != UNBOUND) {
+                    return frame.slots[slot];
+                }
+            }
+            if (frame.variables != null && frame.variables.containsKey(name)) {
+                return frame.variables.get(name);
+            }
         }
         return NullNode.getInstance();
     }
 
+    /**
+     * Read a variable through its resolved binding: walk {@code depth} frames and load the
+     * slot. Falls back to the name walk when the frame does not match or is not bound yet.
+     */
+    public JsonNode lookup(String name, Binding binding) {
+        Context frame = this;
+        for (int i = binding.getDepth(); i > 0 && frame != null; i--) {
+            frame = frame.parent;
+        }
+        if (frame != null && frame.scope == binding.getScope()) {
+            JsonNode value = frame.slots[binding.getSlot()];
+            if (value != UNBOUND) {
+                return value;
+            }
+        }
+        return get(name);
+    }
+
     public void defineFunction(String name, List<String> parameters, Expression body) {
-        UserFunction func = new UserFunction(name, parameters, body, this);
-        if (isGlobal) {
-            userFunctions.put(name, func);
-        } else {
-            // Local functions go in current scope
-            userFunctions.put(name, func);
+        defineFunction(name, parameters, body, null);
+    }
+
+    public void defineFunction(String name, List<String> parameters, Expression body, Scope functionScope) {
+        checkWritable(name);
+        UserFunction func = new UserFunction(name, parameters, body, this, functionScope);
+        if (userFunctions == null) {
+            userFunctions = new HashMap<>(4);
         }
+        // Functions always go in the current scope
+        userFunctions.put(name, func);
     }
 
     public UserFunction getFunction(String name) {
-        if (userFunctions.containsKey(name)) {
-            return userFunctions.get(name);
-        }
-        if (parent != null) {
-            return parent.getFunction(name);
+        for (Context frame = this; frame != null; frame = frame.parent) {
+            if (frame.userFunctions != null) {
+                UserFunction func = frame.userFunctions.get(name);
+                if (func != null) {
+                    return func;
+                }
+            }
         }
         return null;
     }
 
     public void export(String name, JsonNode value) {
+        checkWritable(name);
         exports.put(name, value);
     }
 
@@ -109,10 +296,11 @@ public class Context {
     }
 
     public Map<String, JsonNode> getAllExports() {
-        return new HashMap<>(exports);
+        return new LinkedHashMap<>(exports);
     }
 
     public void defineModuleFunction(String namespace, String funcName, UserFunction func) {
+        checkWritable(namespace + "." + funcName);
         moduleFunctions.computeIfAbsent(namespace, k -> new HashMap<>()).put(funcName, func);
     }
 
@@ -125,7 +313,7 @@ public class Context {
     }
 
     public Map<String, UserFunction> getUserFunctions() {
-        return new HashMap<>(userFunctions);
+        return userFunctions != null ? new HashMap<>(userFunctions) : new HashMap<>();
     }
 
     public boolean hasImportedModule(String moduleKey) {
@@ -133,6 +321,7 @@ public class Context {
     }
 
     public void markModuleAsImported(String moduleKey) {
+        checkWritable(moduleKey);
         importedModules.add(moduleKey);
     }
 
@@ -166,20 +355,18 @@ public class Context {
 
     private JsonNode callUserFunction(UserFunction func, List<Expression> argExprs) {
         // Evaluate arguments
-        List<JsonNode> argValues = new java.util.ArrayList<>();
-        for (Expression argExpr : argExprs) {
-            argValues.add(argExpr.evaluate(this));
+        JsonNode[] argValues = new JsonNode[argExprs.size()];
+        for (int i = 0; i < argValues.length; i++) {
+            argValues[i] = argExprs.get(i).evaluate(this);
         }
 
         // Create new context for function execution
-        // Use the function's defining context as parent if available, otherwise use current context
-        Context parentContext = func.getDefiningContext() != null ? func.getDefiningContext() : this;
-        Context funcContext = new Context(parentContext);
+        Context funcContext = newFunctionContext(func);
 
         // Bind parameters
         List<String> params = func.getParameters();
         for (int i = 0; i < params.size(); i++) {
-            JsonNode value = i < argValues.size() ? argValues.get(i) : NullNode.getInstance();
+            JsonNode value = i < argValues.length ? argValues[i] : NullNode.getInstance();
             funcContext.define(params.get(i), value);
         }
 
@@ -190,4 +377,19 @@ public class Context {
     public HostFunctionRegistry getFunctionRegistry() {
         return functionRegistry;
     }
+
+    /**
+     * The engine hook used by {@code runMorph}, or null for a context created outside an engine.
+     */
+    public MorphRunner getMorphRunner() {
+        return morphRunner;
+    }
+
+    /**
+     * State of one run that the frames evaluating it share.
+     */
+    private static final class RunState {
+        // Set from parallel lambda frames too, read once the run is done
+        private volatile boolean lazyValues;
+    }
 }
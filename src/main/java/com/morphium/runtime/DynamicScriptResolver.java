@@ -19,4 +19,15 @@ public interface DynamicScriptResolver {
      * @throws IOException if script generation fails
      */
     String resolve(String functionName, Object[] args) throws IOException;
+
+    /**
+     * Whether the script for a given function name and arguments never changes, so the
+     * module resolver may keep it and not call {@link #resolve} again. False by default:
+     * a resolver backed by a database or the clock is asked on every import.
+     *
+     * @return true to cache resolved scripts per function name and arguments
+     */
+    default boolean cacheable() {
+        return false;
+    }
 }
@@ -3,16 +3,22 @@ package com.morphium.runtime;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.morphium.core.MorphiumEngine.HostFunction;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HostFunctionRegistry {
-    private final Map<String, HostFunction> functions = new HashMap<>();
+    private final Map<String, HostFunction> functions = new ConcurrentHashMap<>();
     private Logger logger;
+    // Bumped after every registration so call sites can tell their cached target is stale.
+    // A call site reads it before looking a function up, so a lookup racing a registration
+    // is cached under the older version and resolved again
+    private final AtomicInteger version = new AtomicInteger();
 
     public void register(String namespace, String name, HostFunction function) {
         String fullName = namespace.isEmpty() ? name : namespace + "." + name;
         functions.put(fullName, function);
+        version.incrementAndGet();
     }
 
     public void register(String name, HostFunction function) {
@@ -27,14 +33,22 @@ public class HostFunctionRegistry {
         return null;
     }
 
+    public HostFunction get(String name) {
+        return functions.get(name);
+    }
+
     public boolean has(String name) {
         return functions.containsKey(name);
     }
-    
+
+    public int getVersion() {
+        return version.get();
+    }
+
     public void setLogger(Logger logger) {
         this.logger = logger;
     }
-    
+
     public Logger getLogger() {
         return logger;
     }
@@ -1,21 +1,59 @@
 package com.morphium.runtime;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import lombok.Data;
+import com.morphium.compiler.MorphcCodec;
+import com.morphium.parser.ast.Expression;
+import lombok.Getter;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-@Data
+/**
+ * Loads module sources for imports.
+ *
+ * Sources are kept in memory so an import does not read the disk on every transform.
+ * A cached file is checked again at most once per {@link #getReloadCheckInterval()}: if
+ * its modification time or size changed it is read again, and the engine then swaps in
+ * a freshly evaluated module while running transforms keep the version they started
+ * with. Classpath resources cannot change and are read once. Scripts produced by dynamic
+ * resolvers are cached per resolver name and arguments only when the resolver is
+ * {@link DynamicScriptResolver#cacheable()}.
+ *
+ * A {@code .morph} file may have a precompiled {@code .morphc} artifact next to it, see
+ * {@link #loadPrecompiled(String, String)}.
+ */
 public class ModuleResolver {
+    public static final Duration DEFAULT_RELOAD_CHECK_INTERVAL = Duration.ofSeconds(1);
+    // Generated scripts kept per resolver name and arguments, for cacheable resolvers
+    private static final int MAX_DYNAMIC_SOURCES = 1024;
+
     private Path basePath;
+    @Getter
     private final Map<String, DynamicScriptResolver> dynamicResolvers;
+    private final Map<String, CachedSource> sourceCache = new ConcurrentHashMap<>();
+    private final Map<String, String> dynamicSourceCache = Collections.synchronizedMap(
+        new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_DYNAMIC_SOURCES;
+            }
+        });
+    @Getter
+    private volatile Duration reloadCheckInterval = DEFAULT_RELOAD_CHECK_INTERVAL;
 
     public ModuleResolver() {
         this.basePath = Paths.get(System.getProperty("user.dir"));
@@ -29,6 +67,30 @@ public class ModuleResolver {
     
     public void setBasePath(Path basePath) {
         this.basePath = basePath;
+        sourceCache.clear();
+    }
+
+    /**
+     * How long a cached module file is used before its modification time is checked
+     * again. {@link Duration#ZERO} checks on every import.
+     */
+    public void setReloadCheckInterval(Duration reloadCheckInterval) {
+        if (reloadCheckInterval.isNegative()) {
+            throw new IllegalArgumentException("Reload check interval must not be negative");
+        }
+        this.reloadCheckInterval = reloadCheckInterval;
+    }
+
+    /**
+     * Drop a cached source so the next import reads it again.
+     */
+    public void invalidate(String modulePath) {
+        sourceCache.remove(modulePath);
+    }
+
+    public void clearCache() {
+        sourceCache.clear();
+        dynamicSourceCache.clear();
     }
     
     public Path getBasePath() {
@@ -42,6 +104,7 @@ public class ModuleResolver {
      */
     public void registerDynamicResolver(String functionName, DynamicScriptResolver resolver) {
         dynamicResolvers.put(functionName, resolver);
+        dynamicSourceCache.clear();
     }
     
     /**
@@ -56,7 +119,16 @@ public class ModuleResolver {
         if (resolver == null) {
             throw new IOException("No dynamic resolver registered for: " + functionName);
         }
-        return resolver.resolve(functionName, args);
+        if (!resolver.cacheable()) {
+            return resolver.resolve(functionName, args);
+        }
+        String key = functionName + ":" + Arrays.toString(args);
+        String source = dynamicSourceCache.get(key);
+        if (source == null) {
+            source = resolver.resolve(functionName, args);
+            dynamicSourceCache.put(key, source);
+        }
+        return source;
     }
     
     /**
@@ -69,17 +141,89 @@ public class ModuleResolver {
     }
 
     public String resolve(String modulePath) throws IOException {
+        long now = System.nanoTime();
+        CachedSource cached = sourceCache.get(modulePath);
+        if (cached != null && (cached.file == null || now - cached.checkedAt < reloadCheckInterval.toNanos())) {
+            return cached.source;
+        }
+
         Path fullPath = basePath.resolve(modulePath);
-        if (Files.exists(fullPath)) {
-            return Files.readString(fullPath);
+        BasicFileAttributes attributes = null;
+        try {
+            attributes = Files.readAttributes(fullPath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // Not on disk, look on the classpath
+        }
+        if (attributes != null) {
+            if (cached != null && fullPath.equals(cached.file)
+                    && attributes.lastModifiedTime().equals(cached.modified) && attributes.size() == cached.size) {
+                cached.checkedAt = now;
+                return cached.source;
+            }
+            String source = Files.readString(fullPath);
+            sourceCache.put(modulePath, new CachedSource(source, fullPath, attributes, now));
+            return source;
         }
 
         // Fallback: try reading from classpath (resources)
         try (InputStream is = getClass().getClassLoader().getResourceAsStream(modulePath)) {
             if (is == null) {
+                sourceCache.remove(modulePath);
                 throw new IOException("Module not found: " + modulePath);
             }
-            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            String source = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            sourceCache.put(modulePath, new CachedSource(source, null, null, now));
+            return source;
+        }
+    }
+
+    /**
+     * Load the precompiled tree of a {@code .morph} file from its {@code .morphc} artifact,
+     * looked up next to the file and then on the classpath.
+     * @param modulePath The path the source was resolved from
+     * @param source The current source, the artifact is only used if it was compiled from it
+     * @return The parsed tree, or null if there is no usable artifact
+     */
+    public Expression loadPrecompiled(String modulePath, String source) {
+        if (modulePath == null || !modulePath.endsWith(".morph")) {
+            return null;
+        }
+        String artifactPath = modulePath + "c";
+        try {
+            byte[] data = null;
+            Path file = basePath.resolve(artifactPath);
+            if (Files.isRegularFile(file)) {
+                data = Files.readAllBytes(file);
+            } else {
+                try (InputStream is = getClass().getClassLoader().getResourceAsStream(artifactPath)) {
+                    if (is != null) {
+                        data = is.readAllBytes();
+                    }
+                }
+            }
+            return data != null ? MorphcCodec.decode(data, source) : null;
+        } catch (IOException | RuntimeException e) {
+            // A damaged or unreadable artifact is ignored, the source is parsed instead
+            return null;
+        }
+    }
+
+    /**
+     * A module source and the file state it was read at; classpath sources have no file.
+     */
+    private static final class CachedSource {
+        private final String source;
+        private final Path file;
+        private final FileTime modified;
+        private final long size;
+        private volatile long checkedAt;
+
+        CachedSource(String source, Path file, BasicFileAttributes attributes, long checkedAt) {
+            this.source = source;
+            this.file = file;
+            this.modified = attributes != null ? attributes.lastModifiedTime() : null;
+            this.size = attributes != null ? attributes.size() : -1;
+            this.checkedAt = checkedAt;
         }
     }
 }
@@ -0,0 +1,14 @@
+package com.morphium.runtime;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * Runs another transform file on behalf of the {@code runMorph} builtin, through the
+ * owning engine's module resolver and script cache.
+ */
+@FunctionalInterface
+public interface MorphRunner {
+    JsonNode run(String morphPath, JsonNode input) throws IOException;
+}
@@ -0,0 +1,88 @@
+package com.morphium.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Static description of one runtime frame: the names that live in it and the slot each
+ * one occupies. Scopes are built by the resolver before a tree is published and are
+ * read-only afterwards.
+ */
+public final class Scope {
+    private static final String[] NO_NAMES = new String[0];
+
+    private final Scope parent;
+    private final boolean dynamic;
+    private String[] names = NO_NAMES;
+
+    public Scope(Scope parent) {
+        this(parent, false);
+    }
+
+    /**
+     * @param dynamic true when the frame binds names that are only known at runtime,
+     *                so lookups must not be resolved across it
+     */
+    public Scope(Scope parent, boolean dynamic) {
+        this.parent = parent;
+        this.dynamic = dynamic;
+    }
+
+    /**
+     * Declare a name in this scope and return its slot. Declaring a name twice returns
+     * the existing slot, matching how a frame overwrites a redefined variable.
+     */
+    public int declare(String name) {
+        int existing = indexOf(name);
+        if (existing >= 0) {
+            return existing;
+        }
+        names = Arrays.copyOf(names, names.length + 1);
+        names[names.length - 1] = name;
+        return names.length - 1;
+    }
+
+    public int indexOf(String name) {
+        String[] current = names;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == name || current[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Resolve a name from this scope outwards.
+     * @return the binding, or null when the name is not statically visible
+     */
+    public Binding resolve(String name) {
+        int depth = 0;
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            int slot = scope.indexOf(name);
+            if (slot >= 0) {
+                return new Binding(scope, slot, depth);
+            }
+            if (scope.dynamic) {
+                return null;
+            }
+            depth++;
+        }
+        return null;
+    }
+
+    public Scope getParent() {
+        return parent;
+    }
+
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+}
@@ -9,16 +9,22 @@ public class UserFunction {
     private final List<String> parameters;
     private final Expression body;
     private final Context definingContext;
+    private final Scope scope;
 
     public UserFunction(String name, List<String> parameters, Expression body) {
         this(name, parameters, body, null);
     }
 
     public UserFunction(String name, List<String> parameters, Expression body, Context definingContext) {
+        this(name, parameters, body, definingContext, null);
+    }
+
+    public UserFunction(String name, List<String> parameters, Expression body, Context definingContext, Scope scope) {
         this.name = name;
         this.parameters = parameters;
         this.body = body;
         this.definingContext = definingContext;
+        this.scope = scope;
     }
 
     public String getName() {
@@ -36,4 +42,11 @@ public class UserFunction {
     public Context getDefiningContext() {
         return definingContext;
     }
+
+    /**
+     * The resolved scope of the function frame, or null when the body was not resolved.
+     */
+    public Scope getScope() {
+        return scope;
+    }
 }
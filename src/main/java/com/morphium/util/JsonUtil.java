@@ -1,12 +1,35 @@
 package com.morphium.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class JsonUtil {
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    // Nodes for common small numbers, shared instead of allocated for every result
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final IntNode[] INT_CACHE = new IntNode[CACHE_HIGH - CACHE_LOW];
+    private static final DoubleNode[] DOUBLE_CACHE = new DoubleNode[CACHE_HIGH - CACHE_LOW];
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+    static {
+        for (int i = 0; i < INT_CACHE.length; i++) {
+            INT_CACHE[i] = new IntNode(i + CACHE_LOW);
+            DOUBLE_CACHE[i] = new DoubleNode(i + CACHE_LOW);
+        }
+    }
+
     public static JsonNode createPrimitive(Object value) {
         if (value == null) {
             return NullNode.getInstance();
@@ -15,10 +38,10 @@ public class JsonUtil {
             return BooleanNode.valueOf((Boolean) value);
         }
         if (value instanceof Integer || value instanceof Long) {
-            return IntNode.valueOf(((Number) value).intValue());
+            return numberNode(((Number) value).longValue());
         }
         if (value instanceof Number) {
-            return DoubleNode.valueOf(((Number) value).doubleValue());
+            return numberNode(((Number) value).doubleValue());
         }
         if (value instanceof String) {
             return TextNode.valueOf((String) value);
@@ -26,14 +49,86 @@ public class JsonUtil {
         throw new IllegalArgumentException("Unsupported type: " + value.getClass());
     }
 
+    /**
+     * Node for an integer value: an int node when it fits, a long node otherwise.
+     */
+    public static JsonNode numberNode(long value) {
+        if (value >= CACHE_LOW && value < CACHE_HIGH) {
+            return INT_CACHE[(int) value - CACHE_LOW];
+        }
+        if (value == (int) value) {
+            return IntNode.valueOf((int) value);
+        }
+        return LongNode.valueOf(value);
+    }
+
+    public static JsonNode numberNode(double value) {
+        if (value >= CACHE_LOW && value < CACHE_HIGH && value == (int) value
+                && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO) {
+            return DOUBLE_CACHE[(int) value - CACHE_LOW];
+        }
+        return DoubleNode.valueOf(value);
+    }
+
+    /**
+     * True when a node holds an integer that fits in a long, so arithmetic on it can
+     * stay exact.
+     */
+    public static boolean isIntegral(JsonNode node) {
+        return node != null && (node.isInt() || node.isLong() || (node.isIntegralNumber() && node.canConvertToLong()));
+    }
+
+    /**
+     * Deep copy of a value whose objects and arrays reject modification, for values shared
+     * between transforms. Reading, iterating and copying it behave as usual.
+     */
+    public static JsonNode freeze(JsonNode value) {
+        if (value == null || value.isValueNode()) {
+            return value;
+        }
+        if (value.isObject()) {
+            LinkedHashMap<String, JsonNode> fields = new LinkedHashMap<>((int) (value.size() / 0.75f) + 1);
+            Iterator<Map.Entry<String, JsonNode>> it = value.fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> field = it.next();
+                fields.put(field.getKey(), freeze(field.getValue()));
+            }
+            return new ObjectNode(mapper.getNodeFactory(), Collections.unmodifiableMap(fields));
+        }
+        if (value.isArray()) {
+            List<JsonNode> elements = new ArrayList<>(value.size());
+            for (JsonNode element : value) {
+                elements.add(freeze(element));
+            }
+            return new ArrayNode(mapper.getNodeFactory(), Collections.unmodifiableList(elements));
+        }
+        return value;
+    }
+
     public static ObjectNode createObject() {
         return mapper.createObjectNode();
     }
 
+    public static ObjectNode createObject(int expectedSize) {
+        // LinkedHashMap keeps field order like the default node, sized to avoid rehashing
+        return new ObjectNode(mapper.getNodeFactory(), new LinkedHashMap<>((int) (expectedSize / 0.75f) + 1));
+    }
+
     public static ArrayNode createArray() {
         return mapper.createArrayNode();
     }
 
+    /**
+     * Write a value to a generator; a missing value is written as null.
+     */
+    public static void write(JsonGenerator generator, JsonNode value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            mapper.writeTree(generator, value);
+        }
+    }
+
     public static ObjectMapper getMapper() {
         return mapper;
     }
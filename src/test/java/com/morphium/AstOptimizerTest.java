@@ -0,0 +1,103 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.morphium.compiler.AstOptimizer;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.parser.Lexer;
+import com.morphium.parser.Parser;
+import com.morphium.parser.ast.BlockExpr;
+import com.morphium.parser.ast.ConstantExpr;
+import com.morphium.parser.ast.Expression;
+import com.morphium.parser.ast.LiteralExpr;
+import com.morphium.parser.ast.ObjectExpr;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AstOptimizerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String[] SCRIPTS = {
+        "{ a: 1 + 2 * 3, b: \"x\" + 1, c: !true, d: -(4), e: 10 / 4 }",
+        "{ t: true ? $.v : 0, f: 0 ? 1 : $.v, and: 0 && $.v, or: \"\" || $.v, nc: null ?? $.v }",
+        "if (1 > 2) { \"no\" } else { $.v }",
+        "if ([]) { \"empty arrays are falsy here\" } else { \"else\" }",
+        "[] ? \"but truthy in a ternary\" : \"else\"",
+        "switch (\"b\") { case \"a\": 1 case \"b\": $.v default: 3 }",
+        "switch (5) { case 1: 1 default: \"default\" }",
+        "let unused = { big: [1, 2, 3] }; let used = 2; used * $.v",
+        "function f() { later } let later = 7; f()",
+        "let lookup = { a: \"Alpha\", b: \"Beta\" }; map($.keys, \"k\", lookup[k])",
+        "{ nested: { list: [1, { deep: true }], s: \"text\" }, dyn: $.v }"
+    };
+
+    private Expression optimize(String script) {
+        return new AstOptimizer().optimize(new Parser(new Lexer(script, "<test>")).parse());
+    }
+
+    @Test
+    public void testOptimizedMatchesUnoptimized() throws Exception {
+        JsonNode input = mapper.readTree("{\"v\": 42, \"keys\": [\"a\", \"b\", \"c\"]}");
+        MorphiumEngine plain = new MorphiumEngine();
+        MorphiumEngine optimized = new MorphiumEngine();
+        optimized.setOptimizationEnabled(true);
+
+        for (String script : SCRIPTS) {
+            assertEquals(script, plain.transformFromString(script, input),
+                optimized.transformFromString(script, input));
+        }
+    }
+
+    @Test
+    public void testFoldsConstantOperators() {
+        Expression folded = optimize("(1 + 2) * 3 > 8 ? \"yes\" : \"no\"");
+        Expression result = folded instanceof BlockExpr ? ((BlockExpr) folded).getExpressions().get(0) : folded;
+        assertTrue(result instanceof LiteralExpr);
+        assertEquals("yes", result.evaluate(null).asText());
+    }
+
+    @Test
+    public void testDropsUnusedLets() {
+        BlockExpr block = (BlockExpr) optimize("let a = 1; let b = $.x; let c = now(); b");
+        // a is never read, b is read, c may have effects
+        assertEquals(3, block.getExpressions().size());
+    }
+
+    @Test
+    public void testLiteralObjectsAreShared() {
+        Expression expr = optimize("{ codes: { a: [1, 2], b: \"x\" }, value: $.v }");
+        ObjectExpr object = (ObjectExpr) (expr instanceof BlockExpr ? ((BlockExpr) expr).getExpressions().get(0) : expr);
+        Expression codes = object.getProperties().get("codes");
+        assertTrue(codes instanceof ConstantExpr);
+        assertSame(codes.evaluate(null), codes.evaluate(null));
+    }
+
+    @Test
+    public void testSharedLiteralsRejectModification() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.setOptimizationEnabled(true);
+        String script = "{ codes: { a: [1, 2] }, value: $.v }";
+        JsonNode input = mapper.readTree("{\"v\": 1}");
+
+        JsonNode first = engine.transformFromString(script, input);
+        try {
+            ((ObjectNode) first.get("codes")).put("b", 3);
+            fail("shared literal was modified");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            ((ArrayNode) first.get("codes").get("a")).add(3);
+            fail("shared literal was modified");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        JsonNode copy = first.deepCopy();
+        ((ObjectNode) copy.get("codes")).put("b", 3);
+        assertEquals(mapper.readTree("{\"codes\": {\"a\": [1, 2]}, \"value\": 1}"),
+            engine.transformFromString(script, input));
+    }
+}
@@ -0,0 +1,125 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.core.BatchResult;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.runtime.ModuleResolver;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class BatchTransformTest {
+
+    private static final String SCRIPT = "let label = upper($.name); { id: $.id, label: label, big: $.id > 500 }";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private List<JsonNode> inputs(int count) {
+        List<JsonNode> inputs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            inputs.add(mapper.createObjectNode().put("id", i).put("name", "item" + i));
+        }
+        return inputs;
+    }
+
+    @Test
+    public void testResultsMatchSingleTransformsInOrder() {
+        MorphiumEngine engine = new MorphiumEngine();
+        List<JsonNode> inputs = inputs(1000);
+
+        BatchResult result = engine.transformAll(SCRIPT, inputs);
+        assertFalse(result.hasFailures());
+        assertEquals(1000, result.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(engine.transformFromString(SCRIPT, inputs.get(i)), result.get(i));
+        }
+    }
+
+    @Test
+    public void testFailuresDoNotAbortTheBatch() {
+        MorphiumEngine engine = new MorphiumEngine();
+        List<JsonNode> inputs = inputs(300);
+
+        BatchResult result = engine.transformAll("$.id % 100 == 7 ? error(\"bad \" + $.id) : $.id * 2", inputs);
+        assertEquals(3, result.getFailures().size());
+        assertEquals(7, result.getFailures().get(0).getIndex());
+        assertEquals(207, result.getFailures().get(2).getIndex());
+        assertTrue(result.getFailures().get(1).getError().getMessage().contains("bad 107"));
+        assertNull(result.get(107));
+        assertEquals(216, result.get(108).asInt());
+        assertEquals(300, result.size());
+    }
+
+    @Test
+    public void testIteratorAndConfiguredExecutor() {
+        MorphiumEngine engine = new MorphiumEngine();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            engine.setBatchExecutor(executor);
+            engine.setBatchParallelism(4);
+            BatchResult result = engine.transformAll(SCRIPT, inputs(500).iterator());
+            assertEquals(500, result.size());
+            assertEquals("ITEM499", result.get(499).get("label").asText());
+
+            result = engine.transformAll("$.id", inputs(200).stream().spliterator());
+            for (int i = 0; i < 200; i++) {
+                assertEquals(i, result.get(i).asInt());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, engine.transformAll("$", new ArrayList<>()).size());
+    }
+
+    @Test
+    public void testLazyResultsDoNotSeeTheNextRecord() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.setBatchParallelism(1);
+        String script = "map($.items, \"x\", x + $.off)";
+        List<JsonNode> inputs = new ArrayList<>();
+        for (int off = 0; off <= 200; off += 100) {
+            inputs.add(mapper.readTree("{\"items\": [1, 2], \"off\": " + off + "}"));
+        }
+
+        BatchResult result = engine.transformAll(script, inputs);
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(engine.transformFromString(script, inputs.get(i)), result.get(i));
+        }
+        assertEquals("[101,102]", result.get(1).toString());
+    }
+
+    @Test
+    public void testImportsInReusedFrames() {
+        MorphiumEngine engine = new MorphiumEngine(new ModuleResolver() {
+            @Override
+            public String resolve(String modulePath) throws IOException {
+                return "function twice(x) { x * 2 }";
+            }
+        });
+        BatchResult result = engine.transformAll("import \"m.morph\" as m;\n m.twice($.id)", inputs(400));
+        assertFalse(result.hasFailures());
+        assertEquals(798, result.get(399).asInt());
+    }
+
+    @Test
+    public void testCompletesWhenExecutorNeverRunsWorkers() {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.setBatchParallelism(8);
+
+        engine.setBatchExecutor(task -> { });
+        assertEquals(999, engine.transformAll("$.id", inputs(1000)).get(999).asInt());
+
+        engine.setBatchExecutor(task -> {
+            throw new RejectedExecutionException();
+        });
+        assertEquals(999, engine.transformAll("$.id", inputs(1000)).get(999).asInt());
+    }
+}
@@ -0,0 +1,123 @@
+package com.morphium;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.compiler.ExecutionMode;
+import com.morphium.core.CompiledTransform;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.core.MorphiumException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class CompiledTransformTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testApplyReusesCompiledTransform() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        CompiledTransform transform = engine.compile("{ doubled: map($.values, \"v\", v * 2) }");
+
+        assertEquals("[2,4]", transform.apply(mapper.readTree("{\"values\": [1, 2]}")).get("doubled").toString());
+        assertEquals("[6]", transform.apply(mapper.readTree("{\"values\": [3]}")).get("doubled").toString());
+        assertEquals("<string>", transform.getSourcePath());
+    }
+
+    @Test
+    public void testConcurrentApply() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        CompiledTransform transform = engine.compile(
+            "function square(x) { x * x } let total = reduce($.values, \"acc\", \"v\", 0, acc + square(v)); { id: $.id, total: total }");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<JsonNode>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                JsonNode input = mapper.readTree("{\"id\": " + i + ", \"values\": [1, 2, " + i + "]}");
+                results.add(executor.submit(() -> transform.apply(input)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                JsonNode result = results.get(i).get();
+                assertEquals(i, result.get("id").asInt());
+                assertEquals(5 + i * i, result.get("total").asInt());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testScriptsWithEqualHashCodesDoNotShareTrees() throws Exception {
+        // "Aa" and "BB" have the same String hash code
+        assertEquals("\"Aa\"".hashCode(), "\"BB\"".hashCode());
+        MorphiumEngine engine = new MorphiumEngine();
+        JsonNode input = mapper.readTree("{}");
+
+        assertEquals("Aa", engine.transformFromString("\"Aa\"", input).asText());
+        assertEquals("BB", engine.transformFromString("\"BB\"", input).asText());
+    }
+
+    @Test
+    public void testCompileFromPath() throws Exception {
+        Path file = Files.createTempFile("compiled", ".morph");
+        try {
+            Files.writeString(file, "{ name: upper($.name) }");
+            CompiledTransform transform = new MorphiumEngine().compile(file);
+            assertEquals("ADA", transform.apply(mapper.readTree("{\"name\": \"ada\"}")).get("name").asText());
+            assertEquals(file.toString(), transform.getSourcePath());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testWriteToMatchesApply() throws Exception {
+        String[] scripts = {
+            "{ id: $.id, tags: [upper($.name), $.n * 2, [1, { deep: $.name }]], none: $.missing }",
+            "let base = $.n * 10; function inc(x) { x + 1 } { base: base, next: inc(base), list: map($.list, \"v\", { v: v }) }",
+            "{ [\"k\" + $.id]: 1, k1: 2, plain: \"x\" }",
+            "[$.id, \"literal\", null, true]",
+            "$.n > 1 ? { big: true } : { big: false }",
+            "let x = 1; let y = 2;"
+        };
+        JsonNode input = mapper.readTree("{\"id\": 1, \"name\": \"ada\", \"n\": 3, \"list\": [1, 2]}");
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            MorphiumEngine engine = new MorphiumEngine();
+            engine.setExecutionMode(mode);
+            for (String script : scripts) {
+                CompiledTransform transform = engine.compile(script);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                transform.writeTo(input, out);
+                assertEquals(mode + ": " + script, mapper.writeValueAsString(transform.apply(input)),
+                    out.toString(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testEngineWritesToGenerator() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            new MorphiumEngine().transformFromString("{ a: $.v, b: [$.v, $.v + 1] }",
+                mapper.readTree("{\"v\": 1}"), generator);
+        }
+        assertEquals("{\"a\":1,\"b\":[1,2]}", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = MorphiumException.class)
+    public void testCompileReportsSyntaxErrors() {
+        new MorphiumEngine().compile("{ a: ");
+    }
+}
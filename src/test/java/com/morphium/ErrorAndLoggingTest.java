@@ -140,9 +140,17 @@ public class ErrorAndLoggingTest {
         
         int[] callCount = {0};
         engine.getModuleResolver().registerDynamicResolver("getCached", 
-            (functionName, args) -> {
-                callCount[0]++;
-                return "export value = 42";
+            new DynamicScriptResolver() {
+                @Override
+                public String resolve(String functionName, Object[] args) {
+                    callCount[0]++;
+                    return "export value = 42";
+                }
+
+                @Override
+                public boolean cacheable() {
+                    return true;
+                }
             }
         );
         
@@ -159,6 +167,22 @@ public class ErrorAndLoggingTest {
         assertEquals("Dynamic script should be cached", firstCount, callCount[0]);
     }
     
+    @Test
+    public void testDynamicImportNotCachedByDefault() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        
+        int[] callCount = {0};
+        engine.getModuleResolver().registerDynamicResolver("getVersion", 
+            (functionName, args) -> "export value = " + (++callCount[0])
+        );
+        
+        String script = "import getVersion(1) as v; v.value";
+        JsonNode input = mapper.readTree("{}");
+        
+        assertEquals(1, engine.transformFromString(script, input).asInt());
+        assertEquals(2, engine.transformFromString(script, input).asInt());
+    }
+    
     @Test
     public void testMultipleLogCallsInScript() throws Exception {
         MorphiumEngine engine = new MorphiumEngine();
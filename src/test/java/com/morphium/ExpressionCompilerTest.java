@@ -0,0 +1,97 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.compiler.ExecutionMode;
+import com.morphium.compiler.ExpressionCompiler;
+import com.morphium.compiler.TieredExpression;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.core.MorphiumException;
+import com.morphium.parser.Lexer;
+import com.morphium.parser.Parser;
+import com.morphium.parser.ast.Expression;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExpressionCompilerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String[] SCRIPTS = {
+        "{ fullName: $.person.first + \" \" + $.person.last, city: $.person.address?.city, zip: $.person.address?.zip }",
+        "{ first: $.items[0].name, missing: $.items[10]?.name, byKey: $.person[\"first\"] }",
+        "map(filter($.items, \"i\", i.price > 10), \"i\", { name: upper(i.name), total: i.price * i.qty })",
+        "let total = reduce($.items, \"acc\", \"i\", 0, acc + i.price); { total: total, label: total > 50 ? \"big\" : \"small\" }",
+        "function discount(p) { return p * 0.9 } map($.items, \"i\", discount(i.price))",
+        "for (i of $.items) { i.qty > 1 ? continue : null; i.name }",
+        "switch ($.person.first) { case \"John\": \"hello john\" default: \"who?\" }",
+        "{ [\"key_\" + $.person.last]: 1, static: [1, \"two\", true, null, -3.5] }",
+        "if ($.items[1].price >= 20) { let p = $.items[1].price; p - 1 } else { 0 }"
+    };
+
+    private JsonNode input() throws Exception {
+        return mapper.readTree("{\"person\": {\"first\": \"John\", \"last\": \"Doe\", \"address\": null}," +
+            "\"items\": [{\"name\": \"pen\", \"price\": 5, \"qty\": 3}," +
+            "{\"name\": \"book\", \"price\": 20, \"qty\": 1}," +
+            "{\"name\": \"lamp\", \"price\": 35, \"qty\": 2}]}");
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() throws Exception {
+        MorphiumEngine interpreter = new MorphiumEngine();
+        interpreter.setExecutionMode(ExecutionMode.INTERPRET);
+        MorphiumEngine compiler = new MorphiumEngine();
+        compiler.setExecutionMode(ExecutionMode.COMPILE);
+
+        for (String script : SCRIPTS) {
+            JsonNode expected = interpreter.transformFromString(script, input());
+            JsonNode actual = compiler.transformFromString(script, input());
+            assertEquals(script, expected, actual);
+        }
+    }
+
+    @Test
+    public void testCompiledPathErrorsMatchInterpreter() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.setExecutionMode(ExecutionMode.COMPILE);
+
+        try {
+            engine.transformFromString("$.person.address.city", input());
+            fail("Expected MorphiumException");
+        } catch (MorphiumException e) {
+            assertTrue(e.getMessage().contains("Cannot access property of null"));
+        }
+    }
+
+    @Test
+    public void testTieredCompilesAfterThreshold() {
+        Expression parsed = new Parser(new Lexer("1 + 2", "<test>")).parse();
+        TieredExpression tiered = new TieredExpression(parsed, 3, new ExpressionCompiler());
+
+        assertSame(parsed, tiered.current());
+        assertSame(parsed, tiered.current());
+        assertFalse(tiered.isCompiled());
+
+        Expression hot = tiered.current();
+        assertNotSame(parsed, hot);
+        assertTrue(tiered.isCompiled());
+        assertSame(hot, tiered.current());
+        assertEquals(3, tiered.getInvocationCount());
+    }
+
+    @Test
+    public void testTieredEngineKeepsResultsAcrossSwitch() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        // Compiling is opt-in
+        assertEquals(ExecutionMode.INTERPRET, engine.getExecutionMode());
+        engine.setExecutionMode(ExecutionMode.TIERED);
+        engine.setCompileThreshold(2);
+        String script = SCRIPTS[2];
+
+        JsonNode first = engine.transformFromString(script, input());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first, engine.transformFromString(script, input()));
+        }
+    }
+}
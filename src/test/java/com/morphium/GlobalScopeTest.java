@@ -0,0 +1,100 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.core.BatchResult;
+import com.morphium.core.CompiledTransform;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.core.MorphiumException;
+import com.morphium.runtime.ModuleResolver;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class GlobalScopeTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private JsonNode input(int id) {
+        return mapper.createObjectNode().put("id", id);
+    }
+
+    @Test
+    public void testGlobalsStayInTheirRun() {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.transformFromString("global leaked = 42\n$.id", input(1));
+        assertTrue(engine.transformFromString("leaked", input(2)).isNull());
+
+        // A frame reused for the next record starts without the previous record's globals
+        engine.setBatchParallelism(1);
+        BatchResult result = engine.transformAll("let before = prev; global prev = $.id\nbefore",
+            List.of(input(1), input(2), input(3)));
+        for (JsonNode value : result.getResults()) {
+            assertTrue(value.isNull());
+        }
+    }
+
+    @Test
+    public void testConcurrentRunsKeepTheirGlobals() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        CompiledTransform transform = engine.compile("global g = $.id\nfunction read() { g }\n{ id: read() }");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<JsonNode>> results = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                JsonNode input = input(i);
+                results.add(executor.submit(() -> transform.apply(input)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i, results.get(i).get().get("id").asInt());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSameAliasForDifferentModules() throws Exception {
+        Map<String, String> modules = new HashMap<>();
+        modules.put("a.morph", "function name() { \"a\" }");
+        modules.put("b.morph", "function name() { \"b\" }");
+        MorphiumEngine engine = new MorphiumEngine(new ModuleResolver() {
+            @Override
+            public String resolve(String modulePath) throws IOException {
+                return modules.get(modulePath);
+            }
+        });
+        CompiledTransform a = engine.compile("import \"a.morph\" as m;\nm.name()");
+        CompiledTransform b = engine.compile("import \"b.morph\" as m;\nm.name()");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                CompiledTransform transform = i % 2 == 0 ? a : b;
+                results.add(executor.submit(() -> transform.apply(input(0)).asText()));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i % 2 == 0 ? "a" : "b", results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // A module alias is only defined for the script that imports it
+        try {
+            engine.transformFromString("m.name()", input(0));
+            fail("Alias of another script's import was visible");
+        } catch (MorphiumException e) {
+            assertTrue(e.getMessage().contains("m.name"));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.core.CompiledTransform;
+import com.morphium.core.MorphiumEngine;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class InputProjectionTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MorphiumEngine engine = new MorphiumEngine();
+
+    private static final String INPUT = "{\"id\": 7, \"name\": \"ada\", \"unused\": {\"big\": [1, 2, 3]},"
+        + " \"order\": {\"total\": 12.5, \"skip\": \"x\", \"customer\": {\"name\": \"lin\", \"age\": 40}},"
+        + " \"items\": [{\"sku\": \"a\", \"qty\": 2, \"note\": \"n\"}, {\"sku\": \"b\", \"qty\": 0, \"note\": \"m\"}],"
+        + " \"0\": \"zero\", \"key\": \"name\", \"matrix\": [[1, 2], [3, 4]]}";
+
+    private static final String[] SCRIPTS = {
+        "{ id: $.id, customer: upper($.order.customer.name) }",
+        "{ skus: map($.items, \"i\", i.sku), first: $.items[0].qty, count: len($.items) }",
+        "let o = $.order; { total: o.total, age: o.customer.age }",
+        "function label(p) { p.name + \"!\" } label($.order.customer)",
+        "{ dynamic: $[$.key], literal: $[\"name\"], zero: $[0] }",
+        "$?.missing?.deeper ?? $.matrix[1][0]",
+        "keys($)",
+        "{ all: $ }"
+    };
+
+    private JsonNode projected(CompiledTransform transform) throws Exception {
+        return transform.readInput(INPUT);
+    }
+
+    @Test
+    public void testProjectedInputGivesSameResults() throws Exception {
+        JsonNode full = mapper.readTree(INPUT);
+        for (String script : SCRIPTS) {
+            CompiledTransform transform = engine.compile(script);
+            assertEquals(script, transform.apply(full), transform.apply(projected(transform)));
+        }
+    }
+
+    @Test
+    public void testSkipsFieldsNeverRead() throws Exception {
+        CompiledTransform transform = engine.compile("{ id: $.id, customer: upper($.order.customer.name) }");
+        assertEquals("{\"id\":7,\"order\":{\"customer\":{\"name\":\"lin\"}}}", projected(transform).toString());
+
+        // Indexes keep every element, projected
+        transform = engine.compile("{ q: $.items[1].qty, s: $.items[0].sku }");
+        assertEquals("{\"items\":[{\"sku\":\"a\",\"qty\":2},{\"sku\":\"b\",\"qty\":0}]}",
+            projected(transform).toString());
+
+        // A value used as a whole is kept whole
+        transform = engine.compile("map($.items, \"i\", i.sku)");
+        assertEquals("{\"items\":[{\"sku\":\"a\",\"qty\":2,\"note\":\"n\"},{\"sku\":\"b\",\"qty\":0,\"note\":\"m\"}]}",
+            projected(transform).toString());
+    }
+
+    @Test
+    public void testFallsBackToWholeValue() throws Exception {
+        assertTrue(engine.compile("keys($)").getInputProjection().isAll());
+        assertTrue(engine.compile("$[$.key]").getInputProjection().isAll());
+        // A parameter named $ hides the input inside the function
+        assertTrue(engine.compile("function f($) { $.x } f($.order)").getInputProjection().isAll());
+
+        CompiledTransform transform = engine.compile("$.order[$.key]");
+        assertFalse(transform.getInputProjection().isAll());
+        assertEquals(mapper.readTree(INPUT).get("order"), projected(transform).get("order"));
+        assertNull(projected(transform).get("items"));
+    }
+
+    @Test
+    public void testStreamingReadsProjectedElements() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.transformStream("$.a.b", new ByteArrayInputStream(
+            "[{\"a\": {\"b\": 1, \"c\": [1, 2]}, \"z\": 1}, {\"a\": {\"b\": 2}}]".getBytes(StandardCharsets.UTF_8)), out);
+        assertEquals("[1,2]", out.toString(StandardCharsets.UTF_8));
+        assertEquals("{a={b=*}}", engine.compile("$.a.b").getInputProjection().toString());
+    }
+}
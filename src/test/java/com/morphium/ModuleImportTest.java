@@ -11,6 +11,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -70,6 +79,34 @@ public class ModuleImportTest {
         assertEquals(26.023, result.asDouble(), 0.001);
     }
 
+    @Test
+    public void testBundledMorphsEvaluate() {
+        MorphiumEngine bundled = new MorphiumEngine(new ModuleResolver() {
+            @Override
+            public String resolve(String modulePath) throws IOException {
+                return Files.readString(Paths.get("src/main/resources", modulePath));
+            }
+        });
+        String source = "import \"morphs/NumberUtils.morph\" as num;\n" +
+                        "import \"morphs/FormatUtils.morph\" as fmt;\n" +
+                        "import \"morphs/ArrayUtils.morph\" as arr;\n" +
+                        "{\n" +
+                        "  ordinals: [num.toOrdinal(1), num.toOrdinal(2), num.toOrdinal(3), num.toOrdinal(4), num.toOrdinal(12), num.toOrdinal(22)],\n" +
+                        "  escaped: fmt.escapeHtml(\"<a href='x'>&</a>\"),\n" +
+                        "  unescaped: fmt.unescapeHtml(\"&lt;b&gt; &amp; &quot;q&quot;\"),\n" +
+                        "  slug: fmt.slugify(\"  Hello World_Again \"),\n" +
+                        "  empty: [arr.isEmpty([]), arr.isEmpty([1])]\n" +
+                        "}";
+
+        JsonNode result = bundled.transformFromString(source, JsonUtil.createObject());
+
+        assertEquals("[\"1st\",\"2nd\",\"3rd\",\"4th\",\"12th\",\"22nd\"]", result.get("ordinals").toString());
+        assertEquals("&lt;a href=&#39;x&#39;&gt;&amp;&lt;/a&gt;", result.get("escaped").asText());
+        assertEquals("<b> & \"q\"", result.get("unescaped").asText());
+        assertEquals("hello-world-again", result.get("slug").asText());
+        assertEquals("[true,false]", result.get("empty").toString());
+    }
+
     @Test
     public void testSimpleModuleImport() {
         String source = "import \"morphs/SimpleTest.morph\" as test;\n" +
@@ -80,4 +117,152 @@ public class ModuleImportTest {
 
         assertEquals(8.0, result.asDouble(), 0.001);
     }
+
+    private MorphiumEngine engineWithModules(Map<String, String> modules) {
+        return new MorphiumEngine(new ModuleResolver() {
+            @Override
+            public String resolve(String modulePath) throws IOException {
+                String source = modules.get(modulePath);
+                if (source == null) {
+                    throw new IOException("Module not found: " + modulePath);
+                }
+                return source;
+            }
+        });
+    }
+
+    @Test
+    public void testModuleEvaluatedOncePerEngine() {
+        Map<String, String> modules = new HashMap<>();
+        modules.put("table.morph", "let table = tick({ a: \"Alpha\", b: \"Beta\" });\n" +
+                                   "export codes = table\n" +
+                                   "function lookup(k) { table[k] }");
+        MorphiumEngine moduleEngine = engineWithModules(modules);
+        int[] ticks = {0};
+        moduleEngine.registerFunction("", "tick", args -> {
+            ticks[0]++;
+            return args[0];
+        });
+
+        String source = "import \"table.morph\" as t;\n{ name: t.lookup($.k), codes: t.codes }";
+        JsonNode first = moduleEngine.transformFromString(source, JsonUtil.createObject().put("k", "a"));
+        JsonNode second = moduleEngine.transformFromString(source, JsonUtil.createObject().put("k", "b"));
+        moduleEngine.transformFromString("import \"table.morph\" as other; other.codes", JsonUtil.createObject());
+
+        assertEquals("Alpha", first.get("name").asText());
+        assertEquals("Beta", second.get("name").asText());
+        assertEquals(1, ticks[0]);
+        // Every importer sees the same frozen exports
+        assertSame(first.get("codes"), second.get("codes"));
+        try {
+            ((com.fasterxml.jackson.databind.node.ObjectNode) first.get("codes")).put("c", "Gamma");
+            fail("Module exports should reject modification");
+        } catch (UnsupportedOperationException expected) {
+            // frozen
+        }
+    }
+
+    @Test
+    public void testConcurrentFirstImportsEvaluateOnce() throws Exception {
+        Map<String, String> modules = new HashMap<>();
+        modules.put("slow.morph", "export value = tick(42)");
+        MorphiumEngine moduleEngine = engineWithModules(modules);
+        AtomicInteger ticks = new AtomicInteger();
+        moduleEngine.registerFunction("", "tick", args -> {
+            ticks.incrementAndGet();
+            try {
+                // Keep the first load running while the other threads miss
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return args[0];
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<JsonNode>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return moduleEngine.transformFromString("import \"slow.morph\" as s; s.value",
+                        JsonUtil.createObject());
+                }));
+            }
+            start.countDown();
+            for (Future<JsonNode> result : results) {
+                assertEquals(42, result.get().asInt());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, ticks.get());
+    }
+
+    @Test
+    public void testModuleReevaluatedWhenSourceChanges() {
+        Map<String, String> modules = new HashMap<>();
+        modules.put("version.morph", "export version = 1");
+        modules.put("other.morph", "export other = true");
+        MorphiumEngine moduleEngine = engineWithModules(modules);
+        String source = "import \"version.morph\" as v;\nimport \"other.morph\" as o;\nv";
+
+        JsonNode before = moduleEngine.transformFromString(source, JsonUtil.createObject());
+        modules.put("version.morph", "export version = 2");
+        JsonNode after = moduleEngine.transformFromString(source, JsonUtil.createObject());
+
+        // Each module only exposes its own exports
+        assertEquals("{\"version\":1}", before.toString());
+        assertEquals("{\"version\":2}", after.toString());
+    }
+
+    @Test
+    public void testModuleFilesReloadAfterCheckInterval() throws IOException {
+        Path dir = Files.createTempDirectory("modules");
+        Path module = dir.resolve("rates.morph");
+        try {
+            Files.writeString(module, "export rate = 1");
+            ModuleResolver resolver = new ModuleResolver(dir);
+            resolver.setReloadCheckInterval(java.time.Duration.ofHours(1));
+            MorphiumEngine fileEngine = new MorphiumEngine(resolver);
+            String source = "import \"rates.morph\" as r;\nr.rate";
+
+            assertEquals(1, fileEngine.transformFromString(source, JsonUtil.createObject()).asInt());
+            Files.writeString(module, "export rate = 20");
+            // Within the interval the cached source is used without touching the file
+            assertEquals(1, fileEngine.transformFromString(source, JsonUtil.createObject()).asInt());
+
+            resolver.setReloadCheckInterval(java.time.Duration.ZERO);
+            assertEquals(20, fileEngine.transformFromString(source, JsonUtil.createObject()).asInt());
+        } finally {
+            Files.deleteIfExists(module);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testRunMorphUsesEngineResolverAndCache() throws IOException {
+        Path dir = Files.createTempDirectory("morphs");
+        Path morph = dir.resolve("price.morph");
+        try {
+            Files.writeString(morph, "{ sku: $.sku, total: $.qty * $.price }");
+            MorphiumEngine fileEngine = new MorphiumEngine(new ModuleResolver(dir));
+            String source = "map($.items, \"item\", runMorph(\"price.morph\", item))";
+            JsonNode input = new com.fasterxml.jackson.databind.ObjectMapper().readTree(
+                "{\"items\": [{\"sku\": \"a\", \"qty\": 2, \"price\": 3}, " +
+                "{\"sku\": \"b\", \"qty\": 1, \"price\": 5}, {\"sku\": \"c\", \"qty\": 4, \"price\": 1}]}");
+
+            JsonNode result = fileEngine.transformFromString(source, input);
+
+            assertEquals("[{\"sku\":\"a\",\"total\":6},{\"sku\":\"b\",\"total\":5},{\"sku\":\"c\",\"total\":4}]",
+                result.toString());
+            // The outer script and the morph file are each parsed once
+            assertEquals(2, fileEngine.getCacheStats().getMissCount());
+            assertEquals(2, fileEngine.getCacheStats().getHitCount());
+        } finally {
+            Files.deleteIfExists(morph);
+            Files.deleteIfExists(dir);
+        }
+    }
 }
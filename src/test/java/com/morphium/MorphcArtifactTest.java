@@ -0,0 +1,101 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.compiler.MorphPrecompiler;
+import com.morphium.compiler.MorphcCodec;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.parser.Lexer;
+import com.morphium.parser.Parser;
+import com.morphium.parser.ast.Expression;
+import com.morphium.runtime.ModuleResolver;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MorphcArtifactTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String[] SCRIPTS = {
+        "{ a: 1 + 2 * 3, b: \"x\" + 1.5, c: !true, d: -(4), e: null, f: $?.missing ?? \"dflt\" }",
+        "let xs = [1, 2, 3]; let total = reduce(xs, \"acc\", \"v\", 0, acc + v); { total: total, doubled: map(xs, \"x\", x * 2) }",
+        "function label(n) { n > 1 ? \"many\" : \"one\" } { l: label($.v), k: { [\"key\" + $.v]: $.items[0] } }",
+        "switch ($.v) { case 1: \"one\" case 2: \"two\" default: \"other\" }",
+        "global g = 10; for (item of $.items) { if (item > 2) { break } } g + $.v",
+        "{ s: \"unicode \\u00e9\", repeated: [\"a\", \"a\", \"a\"], ok: $.v == 2 && true }"
+    };
+
+    private Expression parse(String script) {
+        return new Parser(new Lexer(script, "<test>")).parse();
+    }
+
+    @Test
+    public void testRoundTripEvaluatesLikeSource() throws Exception {
+        JsonNode input = mapper.readTree("{\"v\": 2, \"items\": [1, 2, 3]}");
+        MorphiumEngine engine = new MorphiumEngine();
+        Path dir = Files.createTempDirectory("morphc");
+        for (int i = 0; i < SCRIPTS.length; i++) {
+            String script = SCRIPTS[i];
+            byte[] artifact = MorphcCodec.encode(parse(script), script);
+            Expression decoded = MorphcCodec.decode(artifact, script);
+            assertNotNull(script, decoded);
+            // Encoding the decoded tree gives the same bytes
+            assertTrue(script, Arrays.equals(artifact, MorphcCodec.encode(decoded, script)));
+
+            Path file = dir.resolve("script" + i + ".morph");
+            Files.writeString(file, script);
+            Files.write(dir.resolve("script" + i + ".morphc"), artifact);
+            assertEquals(script, engine.transformFromString(script, input), engine.compile(file).apply(input));
+        }
+    }
+
+    @Test
+    public void testDecodeRejectsOtherSource() throws Exception {
+        byte[] artifact = MorphcCodec.encode(parse("$.v + 1"), "$.v + 1");
+        assertNull(MorphcCodec.decode(artifact, "$.v + 2"));
+        assertNull(MorphcCodec.decode(new byte[] {1, 2, 3}, "$.v + 1"));
+    }
+
+    @Test
+    public void testEnginePrefersMatchingArtifact() throws Exception {
+        Path dir = Files.createTempDirectory("morphc");
+        String source = "export answer = 1";
+        Files.writeString(dir.resolve("m.morph"), source);
+        // An artifact stamped with the source's hash is trusted, here it deliberately differs
+        Files.write(dir.resolve("m.morphc"), MorphcCodec.encode(parse("export answer = 2"), source));
+
+        MorphiumEngine engine = new MorphiumEngine(new ModuleResolver(dir));
+        JsonNode input = mapper.readTree("{}");
+        String script = "import \"m.morph\" as m;\nm.answer";
+        assertEquals(2, engine.transformFromString(script, input).asInt());
+
+        // Once the source changes the stale artifact is ignored
+        Files.write(dir.resolve("m.morphc"), MorphcCodec.encode(parse("export answer = 2"), "export answer = 2"));
+        MorphiumEngine fresh = new MorphiumEngine(new ModuleResolver(dir));
+        assertEquals(1, fresh.transformFromString(script, input).asInt());
+    }
+
+    @Test
+    public void testPrecompilerWritesArtifactsAndReportsErrors() throws Exception {
+        Path src = Files.createTempDirectory("morph-src");
+        Path out = Files.createTempDirectory("morph-out");
+        Files.createDirectories(src.resolve("nested"));
+        Files.writeString(src.resolve("nested/ok.morph"), "function twice(x) { x * 2 }\nexport two = twice(1)");
+        Files.writeString(src.resolve("broken.morph"), "{ a: ");
+
+        List<String> errors = MorphPrecompiler.precompile(src, out);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).startsWith("broken.morph"));
+
+        Path artifact = out.resolve("nested/ok.morphc");
+        assertTrue(Files.exists(artifact));
+        assertFalse(Files.exists(out.resolve("broken.morphc")));
+        assertNotNull(MorphcCodec.decode(Files.readAllBytes(artifact), "function twice(x) { x * 2 }\nexport two = twice(1)"));
+    }
+}
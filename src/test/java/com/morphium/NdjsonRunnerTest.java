@@ -0,0 +1,114 @@
+package com.morphium;
+
+import com.morphium.core.MorphiumEngine;
+import com.morphium.core.MorphiumException;
+import com.morphium.core.NdjsonRunner;
+import com.morphium.core.NdjsonStats;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class NdjsonRunnerTest {
+
+    private final MorphiumEngine engine = new MorphiumEngine();
+
+    private String records(int count) {
+        return IntStream.range(0, count)
+            .mapToObj(i -> "{\"id\": " + i + ", \"name\": \"n" + i + "\"}")
+            .collect(Collectors.joining("\n", "", "\n"));
+    }
+
+    private String run(NdjsonRunner runner, String input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        runner.run(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testOrderedOutputMatchesInput() throws Exception {
+        NdjsonRunner runner = new NdjsonRunner(engine.compile("{ id: $.id, upper: upper($.name) }"));
+        runner.setWorkers(4);
+        runner.setChunkSize(7);
+
+        String[] lines = run(runner, records(1000)).split("\n");
+        assertEquals(1000, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals("{\"id\":" + i + ",\"upper\":\"N" + i + "\"}", lines[i]);
+        }
+    }
+
+    @Test
+    public void testUnorderedOutputHasEveryRecord() throws Exception {
+        NdjsonRunner runner = new NdjsonRunner(engine.compile("$.id"));
+        runner.setWorkers(4);
+        runner.setChunkSize(10);
+        runner.setOrdered(false);
+
+        int[] ids = Arrays.stream(run(runner, records(500)).split("\n")).mapToInt(Integer::parseInt).sorted().toArray();
+        assertArrayEquals(IntStream.range(0, 500).toArray(), ids);
+    }
+
+    @Test
+    public void testSharedExecutorOutlivesRuns() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (boolean ordered : new boolean[] {true, false}) {
+                NdjsonRunner runner = new NdjsonRunner(engine.compile("$.id % 50 == 49 ? error(\"bad\") : $.id"));
+                runner.setExecutor(executor);
+                runner.setWorkers(2);
+                runner.setChunkSize(10);
+                runner.setOrdered(ordered);
+                try {
+                    run(runner, records(1000));
+                    fail("Failing record did not stop the run");
+                } catch (MorphiumException e) {
+                    assertTrue(e.getMessage().startsWith("Line "));
+                }
+
+                runner = new NdjsonRunner(engine.compile("$.id"));
+                runner.setExecutor(executor);
+                runner.setOrdered(ordered);
+                assertEquals(300, run(runner, records(300)).split("\n").length);
+            }
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStatsAndBlankLines() throws Exception {
+        NdjsonRunner runner = new NdjsonRunner(engine.compile("$.id"));
+        runner.setChunkSize(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String input = "{\"id\": 1}\n\n{\"id\": 2}\r\n   \n{\"id\": 3}";
+        NdjsonStats stats = runner.run(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+
+        assertEquals("1\n2\n3\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals(3, stats.getRecordCount());
+        assertEquals(3, stats.getChunkCount());
+        assertTrue(stats.getElapsedNanos() > 0);
+        assertTrue(stats.getRecordsPerSecond() > 0);
+    }
+
+    @Test
+    public void testErrorsNameTheLine() throws Exception {
+        NdjsonRunner runner = new NdjsonRunner(engine.compile("$.id"));
+        runner.setChunkSize(2);
+        try {
+            run(runner, "{\"id\": 1}\n{\"id\": 2}\n{\"id\": \n{\"id\": 4}\n");
+            fail("Expected invalid JSON to fail");
+        } catch (MorphiumException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 3: invalid JSON"));
+        }
+    }
+}
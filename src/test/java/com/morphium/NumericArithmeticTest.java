@@ -0,0 +1,51 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.util.JsonUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NumericArithmeticTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MorphiumEngine engine = new MorphiumEngine();
+
+    private JsonNode run(String script, String input) throws Exception {
+        return engine.transformFromString(script, mapper.readTree(input));
+    }
+
+    @Test
+    public void testIntegerArithmeticStaysExact() throws Exception {
+        JsonNode result = run("{ sum: $.a + $.b, diff: $.a - 10, product: $.a * $.b, "
+            + "quotient: $.a / 2, fraction: 10 / 4, rem: $.a % 3, neg: -$.a }", "{\"a\": 6, \"b\": 7}");
+        assertEquals("{\"sum\":13,\"diff\":-4,\"product\":42,\"quotient\":3,\"fraction\":2.5,\"rem\":0,\"neg\":-6}",
+            result.toString());
+        assertEquals("3.5", run("$.a + 0.5", "{\"a\": 3}").toString());
+    }
+
+    @Test
+    public void testOverflowPromotes() throws Exception {
+        assertEquals(3000000000L, run("$.a + $.a", "{\"a\": 1500000000}").longValue());
+        assertTrue(run("$.a + $.a", "{\"a\": 1500000000}").isLong());
+        JsonNode overflow = run("$.a * 4", "{\"a\": 9000000000000000000}");
+        assertTrue(overflow.isDouble());
+        assertEquals(3.6e19, overflow.doubleValue(), 1e5);
+    }
+
+    @Test
+    public void testNumbersCompareByValue() throws Exception {
+        assertTrue(run("$.a == 3", "{\"a\": 3}").asBoolean());
+        assertTrue(run("$.a == 3", "{\"a\": 3.0}").asBoolean());
+        assertFalse(run("$.a != 3", "{\"a\": 3}").asBoolean());
+        assertTrue(run("$.a < $.b", "{\"a\": 9007199254740992, \"b\": 9007199254740993}").asBoolean());
+    }
+
+    @Test
+    public void testLongValuesAreNotTruncated() {
+        assertEquals(5000000000L, JsonUtil.createPrimitive(5000000000L).longValue());
+        assertSame(JsonUtil.numberNode(42), JsonUtil.numberNode(42L));
+    }
+}
@@ -0,0 +1,86 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.compiler.ExecutionMode;
+import com.morphium.compiler.ScopeResolver;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.parser.Lexer;
+import com.morphium.parser.Parser;
+import com.morphium.parser.ast.BlockExpr;
+import com.morphium.parser.ast.CallExpr;
+import com.morphium.parser.ast.Expression;
+import com.morphium.parser.ast.LetStatement;
+import com.morphium.parser.ast.ScopedExpr;
+import com.morphium.runtime.Scope;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScopeResolverTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String[] SCRIPTS = {
+        "let x = 1; let y = x + 1; { x: x, y: y }",
+        "let x = 1; let r = map($.items, \"x\", x * 10); { outer: x, r: r }",
+        "let base = 100; map($.items, \"i\", map($.items, \"j\", base + i * j))",
+        "let y = $.items[0]; let y = y + 1; y",
+        "function add(a, b) { let s = a + b; s } let s = 5; { call: add(s, 2), s: s }",
+        "let n = 3; function scale(v) { v * n } map($.items, \"i\", scale(i))",
+        "let total = 0; for (i of $.items) { let total = total + i; total }",
+        "let name = \"i\"; map($.items, name, i + 1)",
+        "reduce($.items, \"acc\", \"cur\", 0, acc + cur)",
+        "let v = missing; { v: v, unknown: other }"
+    };
+
+    @Test
+    public void testResolvedMatchesInterpreted() throws Exception {
+        JsonNode input = mapper.readTree("{\"items\": [1, 2, 3]}");
+        MorphiumEngine interpreter = new MorphiumEngine();
+        interpreter.setExecutionMode(ExecutionMode.INTERPRET);
+        MorphiumEngine compiler = new MorphiumEngine();
+        compiler.setExecutionMode(ExecutionMode.COMPILE);
+
+        JsonNode lets = interpreter.transformFromString(SCRIPTS[0], input);
+        assertEquals(2, lets.get("y").asInt());
+        JsonNode shadowed = interpreter.transformFromString(SCRIPTS[1], input);
+        assertEquals(1, shadowed.get("outer").asInt());
+        assertEquals(30, shadowed.get("r").get(2).asInt());
+        JsonNode function = interpreter.transformFromString(SCRIPTS[4], input);
+        assertEquals(7, function.get("call").asInt());
+        assertEquals(5, function.get("s").asInt());
+        assertEquals(4, interpreter.transformFromString(SCRIPTS[7], input).get(2).asInt());
+
+        for (String script : SCRIPTS) {
+            assertEquals(script, interpreter.transformFromString(script, input),
+                compiler.transformFromString(script, input));
+        }
+    }
+
+    @Test
+    public void testLetsGetSlotsInBlockScope() {
+        Expression root = new Parser(new Lexer("let a = 1; let b = 2; let a = 3; a + b", "<test>")).parse();
+        Scope program = new ScopeResolver().resolveProgram(root);
+
+        assertEquals(1, program.size());
+        assertEquals("$", program.getName(0));
+
+        Scope block = ((BlockExpr) root).getScope();
+        assertSame(program, block.getParent());
+        assertEquals(2, block.size());
+        LetStatement redeclared = (LetStatement) ((BlockExpr) root).getExpressions().get(2);
+        assertEquals(0, redeclared.getBinding().getSlot());
+    }
+
+    @Test
+    public void testLambdaBodiesAreScoped() {
+        Expression root = new Parser(new Lexer("map($.items, \"i\", i + 1)", "<test>")).parse();
+        new ScopeResolver().resolveProgram(root);
+
+        CallExpr call = root instanceof CallExpr ? (CallExpr) root
+            : (CallExpr) ((BlockExpr) root).getExpressions().get(0);
+        assertTrue(call.getArguments().get(2) instanceof ScopedExpr);
+        assertEquals("i", ((ScopedExpr) call.getArguments().get(2)).getScope().getName(0));
+    }
+}
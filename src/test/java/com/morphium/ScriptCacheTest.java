@@ -0,0 +1,105 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.core.CachePolicy;
+import com.morphium.core.CacheStats;
+import com.morphium.core.MorphiumEngine;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScriptCacheTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private void run(MorphiumEngine engine, String script) throws Exception {
+        JsonNode input = mapper.readTree("{\"v\": 1}");
+        engine.transformFromString(script, input);
+    }
+
+    @Test
+    public void testCountsHitsAndMisses() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        run(engine, "$.v + 1");
+        run(engine, "$.v + 1");
+        run(engine, "$.v + 2");
+
+        CacheStats stats = engine.getCacheStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(2, stats.getEntryCount());
+        assertEquals("$.v + 1".length() + "$.v + 2".length(), stats.getWeight());
+    }
+
+    @Test
+    public void testConcurrentHitsAreCounted() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        run(engine, "$.v + 1");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    engine.compile("$.v + 1");
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        CacheStats stats = engine.getCacheStats();
+        assertEquals(4000, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getEntryCount());
+    }
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.setCachePolicy(CachePolicy.lru(2, Long.MAX_VALUE));
+        run(engine, "$.v + 1");
+        run(engine, "$.v + 2");
+        run(engine, "$.v + 1");
+        run(engine, "$.v + 3");
+
+        assertEquals(2, engine.getCacheSize());
+        assertEquals(1, engine.getCacheStats().getEvictionCount());
+        run(engine, "$.v + 1");
+        assertEquals(2, engine.getCacheStats().getHitCount());
+    }
+
+    @Test
+    public void testWeightLimit() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.setCachePolicy(CachePolicy.lru(100, 20));
+        run(engine, "$.v + 1");
+        run(engine, "$.v + 2");
+        run(engine, "$.v + 3");
+        assertTrue(engine.getCacheStats().getWeight() <= 20);
+        assertEquals(2, engine.getCacheSize());
+
+        // Heavier than the whole cache: runs, but is not kept
+        run(engine, "{ a: $.v, b: $.v, c: $.v, d: $.v }");
+        assertEquals(2, engine.getCacheSize());
+    }
+
+    @Test
+    public void testTinyLfuKeepsFrequentScripts() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.setCachePolicy(CachePolicy.tinyLfu(10, Long.MAX_VALUE));
+        String hot = "$.v * 100";
+        for (int i = 0; i < 5; i++) {
+            run(engine, hot);
+        }
+        for (int i = 0; i < 50; i++) {
+            run(engine, "$.v + " + i);
+        }
+
+        long hits = engine.getCacheStats().getHitCount();
+        run(engine, hot);
+        assertEquals(hits + 1, engine.getCacheStats().getHitCount());
+        assertTrue(engine.getCacheSize() <= 10);
+    }
+}
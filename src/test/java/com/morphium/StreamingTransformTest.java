@@ -0,0 +1,147 @@
+package com.morphium;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.core.MorphiumException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class StreamingTransformTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MorphiumEngine engine = new MorphiumEngine();
+
+    private String stream(String script, String input, String pointer) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayInputStream in = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+        if (pointer == null) {
+            engine.transformStream(script, in, out);
+        } else {
+            engine.transformStream(script, in, out, pointer);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testTransformsTopLevelArray() throws Exception {
+        String result = stream("{ id: $.id, big: $.n > 1 }",
+            "[{\"id\": \"a\", \"n\": 1}, {\"id\": \"b\", \"n\": 2}, {\"id\": \"c\", \"n\": 3}]", null);
+        assertEquals("[{\"id\":\"a\",\"big\":false},{\"id\":\"b\",\"big\":true},{\"id\":\"c\",\"big\":true}]", result);
+    }
+
+    @Test
+    public void testScalarAndEmptyArrays() throws Exception {
+        assertEquals("[2,3,null]", stream("$ == null ? null : $ + 1", "[1, 2, null]", null));
+        assertEquals("[]", stream("$", "[]", null));
+    }
+
+    @Test
+    public void testJsonPointerSelectsNestedArray() throws Exception {
+        String input = "{\"meta\": {\"skip\": [1, {\"deep\": true}]}, \"data\": {\"batches\": ["
+            + "[{\"v\": 1}], [{\"v\": 10}, {\"v\": 20}]]}, \"after\": 1}";
+        assertEquals("[20,40]", stream("$.v * 2", input, "/data/batches/1"));
+    }
+
+    @Test
+    public void testReturnsElementCount() throws Exception {
+        StringBuilder input = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            input.append(i == 0 ? "" : ",").append("{\"i\": ").append(i).append("}");
+        }
+        input.append("]");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = engine.compile("$.i")
+            .transformStream(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)), out);
+        assertEquals(1000, count);
+        assertEquals(1000, mapper.readTree(out.toByteArray()).size());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        try {
+            stream("$", "{\"data\": {}}", "/data/items");
+            fail("Expected missing pointer to fail");
+        } catch (MorphiumException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("/data/items"));
+        }
+        try {
+            stream("$", "{\"data\": 5}", "/data");
+            fail("Expected non-array to fail");
+        } catch (MorphiumException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Expected an array"));
+        }
+        try {
+            stream("error(\"bad\")", "[1, 2]", null);
+            fail("Expected element error");
+        } catch (MorphiumException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Element 0"));
+        }
+    }
+
+    @Test
+    public void testTransformFile() throws Exception {
+        Path dir = Files.createTempDirectory("transform-file");
+        Path in = dir.resolve("in.json");
+        Path out = dir.resolve("out.json");
+        Files.writeString(in, "{\"rows\": [{\"v\": 1}, {\"v\": 2}], \"name\": \"caf\u00e9\"}");
+
+        engine.transformFile("{ name: upper($.name), total: sum(map($.rows, \"r\", r.v)) }", in, out);
+        assertEquals("{\"name\":\"CAF\u00c9\",\"total\":3}", Files.readString(out));
+
+        // Overwrites the previous output
+        assertEquals(2, engine.transformFile("$.v * 10", in, out, "/rows"));
+        assertEquals("[10,20]", Files.readString(out));
+    }
+
+    @Test
+    public void testTransformFileInPlace() throws Exception {
+        Path file = Files.createTempFile("in-place", ".json");
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 200000; i++) {
+            json.append(i == 0 ? "" : ",").append(i);
+        }
+        Files.writeString(file, json.append("]").toString());
+
+        assertEquals(200000, engine.transformFile("$ % 2", file, file, ""));
+        String result = Files.readString(file);
+        assertTrue(result.startsWith("[0,1,0,1"));
+        assertEquals(200000 * 2 + 1, result.length());
+
+        Files.writeString(file, "{\"v\": 2}");
+        engine.transformFile("$.v * 3", file, file);
+        assertEquals("6", Files.readString(file));
+    }
+
+    @Test
+    public void testFailedTransformKeepsOutput() throws Exception {
+        Path dir = Files.createTempDirectory("transform-fail");
+        Path in = dir.resolve("in.json");
+        Path out = dir.resolve("out.json");
+        Files.writeString(in, "[{\"a\": {\"b\": 1}}, {\"a\": null}]");
+        Files.writeString(out, "previous");
+
+        try {
+            engine.transformFile("$.a.b", in, out, "");
+            fail("Transform should have failed on the second element");
+        } catch (MorphiumException expected) {
+        }
+        assertEquals("previous", Files.readString(out));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test(expected = MorphiumException.class)
+    public void testTransformEmptyFile() throws Exception {
+        Path in = Files.createTempFile("empty", ".json");
+        engine.transformFile("$", in, in.resolveSibling(in.getFileName() + ".out"));
+    }
+}
@@ -5,6 +5,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.morphium.core.MorphiumEngine;
+import com.morphium.parser.Lexer;
+import com.morphium.parser.Parser;
+import com.morphium.parser.ast.Expression;
+import com.morphium.runtime.Context;
+import com.morphium.runtime.HostFunctionRegistry;
 import com.morphium.util.JsonUtil;
 import org.junit.Test;
 
@@ -243,4 +248,53 @@ public class UserDefinedFunctionsTest {
         assertEquals(2, items.size());
         assertTrue(((ObjectNode)items.get(0)).get("enabled").asBoolean());
     }
+
+    @Test
+    public void testCachedCallSitesSeeReregisteredHostFunctions() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.registerFunction("", "label", args -> JsonUtil.createPrimitive("first"));
+        String transform = "{ a: label(), b: upper(label()) }";
+        JsonNode input = JsonUtil.createObject();
+
+        assertEquals("first", engine.transformFromString(transform, input).get("a").asText());
+
+        engine.registerFunction("", "label", args -> JsonUtil.createPrimitive("second"));
+        JsonNode result = engine.transformFromString(transform, input);
+        assertEquals("second", result.get("a").asText());
+        assertEquals("SECOND", result.get("b").asText());
+    }
+
+    @Test
+    public void testLookupRacingRegistrationIsResolvedAgain() {
+        HostFunctionRegistry registry = new HostFunctionRegistry() {
+            private boolean raced;
+
+            @Override
+            public MorphiumEngine.HostFunction get(String name) {
+                MorphiumEngine.HostFunction found = super.get(name);
+                if (!raced) {
+                    // Another thread replaces the function right after this lookup
+                    raced = true;
+                    register("label", args -> JsonUtil.createPrimitive("second"));
+                }
+                return found;
+            }
+        };
+        registry.register("label", args -> JsonUtil.createPrimitive("first"));
+        Expression call = new Parser(new Lexer("label()", "<test>")).parse();
+
+        assertEquals("first", call.evaluate(new Context(registry)).asText());
+        assertEquals("second", call.evaluate(new Context(registry)).asText());
+    }
+
+    @Test
+    public void testScriptFunctionsShadowHostFunctions() throws Exception {
+        MorphiumEngine engine = new MorphiumEngine();
+        engine.registerFunction("", "label", args -> JsonUtil.createPrimitive("host"));
+        JsonNode input = JsonUtil.createObject();
+
+        assertEquals("host", engine.transformFromString("label()", input).asText());
+        assertEquals("script", engine.transformFromString(
+            "function label() { \"script\" } label()", input).asText());
+    }
 }
@@ -0,0 +1,125 @@
+package com.morphium.builtin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.morphium.compiler.ExecutionMode;
+import com.morphium.compiler.ScopeResolver;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.parser.Lexer;
+import com.morphium.parser.Parser;
+import com.morphium.parser.ast.BlockExpr;
+import com.morphium.parser.ast.CallExpr;
+import com.morphium.parser.ast.Expression;
+import com.morphium.parser.ast.ScopedExpr;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for pmap, pfilter and pflatMap
+ */
+public class ParallelFunctionsTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int SIZE = ParallelFunctions.PARALLEL_THRESHOLD * 5;
+    private MorphiumEngine engine;
+    private List<Integer> recorded;
+    private JsonNode input;
+
+    @Before
+    public void setUp() {
+        engine = new MorphiumEngine();
+        recorded = Collections.synchronizedList(new ArrayList<>());
+        engine.registerFunction("", "record", args -> {
+            recorded.add(args[0].asInt());
+            return args[0];
+        });
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode nums = root.putArray("nums");
+        for (int i = 0; i < SIZE; i++) {
+            nums.addObject().put("id", i).put("group", i % 7);
+        }
+        input = root;
+    }
+
+    private JsonNode run(String script) {
+        return engine.transformFromString(script, input);
+    }
+
+    @Test
+    public void testMatchesSequentialResultsInOrder() {
+        String[][] pairs = {
+            {"pmap($.nums, \"n\", n.id * 2)", "map($.nums, \"n\", n.id * 2)"},
+            {"pfilter($.nums, \"n\", n.group == 3)", "filter($.nums, \"n\", n.group == 3)"},
+            {"pflatMap($.nums, \"n\", [n.id, n.group])", "flatMap($.nums, \"n\", [n.id, n.group])"},
+            {"let base = 10; function label(n) { upper(\"g\" + n.group) + \"-\" + (n.id + base) } pmap($.nums, \"n\", label(n))",
+                "let base = 10; function label(n) { upper(\"g\" + n.group) + \"-\" + (n.id + base) } map($.nums, \"n\", label(n))"},
+            {"pmap($.nums, \"n\", { id: n.id, near: filter($.nums, \"m\", m.id > n.id && m.id < n.id + 3) })",
+                "map($.nums, \"n\", { id: n.id, near: filter($.nums, \"m\", m.id > n.id && m.id < n.id + 3) })"}
+        };
+        for (String[] pair : pairs) {
+            JsonNode parallel = run(pair[0]);
+            assertEquals(pair[0], run(pair[1]), parallel);
+        }
+        JsonNode mapped = run("pmap($.nums, \"n\", n.id)");
+        assertEquals(SIZE, mapped.size());
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(i, mapped.get(i).asInt());
+        }
+    }
+
+    @Test
+    public void testCompiledAndSmallInputs() {
+        engine.setExecutionMode(ExecutionMode.COMPILE);
+        assertEquals(run("map($.nums, \"n\", { k: n.id % 5 })"), run("pmap($.nums, \"n\", { k: n.id % 5 })"));
+        assertEquals("[2,4]", run("pmap([1, 2], \"x\", x * 2)").toString());
+        assertEquals("[1,2,3]", run("pflatMap([[1], 2, [3]], \"x\", x)").toString());
+        assertEquals("[]", run("pfilter($.missing, \"x\", x)").toString());
+    }
+
+    @Test
+    public void testEffectfulBodiesRunInOrderOnTheCallingThread() {
+        run("pmap($.nums, \"n\", record(n.id))");
+        assertSequential();
+        run("pfilter($.nums, \"n\", now() != null && record(n.id) >= 0)");
+        assertSequential();
+        run("function keep(n) { forEach([n], \"m\", record(m.id)); true } pfilter($.nums, \"n\", keep(n))");
+        assertSequential();
+    }
+
+    private void assertSequential() {
+        assertEquals(SIZE, recorded.size());
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(i, (int) recorded.get(i));
+        }
+        recorded.clear();
+    }
+
+    @Test
+    public void testResolverMarksParallelizableBodies() {
+        assertTrue(parallelizable("pmap($.items, \"i\", i.price * 2)"));
+        assertTrue(parallelizable("let rate = 2; function f(i) { i * rate } pmap($.items, \"i\", f(i))"));
+        assertTrue(parallelizable("function f(n) { n > 0 ? f(n - 1) : 0 } pmap($.items, \"i\", f(i))"));
+        assertFalse(parallelizable("pmap($.items, \"i\", log(i))"));
+        assertFalse(parallelizable("pmap($.items, \"i\", peek([i], \"x\", x))"));
+        assertFalse(parallelizable("pmap($.items, \"i\", forEach(i, \"x\", x))"));
+        assertFalse(parallelizable("function f(i) { logInfo(i) } pmap($.items, \"i\", f(i))"));
+        assertFalse(parallelizable("pmap($.items, \"i\", hostFn(i))"));
+        assertFalse(parallelizable("pmap($.items, \"i\", utils.round(i))"));
+    }
+
+    private static boolean parallelizable(String script) {
+        Expression root = new Parser(new Lexer(script, "<test>")).parse();
+        new ScopeResolver().resolveProgram(root);
+        Expression last = root instanceof BlockExpr
+            ? ((BlockExpr) root).getExpressions().get(((BlockExpr) root).getExpressions().size() - 1) : root;
+        return ((ScopedExpr) ((CallExpr) last).getArguments().get(2)).isParallelizable();
+    }
+}
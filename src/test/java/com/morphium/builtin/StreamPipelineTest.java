@@ -0,0 +1,172 @@
+package com.morphium.builtin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.morphium.core.MorphiumEngine;
+import com.morphium.core.MorphiumException;
+import com.morphium.runtime.ModuleResolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for fused evaluation of nested stream builtins
+ */
+public class StreamPipelineTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private MorphiumEngine engine;
+    private AtomicInteger calls;
+    private JsonNode input;
+
+    @Before
+    public void setUp() throws Exception {
+        engine = new MorphiumEngine();
+        calls = new AtomicInteger();
+        engine.registerFunction("", "tick", args -> {
+            calls.incrementAndGet();
+            return args[0];
+        });
+        engine.registerFunction("", "lazy", args -> BooleanNode.valueOf(args[0] instanceof LazySequence));
+        input = mapper.readTree("{\"nums\": [1, 2, 3, 4, 5, 6, 7, 8, 9, 10], \"tags\": [[\"a\", \"b\"], [\"b\", \"c\"]]}");
+    }
+
+    private JsonNode run(String script) {
+        return engine.transformFromString(script, input);
+    }
+
+    @Test
+    public void testFusedChainsMatchStagedResults() {
+        assertEquals("[12,14,16,18,20]",
+            run("filter(map($.nums, \"x\", x * 2), \"y\", y > 10)").toString());
+        assertEquals("[\"a\",\"b\",\"c\"]", run("distinct(flatMap($.tags, \"t\", t))").toString());
+        assertEquals("[4,5]", run("limit(skip(filter($.nums, \"n\", n > 1), 2), 2)").toString());
+        assertEquals(30.0, run("sum(filter($.nums, \"n\", n % 2 == 0))").asDouble(), 0.0);
+        assertEquals(5, run("count(filter($.nums, \"n\", n > 5))").asInt());
+        assertEquals(2, run("count(map($.nums, \"n\", n), \"n\", n > 8)").asInt());
+        assertEquals("[8,9]", run("limit(sorted(filter($.nums, \"n\", n > 7)), 2)").toString());
+    }
+
+    @Test
+    public void testNonArraySourceKeepsStageSemantics() {
+        assertEquals("[]", run("map(filter($.missing, \"x\", x), \"y\", y)").toString());
+        assertEquals(0, run("count(map($.missing, \"x\", x))").asInt());
+        assertTrue(run("findFirst(peek(5, \"x\", x), \"y\", y)").isNull());
+    }
+
+    @Test
+    public void testTerminalsShortCircuitThroughChain() throws Exception {
+        // The second item would fail, so these only succeed if it is never mapped
+        JsonNode items = mapper.readTree("{\"items\": [{\"a\": {\"b\": 1}}, {\"a\": null}]}");
+        assertEquals(2, engine.transformFromString(
+            "findFirst(map($.items, \"x\", x.a.b * 2), \"y\", y > 1)", items).asInt());
+        assertTrue(engine.transformFromString(
+            "anyMatch(filter($.items, \"x\", x.a.b > 0), \"y\", true)", items).asBoolean());
+        assertEquals("[1]", engine.transformFromString("limit(map($.items, \"x\", x.a.b), 1)", items).toString());
+    }
+
+    @Test
+    public void testEffectfulStagesRunToCompletion() {
+        List<String> log = new ArrayList<>();
+        engine.registerFunction("", "record", args -> {
+            log.add(args[0].asText() + args[1].asText());
+            return args[1];
+        });
+        JsonNode result = engine.transformFromString(
+            "map(filter($, \"x\", record(\"f\", x) > 1), \"y\", record(\"m\", y))",
+            mapper.createArrayNode().add(1).add(2).add(3));
+        assertEquals("[2,3]", result.toString());
+        assertEquals(Arrays.asList("f1", "f2", "f3", "m2", "m3"), log);
+
+        assertEquals(12, run("findFirst(map($.nums, \"x\", tick(x) * 2), \"y\", y > 10)").asInt());
+        assertEquals(10, calls.get());
+
+        calls.set(0);
+        assertEquals(2, run("limit(map($.nums, \"x\", tick(x)), 2)").size());
+        assertEquals(10, calls.get());
+    }
+
+    @Test
+    public void testUserFunctionShadowsStage() {
+        JsonNode result = run("function map(a, n, b) { \"mine\" } count(map($.nums, \"x\", x))");
+        assertEquals(0, result.asInt());
+    }
+
+    @Test
+    public void testSelfContainedStagesReturnLazySequences() {
+        assertTrue(run("let xs = map($.nums, \"x\", x * 2); lazy(xs)").asBoolean());
+        JsonNode result = run("let xs = map($.nums, \"x\", x * 2); xs");
+        assertFalse(result instanceof LazySequence);
+        assertEquals(10, result.size());
+        assertEquals(mapper.createArrayNode().add(2).add(4), run("limit(skip(map($.nums, \"x\", x * 2), 0), 2)"));
+
+        assertEquals(6, run("let xs = filter($.nums, \"x\", x > 5); findFirst(xs, \"y\", y > 0)").asInt());
+        assertEquals("[4,5]", run("let xs = filter($.nums, \"x\", x > 3); limit(xs, 2)").toString());
+    }
+
+    @Test
+    public void testResultsLeaveTheEngineMaterialized() throws Exception {
+        JsonNode nested = run("{ a: { b: [map($.nums, \"x\", x + 1)] }, c: filter($.nums, \"x\", x > 8) }");
+        assertFalse(nested.get("a").get("b").get(0) instanceof LazySequence);
+        assertFalse(nested.get("c") instanceof LazySequence);
+        assertEquals("{\"a\":{\"b\":[[2,3,4,5,6,7,8,9,10,11]]},\"c\":[9,10]}", nested.toString());
+
+        // An error in a lambda surfaces from the run, not from serializing its result
+        JsonNode items = mapper.readTree("{\"items\": [{\"a\": {\"b\": 1}}, {\"a\": null}]}");
+        try {
+            engine.compile("map($.items, \"x\", x.a.b)").apply(items);
+            fail("Lambda error was deferred past the run");
+        } catch (MorphiumException e) {
+            assertTrue(e.getMessage().contains("null"));
+        }
+    }
+
+    @Test
+    public void testModuleFunctionResultsLeaveTheEngineMaterialized() {
+        MorphiumEngine moduleEngine = new MorphiumEngine(new ModuleResolver() {
+            @Override
+            public String resolve(String modulePath) {
+                return "function doubled(xs) { map(xs, \"x\", x * 2) }";
+            }
+        });
+        JsonNode result = moduleEngine.transformFromString(
+            "import \"lists.morph\" as lists; { d: lists.doubled($.nums) }", input);
+        assertFalse(result.get("d") instanceof LazySequence);
+        assertEquals(20, result.get("d").get(9).asInt());
+    }
+
+    @Test
+    public void testIndexingComputesOnlyThePrefix() {
+        AtomicInteger computed = new AtomicInteger();
+        Iterator<JsonNode> source = IntStream.range(0, 100)
+            .mapToObj(i -> (JsonNode) IntNode.valueOf(computed.incrementAndGet()))
+            .iterator();
+        LazySequence sequence = LazySequence.of(source);
+        assertEquals(3, sequence.get(2).asInt());
+        assertEquals(3, computed.get());
+        assertTrue(sequence.path(200).isMissingNode());
+        assertEquals(100, computed.get());
+        assertFalse(sequence.deepCopy() instanceof LazySequence);
+    }
+
+    @Test
+    public void testObservableLambdasStayEager() {
+        JsonNode effectful = run("let xs = map($.nums, \"x\", tick(x)); 1");
+        assertEquals(1, effectful.asInt());
+        assertEquals(10, calls.get());
+
+        assertFalse(run("let offset = 1; map($.nums, \"x\", x + offset)") instanceof LazySequence);
+        assertFalse(run("function double(v) { v * 2 } map($.nums, \"x\", double(x))") instanceof LazySequence);
+        assertFalse(run("let name = \"x\"; map($.nums, name, x)") instanceof LazySequence);
+    }
+}
@@ -0,0 +1,316 @@
+package com.morphium.playground;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the playground HTTP endpoints, against a server on an ephemeral port
+ */
+public class PlaygroundServerTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static PlaygroundServer server;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        server = new PlaygroundServer(0);
+        Logger.getLogger(PlaygroundServer.class.getName()).setLevel(Level.SEVERE);
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Status, headers and decoded body of one exchange.
+     */
+    private static final class Response {
+        private final int status;
+        private final HttpURLConnection connection;
+        private final String body;
+
+        Response(int status, HttpURLConnection connection, String body) {
+            this.status = status;
+            this.connection = connection;
+            this.body = body;
+        }
+
+        String header(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        JsonNode json() throws IOException {
+            return mapper.readTree(body);
+        }
+    }
+
+    private static Response request(String method, String path, byte[] body, Map<String, String> headers,
+                                    boolean chunked) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+            .openConnection();
+        connection.setRequestMethod(method);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            if (chunked) {
+                connection.setChunkedStreamingMode(8192);
+            } else {
+                connection.setFixedLengthStreamingMode(body.length);
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            } catch (IOException e) {
+                // The server may answer and close before the whole body is sent
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        byte[] raw = in == null ? new byte[0] : in.readAllBytes();
+        String encoding = connection.getContentEncoding();
+        if ("gzip".equals(encoding)) {
+            raw = new GZIPInputStream(new ByteArrayInputStream(raw)).readAllBytes();
+        } else if ("deflate".equals(encoding)) {
+            raw = new InflaterInputStream(new ByteArrayInputStream(raw)).readAllBytes();
+        }
+        return new Response(status, connection, new String(raw, StandardCharsets.UTF_8));
+    }
+
+    private static Response post(String path, String body) throws IOException {
+        return request("POST", path, body.getBytes(StandardCharsets.UTF_8), Collections.emptyMap(), false);
+    }
+
+    @Test
+    public void testRegisteredScripts() throws Exception {
+        JsonNode registered = post("/api/scripts", "{\"id\": \"double\", \"transform\": \"{ x: $.a * 2 }\"}").json();
+        assertTrue(registered.get("success").asBoolean());
+        assertEquals("double", registered.get("id").asText());
+        assertEquals(1, registered.get("version").asInt());
+
+        JsonNode result = post("/api/scripts/double/transform", "{\"a\": 21, \"unused\": [1, 2]}").json();
+        assertEquals(42, result.get("result").get("x").asInt());
+        assertEquals(1, result.get("version").asInt());
+
+        // Re-registering swaps in a new version for later requests
+        assertEquals(2, post("/api/scripts", "{\"id\": \"double\", \"transform\": \"{ x: $.a * 3 }\"}")
+            .json().get("version").asInt());
+        result = post("/api/scripts/double/transform", "{\"a\": 21}").json();
+        assertEquals(63, result.get("result").get("x").asInt());
+        assertEquals(2, result.get("version").asInt());
+
+        JsonNode anonymous = post("/api/scripts", "{\"transform\": \"$.a\"}").json();
+        assertEquals(anonymous.get("hash").asText().substring(0, 16), anonymous.get("id").asText());
+    }
+
+    @Test
+    public void testScriptErrors() throws Exception {
+        assertEquals(404, post("/api/scripts/missing/transform", "{}").status);
+        assertEquals(404, post("/api/scripts/double/other", "{}").status);
+        assertEquals(405, request("GET", "/api/scripts", null, Collections.emptyMap(), false).status);
+        assertEquals(400, post("/api/scripts", "{\"id\": \"bad id\", \"transform\": \"$\"}").status);
+        assertEquals(400, post("/api/scripts", "{\"id\": \"x\"}").status);
+
+        JsonNode invalid = post("/api/scripts", "{\"id\": \"broken\", \"transform\": \"{ x: \"}").json();
+        assertFalse(invalid.get("success").asBoolean());
+        assertEquals(404, post("/api/scripts/broken/transform", "{}").status);
+    }
+
+    @Test
+    public void testDeleteScript() throws Exception {
+        post("/api/scripts", "{\"id\": \"temporary\", \"transform\": \"$.a\"}");
+        JsonNode deleted = request("DELETE", "/api/scripts/temporary", null, Collections.emptyMap(), false).json();
+        assertTrue(deleted.get("success").asBoolean());
+        assertEquals("temporary", deleted.get("id").asText());
+        assertEquals(1, deleted.get("version").asInt());
+
+        assertEquals(404, post("/api/scripts/temporary/transform", "{}").status);
+        assertEquals(404, request("DELETE", "/api/scripts/temporary", null, Collections.emptyMap(), false).status);
+        assertEquals(405, request("DELETE", "/api/scripts", null, Collections.emptyMap(), false).status);
+        assertEquals(405, request("DELETE", "/api/scripts/temporary/transform", null, Collections.emptyMap(), false).status);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        JsonNode result = post("/api/transform/batch",
+            "{\"transform\": \"$.a == 2 ? error(\\\"two\\\") : $.a * 10\", \"inputs\": [{\"a\": 1}, {\"a\": 2}, {\"a\": 3}]}")
+            .json();
+        assertTrue(result.get("success").asBoolean());
+        assertEquals("[10,null,30]", result.get("results").toString());
+        assertEquals(1, result.get("failures").size());
+        assertEquals(1, result.get("failures").get(0).get("index").asInt());
+
+        post("/api/scripts", "{\"id\": \"plus\", \"transform\": \"$.a + 1\"}");
+        assertEquals("[2]", post("/api/transform/batch", "{\"id\": \"plus\", \"inputs\": [{\"a\": 1}]}")
+            .json().get("results").toString());
+        assertEquals(404, post("/api/transform/batch", "{\"id\": \"nope\", \"inputs\": []}").status);
+        assertEquals(400, post("/api/transform/batch", "{\"transform\": \"$\"}").status);
+        assertEquals(400, post("/api/transform/batch", "[]").status);
+
+        // Inputs may come before the transform, and fields the transform skips may be anything
+        assertEquals("[1,2]", post("/api/transform/batch",
+            "{\"inputs\": [{\"a\": 1, \"b\": [true]}, {\"a\": 2}], \"transform\": \"$.a\"}")
+            .json().get("results").toString());
+        assertEquals("[1,2]", post("/api/transform/batch",
+            "{\"transform\": \"$.a\", \"inputs\": [{\"a\": 1, \"b\": {\"c\": [1, 2]}}, {\"a\": 2}]}")
+            .json().get("results").toString());
+    }
+
+    @Test
+    public void testNdjsonStreamsResults() throws Exception {
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            records.append("{\"a\": ").append(i).append("}\n");
+        }
+        Response response = request("POST", "/api/transform/ndjson?transform=" + URLEncoder.encode("{ b: $.a * 2 }", "UTF-8"),
+            records.toString().getBytes(StandardCharsets.UTF_8), Collections.emptyMap(), true);
+        assertEquals(200, response.status);
+        assertEquals("chunked", response.header("Transfer-Encoding"));
+        String[] lines = response.body.split("\n");
+        assertEquals(20000, lines.length);
+        assertEquals("{\"b\":39998}", lines[19999]);
+    }
+
+    @Test
+    public void testNdjsonErrors() throws Exception {
+        assertEquals(400, post("/api/transform/ndjson", "{}\n").status);
+        assertEquals(404, post("/api/transform/ndjson?id=nope", "{}\n").status);
+        Response early = post("/api/transform/ndjson?transform=%24.a", "{\"a\": 1\n");
+        assertEquals(400, early.status);
+        assertTrue(early.json().get("error").asText().startsWith("Line 1:"));
+
+        // Once results are on their way, a failing record aborts the response
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            records.append(i == 4000 ? "bad" : "{\"a\": 1}").append('\n');
+        }
+        try {
+            Response aborted = request("POST", "/api/transform/ndjson?transform=%24.a",
+                records.toString().getBytes(StandardCharsets.UTF_8), Collections.emptyMap(), true);
+            fail("Aborted response looked complete: " + aborted.status);
+        } catch (IOException e) {
+            // Expected, the chunked body ends without its terminating chunk
+        }
+    }
+
+    @Test
+    public void testTransformInputForms() throws Exception {
+        // Input as JSON text, as the playground page sends it
+        assertEquals(2, post("/api/transform", "{\"transform\": \"$.a + 1\", \"input\": \"{\\\"a\\\": 1}\"}")
+            .json().get("result").asInt());
+        // Embedded input, before or after the transform
+        assertEquals(42, post("/api/transform", "{\"transform\": \"$.a + 1\", \"input\": {\"a\": 41, \"b\": [1]}}")
+            .json().get("result").asInt());
+        assertEquals("{\"a\":1}", post("/api/transform", "{\"input\": {\"a\": 1}, \"transform\": \"$\"}")
+            .json().get("result").toString());
+        // With raw, a string input is the document itself
+        assertEquals("ABC", post("/api/transform?raw=true", "{\"transform\": \"upper($)\", \"input\": \"abc\"}")
+            .json().get("result").asText());
+
+        assertEquals(400, post("/api/transform", "{\"transform\": \"$\"}").status);
+        assertEquals(400, post("/api/transform", "{\"transform\": \"\", \"input\": \"\"}").status);
+        assertEquals(400, post("/api/transform", "[1]").status);
+        assertFalse(post("/api/transform", "{\"transform\": \"$\", \"input\": {\"a\"").json()
+            .get("success").asBoolean());
+    }
+
+    @Test
+    public void testOversizedBodies() throws Exception {
+        byte[] body = new byte[10 * 1024 * 1024 + 1];
+        Arrays.fill(body, (byte) ' ');
+        body[0] = '{';
+        Map<String, String> none = Collections.emptyMap();
+        // Rejected from the declared length, and while reading a chunked body
+        assertEquals(413, request("POST", "/api/transform", body, none, false).status);
+        for (String path : new String[] {"/api/transform", "/api/transform/batch", "/api/scripts",
+                "/api/scripts/echo/transform"}) {
+            post("/api/scripts", "{\"id\": \"echo\", \"transform\": \"$\"}");
+            Response response = request("POST", path, body, none, true);
+            assertEquals(path, 413, response.status);
+            assertFalse(response.json().get("success").asBoolean());
+        }
+    }
+
+    private static Response get(String path, String... headers) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            values.put(headers[i], headers[i + 1]);
+        }
+        return request("GET", path, null, values, false);
+    }
+
+    @Test
+    public void testEncodingNegotiation() throws Exception {
+        String[][] cases = {
+            {null, null},
+            {"gzip, deflate", "gzip"},
+            {"gzip;q=0.5, deflate", "deflate"},
+            {"gzip;q=0, br", null},
+            {"gzip;q=0, *", "deflate"},
+            {"*, gzip;q=0", "deflate"},
+            {"*;q=0.3", "gzip"},
+            {"*;q=0, identity", null},
+            {"identity, gzip;q=0.5", null},
+            {"identity;q=0.5, deflate", "deflate"},
+            {"GZIP ; q=1", "gzip"},
+        };
+        for (String[] c : cases) {
+            Response response = c[0] == null ? get("/api/health") : get("/api/health", "Accept-Encoding", c[0]);
+            assertEquals(c[0], c[1], response.header("Content-Encoding"));
+            assertEquals("UP", response.json().get("status").asText());
+        }
+    }
+
+    @Test
+    public void testFailingResultGetsErrorEnvelope() throws Exception {
+        // The lambda fails on the second item; the error must arrive as a complete response
+        Response response = post("/api/transform",
+            "{\"transform\": \"map($.items, \\\"x\\\", x.a.b)\", \"input\": {\"items\": [{\"a\": {\"b\": 1}}, {\"a\": null}]}}");
+        assertEquals(200, response.status);
+        assertFalse(response.json().get("success").asBoolean());
+        assertNotNull(response.json().get("error").asText());
+    }
+
+    @Test
+    public void testIndexPage() throws Exception {
+        Response plain = get("/");
+        assertEquals(200, plain.status);
+        String etag = plain.header("ETag");
+        assertTrue(etag.startsWith("W/\""));
+        assertEquals("no-cache", plain.header("Cache-Control"));
+        assertEquals(plain.body, get("/", "Accept-Encoding", "gzip").body);
+        assertEquals(plain.body, get("/", "Accept-Encoding", "deflate").body);
+        assertEquals("gzip", get("/", "Accept-Encoding", "gzip").header("Content-Encoding"));
+
+        Response cached = get("/", "If-None-Match", etag);
+        assertEquals(304, cached.status);
+        assertEquals(etag, cached.header("ETag"));
+        assertEquals(304, get("/", "If-None-Match", "\"other\", " + etag.substring(2)).status);
+        assertEquals(304, get("/", "If-None-Match", "*").status);
+        assertEquals(200, get("/", "If-None-Match", "\"other\"").status);
+    }
+}
@@ -0,0 +1,146 @@
+package com.morphium.playground;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morphium.core.MorphiumEngine;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ScriptRegistryTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MorphiumEngine engine = new MorphiumEngine();
+
+    @Test
+    public void testVersionsAndContentIds() throws Exception {
+        ScriptRegistry registry = new ScriptRegistry(engine, 10);
+        ScriptRegistry.Script first = registry.register("orders", "$.a + 1");
+        assertEquals(1, first.getVersion());
+        assertEquals(64, first.getHash().length());
+
+        // Same source keeps the version, new source replaces it
+        assertSame(first, registry.register("orders", "$.a + 1"));
+        ScriptRegistry.Script second = registry.register("orders", "$.a + 2");
+        assertEquals(2, second.getVersion());
+        assertSame(second, registry.get("orders"));
+        assertEquals(3, registry.get("orders").getTransform().apply(mapper.readTree("{\"a\": 1}")).asInt());
+
+        // A script that does not compile leaves the current version in place
+        try {
+            registry.register("orders", "{ x: ");
+            fail("Invalid script was registered");
+        } catch (RuntimeException e) {
+            assertSame(second, registry.get("orders"));
+        }
+
+        ScriptRegistry.Script anonymous = registry.register(null, "$.b");
+        assertEquals(anonymous.getHash().substring(0, 16), anonymous.getId());
+        assertSame(anonymous, registry.register(null, "$.b"));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testInvalidIds() {
+        ScriptRegistry registry = new ScriptRegistry(engine, 10);
+        for (String id : new String[] {"", "has space", "a/b", "x".repeat(129)}) {
+            try {
+                registry.register(id, "$");
+                fail("Accepted id: " + id);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains("Script ids"));
+            }
+        }
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testRemoveMakesRoomInFullRegistry() throws Exception {
+        ScriptRegistry registry = new ScriptRegistry(engine, 2);
+        registry.register("a", "$.a");
+        ScriptRegistry.Script b = registry.register("b", "$.b");
+        try {
+            registry.register("c", "$.c");
+            fail("Registered past the cap");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("full"));
+        }
+        // Replacing an existing id still works while full
+        assertEquals(2, registry.register("a", "$.a + 1").getVersion());
+
+        assertSame(b, registry.remove("b"));
+        assertNull(registry.remove("b"));
+        assertNull(registry.get("b"));
+        assertEquals(1, registry.size());
+
+        assertEquals(1, registry.register("c", "$.c").getVersion());
+        assertEquals(3, registry.get("c").getTransform().apply(mapper.readTree("{\"c\": 3}")).asInt());
+        try {
+            registry.register("d", "$.d");
+            fail("Registered past the cap");
+        } catch (IllegalArgumentException e) {
+            assertEquals(2, registry.size());
+        }
+    }
+
+    @Test
+    public void testCapHoldsUnderConcurrentRegistration() throws Exception {
+        ScriptRegistry registry = new ScriptRegistry(engine, 50);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String id = "s" + i;
+                results.add(executor.submit(() -> {
+                    try {
+                        registry.register(id, "$");
+                        return true;
+                    } catch (IllegalArgumentException e) {
+                        return false;
+                    }
+                }));
+            }
+            int accepted = 0;
+            for (Future<Boolean> result : results) {
+                accepted += result.get() ? 1 : 0;
+            }
+            assertEquals(50, accepted);
+            assertEquals(50, registry.size());
+            // Replacing a registered script still works at capacity
+            int registered = 0;
+            while (registry.get("s" + registered) == null) {
+                registered++;
+            }
+            assertEquals(2, registry.register("s" + registered, "$.x").getVersion());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentReplacementsGetDistinctVersions() throws Exception {
+        ScriptRegistry registry = new ScriptRegistry(engine, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> versions = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String source = "$.a + " + i;
+                versions.add(executor.submit(() -> registry.register("hot", source).getVersion()));
+            }
+            Set<Integer> seen = new HashSet<>();
+            for (Future<Integer> version : versions) {
+                assertTrue(seen.add(version.get()));
+            }
+            assertEquals(200, registry.get("hot").getVersion());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}